@@ -0,0 +1,68 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Client-side cost of engine interactions, measured against {@link FakeEngine} so search time is zero: command
+ * round-trips and the parsing of a search output with a given number of info lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineRoundTripBenchmark {
+    /** "in-process" (pipes) or "process" (separate JVM). */
+    @Param({"in-process", "process"})
+    private String mode;
+    /** Info lines written per search. */
+    @Param({"0", "100", "1000"})
+    private int infoLines;
+    private Stockfish engine;
+
+    @Setup
+    public void setUp() throws IOException {
+        if ("process".equals(mode)) {
+            engine = new Stockfish();
+            if (!engine.startEngine(FakeEngine.command("--search=0", "--info=" + infoLines))) {
+                throw new IOException("Fake engine process did not start");
+            }
+        } else {
+            engine = FakeEngine.start(new FakeEngine.Settings(0, 0, infoLines, 0, List.of()));
+        }
+        engine.sendCommand("position fen " + Fixtures.START_FEN);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.stopEngine();
+    }
+
+    @Benchmark
+    public boolean isReady() {
+        return engine.isReady(5_000);
+    }
+
+    @Benchmark
+    public AnalysisResult search() {
+        engine.sendCommand("go movetime 0");
+        return AnalysisResult.parse(engine.readOutput("bestmove", 5_000));
+    }
+
+}
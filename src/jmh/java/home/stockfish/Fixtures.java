@@ -0,0 +1,41 @@
+package home.stockfish;
+
+import java.util.List;
+
+/** Positions and engine output shared by the benchmarks. */
+final class Fixtures {
+    /** Initial position. */
+    static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    /** Positions in FEN format, each one with a move in LAN format: plain, castling, en passant, promotion... */
+    static final String[][] POSITIONS = {
+        {START_FEN, "g1f3"},
+        {"r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4", "e1g1"},
+        {"r3kbnr/ppp1pppp/2nq4/3p1b2/3P1B2/2NQ4/PPP1PPPP/R3KBNR w KQkq - 6 5", "e1c1"},
+        {"rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3", "e5f6"},
+        {"rn1qkbnr/pPpppppp/8/8/8/1p6/1PPPPPPP/RNBQKBNR w KQkq - 0 5", "b7a8q"},
+        {"4r1k1/8/8/8/8/8/2N1N3/4K3 w - - 0 1", "c2d4"},
+        {"rnbqkbnr/pppp1ppp/8/4p3/6P1/5P2/PPPPP2P/RNBQKBNR b KQkq - 0 2", "d8h4"},
+    };
+    /** A whole game in LAN format, from the initial position (Scotch opening and an endgame). */
+    static final List<String> GAME = List.of("e2e4", "e7e5", "g1f3", "b8c6", "d2d4", "e5d4", "f3d4", "g8f6", "d4c6",
+        "b7c6", "e4e5", "d8e7", "d1e2", "f6d5", "c2c4", "c8a6", "b2b3", "g7g6", "c1b2", "f8g7", "b1d2", "e8g8",
+        "e1c1", "d5b4", "a2a3", "b4d5", "h2h4", "a8b8", "h4h5", "f8e8");
+    /** The same game in SAN format with move numbers. */
+    static final String GAME_SAN = "1. e4 e5 2. Nf3 Nc6 3. d4 exd4 4. Nxd4 Nf6 5. Nxc6 bxc6 6. e5 Qe7 7. Qe2 Nd5 "
+        + "8. c4 Ba6 9. b3 g6 10. Bb2 Bg7 11. Nd2 O-O 12. O-O-O Nb4 13. a3 Nd5 14. h4 Rab8 15. h5 Rfe8";
+    /** Output of a short search, as read from the engine. */
+    static final String SEARCH_OUTPUT = """
+            info string NNUE evaluation using nn-1111cefa1111.nnue enabled
+            info depth 1 seldepth 2 multipv 1 score cp 18 nodes 20 nps 20000 hashfull 0 tbhits 0 time 1 pv e2e4
+            info depth 2 seldepth 3 multipv 1 score cp 46 nodes 66 nps 33000 hashfull 0 tbhits 0 time 2 pv d2d4 d7d5
+            info depth 3 seldepth 4 multipv 1 score cp 35 nodes 201 nps 67000 hashfull 0 tbhits 0 time 3 pv e2e4 e7e5 g1f3
+            info depth 4 seldepth 6 multipv 1 score cp 30 upperbound nodes 512 nps 128000 hashfull 0 tbhits 0 time 4 pv e2e4
+            info depth 4 seldepth 6 multipv 1 score cp 32 nodes 803 nps 160600 hashfull 0 tbhits 0 time 5 pv e2e4 c7c5 g1f3 d7d6
+            bestmove e2e4 ponder c7c5
+            """;
+
+    private Fixtures() {
+        // Private constructor to prevent instantiation
+    }
+
+}
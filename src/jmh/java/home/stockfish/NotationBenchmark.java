@@ -0,0 +1,62 @@
+package home.stockfish;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.bhlangonijr.chesslib.Board;
+
+/** Move notation: LAN to SAN conversion and FEN reconstruction. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotationBenchmark {
+    /** Index in {@link Fixtures#POSITIONS}. */
+    @Param({"0", "1", "2", "3", "4", "5", "6"})
+    private int position;
+    private final Board board = new Board();
+    private String lan;
+    /** {@link Fixtures#GAME_SAN} without the move numbers. */
+    private String gameMoves;
+
+    @Setup
+    public void setUp() {
+        board.loadFromFen(Fixtures.POSITIONS[position][0]);
+        lan = Fixtures.POSITIONS[position][1];
+        gameMoves = Fixtures.GAME_SAN.replaceAll("\\d+\\.\\s*", "");
+    }
+
+    /** One move, converted and undone on the same board. */
+    @Benchmark
+    public String lanToSan() {
+        final String san = MoveUtils.toSan(board, lan);
+        board.undoMove();
+        return san;
+    }
+
+    /** A whole game converted in one pass. */
+    @Benchmark
+    public Object gameToSan() {
+        return MoveUtils.toSan(Fixtures.START_FEN, Fixtures.GAME);
+    }
+
+    /** FEN of the position reached by a game in SAN format. */
+    @Benchmark
+    public String fromMovesToFen() {
+        return StockfishMain.fromMovesToFen(gameMoves);
+    }
+
+}
@@ -0,0 +1,57 @@
+package home.stockfish;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parsing of the engine output: the string based parser against the byte level one. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsingBenchmark {
+    private final UciParser parser = new UciParser();
+    private ByteArrayInputStream output;
+    private long checksum;
+
+    @Setup
+    public void setUp() {
+        output = new ByteArrayInputStream(Fixtures.SEARCH_OUTPUT.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Benchmark
+    public long parseBytes() throws IOException {
+        output.reset();
+        checksum = 0;
+        parser.pump(output, (bytes, offset, length) -> {
+            final int kind = parser.kind(bytes, offset, length);
+            if (kind == UciParser.INFO) {
+                checksum += parser.parseInfo(bytes, offset, length).nodes;
+            } else if (kind == UciParser.BESTMOVE) {
+                parser.parseBestMove(bytes, offset, length);
+                checksum += parser.bestMove();
+            }
+        });
+        return checksum;
+    }
+
+    @Benchmark
+    public AnalysisResult parseAnalysis() {
+        return AnalysisResult.parse(Fixtures.SEARCH_OUTPUT);
+    }
+
+}
@@ -0,0 +1,81 @@
+package home.stockfish;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.bhlangonijr.chesslib.Board;
+
+/**
+ * Per-ply bookkeeping of a game: FEN sanitizing with string counts (the former approach, kept as a baseline),
+ * Zobrist-keyed repetition table and the incremental 'position' command. Each invocation replays a whole game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepetitionBenchmark {
+    private String[] fens;
+    private long[] keys;
+    private boolean[] irreversible;
+
+    @Setup
+    public void setUp() {
+        final Board board = new Board();
+        final int plies = Fixtures.GAME.size();
+        fens = new String[plies];
+        keys = new long[plies];
+        irreversible = new boolean[plies];
+        for (int i = 0; i < plies; i++) {
+            board.doMove(Fixtures.GAME.get(i));
+            fens[i] = board.getFen();
+            keys[i] = board.getIncrementalHashKey();
+            irreversible[i] = board.getHalfMoveCounter() == 0;
+        }
+    }
+
+    @Benchmark
+    public int sanitizedFenCounts() {
+        final Map<String, Integer> counts = new HashMap<>();
+        int max = 0;
+        for (final String fen : fens) {
+            final String sanitizedFen = fen.replaceAll(" \\d+ \\d+$", "");
+            counts.put(sanitizedFen, counts.getOrDefault(sanitizedFen, 0) + 1);
+            max = Math.max(max, counts.get(sanitizedFen));
+        }
+        return max;
+    }
+
+    @Benchmark
+    public int repetitionTable() {
+        final RepetitionTable table = new RepetitionTable();
+        int max = 0;
+        for (int i = 0; i < keys.length; i++) {
+            max = Math.max(max, table.add(keys[i], irreversible[i]));
+        }
+        return max;
+    }
+
+    @Benchmark
+    public int positionCommand() {
+        final PositionCommand command = new PositionCommand(Fixtures.START_FEN);
+        for (final String move : Fixtures.GAME) {
+            command.add(move);
+        }
+        return command.length();
+    }
+
+}
@@ -0,0 +1,104 @@
+package home.stockfish;
+
+import java.util.Properties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ends self-play games whose outcome is already clear, from the scores of the engine's own searches: a game is
+ * resigned when the score stays beyond a threshold for some plies, and drawn when it stays near zero for some plies
+ * after a given move. The local draw rules (repetition, 50 moves, material) are checked by {@link Game} itself.
+ * <p>
+ * One instance per game, fed with the score of every search.
+ */
+@Slf4j
+public final class Adjudicator {
+    /** Scores compared for mates, beyond any centipawn threshold. */
+    private static final int MATE_SCORE = 100_000;
+    /** The rules. */
+    private final Rules rules;
+    /** Consecutive plies beyond the resign score, positive for White and negative for Black. */
+    private int winning;
+    /** Consecutive plies within the draw score. */
+    private int drawish;
+
+    /**
+     * Adjudication rules.
+     *
+     * @param resignScore Absolute score in centipawns to resign at, 0 to disable.
+     * @param resignPlies Consecutive plies the score must stay beyond {@code resignScore}.
+     * @param drawScore   Absolute score in centipawns up to which a position is drawish.
+     * @param drawPlies   Consecutive drawish plies that end the game, 0 to disable.
+     * @param drawMove    First full move number at which a draw can be adjudicated.
+     */
+    public record Rules(int resignScore, int resignPlies, int drawScore, int drawPlies, int drawMove) {
+
+        /**
+         * Reads the rules from the configuration: 'adjudicate.resign.score', 'adjudicate.resign.plies',
+         * 'adjudicate.draw.score', 'adjudicate.draw.plies' and 'adjudicate.draw.move'.
+         *
+         * @param properties The configuration.
+         * @return The rules, or null if both resign and draw adjudication are disabled.
+         */
+        public static Rules fromProperties(final Properties properties) {
+            final Rules rules = new Rules(
+                Integer.parseInt(properties.getProperty("adjudicate.resign.score", "0")),
+                Integer.parseInt(properties.getProperty("adjudicate.resign.plies", "6")),
+                Integer.parseInt(properties.getProperty("adjudicate.draw.score", "10")),
+                Integer.parseInt(properties.getProperty("adjudicate.draw.plies", "0")),
+                Integer.parseInt(properties.getProperty("adjudicate.draw.move", "40")));
+            return rules.resignScore() > 0 || rules.drawPlies() > 0 ? rules : null;
+        }
+    }
+
+    /**
+     * Creates the adjudicator of one game.
+     *
+     * @param rules The rules.
+     */
+    public Adjudicator(final Rules rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Records the score of a search and decides if the game is over.
+     *
+     * @param analysis    The search result, with its score from the side to move's view; results without a score
+     *                    (depth 0) are ignored.
+     * @param whiteToMove True if White searched.
+     * @param moveNumber  Full move number of the searched position.
+     * @return The adjudicated result, or {@link GameResult#UNFINISHED}.
+     */
+    public GameResult record(final AnalysisResult analysis, final boolean whiteToMove, final int moveNumber) {
+        if (analysis.depth() == 0) {
+            return GameResult.UNFINISHED; // NOPMD OnlyOneReturn
+        }
+        final int score = analysis.mate() ? Integer.signum(analysis.score()) * MATE_SCORE : analysis.score();
+        final int forWhite = whiteToMove ? score : -score;
+        GameResult result = GameResult.UNFINISHED;
+
+        if (rules.resignScore() > 0) {
+            if (forWhite >= rules.resignScore()) {
+                winning = winning > 0 ? winning + 1 : 1;
+            } else if (forWhite <= -rules.resignScore()) {
+                winning = winning < 0 ? winning - 1 : -1;
+            } else {
+                winning = 0;
+            }
+            if (Math.abs(winning) >= rules.resignPlies()) {
+                result = winning > 0 ? GameResult.WHITE_WINS : GameResult.BLACK_WINS;
+                log.debug("Adjudicated {} after {} plies beyond {} cp.", result, Math.abs(winning),
+                    rules.resignScore());
+            }
+        }
+        if (rules.drawPlies() > 0 && result == GameResult.UNFINISHED) {
+            drawish = moveNumber >= rules.drawMove() && Math.abs(forWhite) <= rules.drawScore() ? drawish + 1 : 0;
+            if (drawish >= rules.drawPlies()) {
+                result = GameResult.DRAW;
+                log.debug("Adjudicated a draw after {} plies within {} cp.", drawish, rules.drawScore());
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,214 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.bhlangonijr.chesslib.Board;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache of search results keyed by position, MultiPV and engine identity. Lookups go through an in-memory LRU tier
+ * and then an optional memory-mapped disk tier ({@link MappedResultTable}) that survives restarts.
+ * <p>
+ * A cached result satisfies a request if it went at least as far on every limit the request sets: a search that
+ * reached depth 22 answers a depth 18 request, but not a 1 second one that was never timed. Searches without limits
+ * ('go infinite'), with clocks or looking for a mate are never cached. Positions are normalized to the first four
+ * FEN fields, so the move counters do not matter.
+ */
+@Slf4j
+public class AnalysisCache implements AutoCloseable {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** Identity of the engine (name, version, options) the results come from. */
+    private final long engineHash;
+    /** Memory tier, in access order. */
+    private final Map<Long, Entry> memory;
+    /** Disk tier, or null. */
+    private final MappedResultTable disk;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * A cached result and the movetime it was searched with.
+     *
+     * @param result   The search result.
+     * @param movetime The movetime of the search, 0 if it was not timed.
+     */
+    /* default */ record Entry(AnalysisResult result, int movetime) {
+
+        /* default */ boolean satisfies(final SearchLimits limits) {
+            return (limits.depth() == 0 || result.depth() >= limits.depth())
+                && (limits.nodes() == 0 || result.nodes() >= limits.nodes())
+                && (limits.movetime() == 0 || movetime >= limits.movetime());
+        }
+    }
+
+    /**
+     * Creates a memory-only cache.
+     *
+     * @param engineId      Identity of the engine, e.g. its 'id name' plus the options that change the search.
+     * @param memoryEntries Maximum number of results kept in memory.
+     */
+    public AnalysisCache(final String engineId, final int memoryEntries) {
+        this(engineId, memoryEntries, null);
+    }
+
+    /**
+     * Creates a cache backed by a file.
+     *
+     * @param engineId      Identity of the engine, e.g. its 'id name' plus the options that change the search.
+     * @param memoryEntries Maximum number of results kept in memory.
+     * @param file          The cache file, created if needed.
+     * @param diskSlots     Number of results the file can hold, at most about 16 million.
+     * @throws IOException If the file cannot be mapped.
+     */
+    public AnalysisCache(final String engineId, final int memoryEntries, final Path file, final int diskSlots)
+            throws IOException {
+        this(engineId, memoryEntries, new MappedResultTable(file, diskSlots));
+    }
+
+    private AnalysisCache(final String engineId, final int memoryEntries, final MappedResultTable disk) {
+        this.engineHash = hash(engineId);
+        this.disk = disk;
+        this.memory = new LinkedHashMap<>(Math.min(memoryEntries, 1 << 16), 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Entry> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+    /**
+     * Looks for a result good enough for the request.
+     *
+     * @param fen    The position in FEN format, optionally followed by " moves ...".
+     * @param limits The search limits.
+     * @return The cached result, or null if there is none.
+     */
+    public AnalysisResult get(final String fen, final SearchLimits limits) {
+        AnalysisResult result = null;
+        if (isCacheable(limits)) {
+            final long key = key(fen, limits.multiPv());
+            Entry entry;
+            synchronized (memory) {
+                entry = memory.get(key);
+            }
+            if ((entry == null || !entry.satisfies(limits)) && disk != null) {
+                final Entry stored = disk.get(key);
+                if (stored != null && (entry == null || stored.result().depth() > entry.result().depth())) {
+                    entry = stored;
+                    synchronized (memory) {
+                        memory.put(key, stored);
+                    }
+                }
+            }
+            if (entry != null && entry.satisfies(limits)) {
+                result = entry.result();
+            }
+        }
+        (result == null ? misses : hits).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Stores a result, keeping the deeper one if the position is already cached.
+     *
+     * @param fen    The position in FEN format, optionally followed by " moves ...".
+     * @param limits The search limits used.
+     * @param result The search result.
+     */
+    public void put(final String fen, final SearchLimits limits, final AnalysisResult result) {
+        if (isCacheable(limits) && !result.bestMove().isEmpty()) {
+            final long key = key(fen, limits.multiPv());
+            final Entry entry = new Entry(result, limits.movetime());
+            synchronized (memory) {
+                memory.merge(key, entry,
+                    (old, added) -> added.result().depth() >= old.result().depth() ? added : old);
+            }
+            if (disk != null) {
+                disk.put(key, entry);
+            }
+        }
+    }
+
+    private static boolean isCacheable(final SearchLimits limits) {
+        return !limits.hasClock() && limits.mate() == 0
+            && (limits.movetime() > 0 || limits.depth() > 0 || limits.nodes() > 0);
+    }
+
+    /* default */ long key(final String fen, final int multiPv) {
+        final long key = mix(hash(normalize(fen)) ^ engineHash * FNV_PRIME ^ Math.max(1, multiPv));
+        return key == 0 ? 1 : key; // 0 marks the empty slots of the disk tier
+    }
+
+    /**
+     * Reduces a position to the fields that matter for the search: placement, side to move, castling and en passant.
+     *
+     * @param fen The position in FEN format, optionally followed by " moves ...".
+     * @return The first four FEN fields of the resulting position.
+     */
+    /* default */ static String normalize(final String fen) {
+        String position = fen.trim();
+        final int moves = position.indexOf(" moves ");
+        if (moves >= 0) {
+            final Board board = new Board();
+            board.loadFromFen(position.substring(0, moves));
+            for (final String move : position.substring(moves + 7).trim().split(" +")) {
+                board.doMove(move);
+            }
+            position = board.getFen();
+        }
+        final String[] fields = position.split(" +");
+        return String.join(" ", Arrays.copyOf(fields, Math.min(4, fields.length)));
+    }
+
+    private static long hash(final String text) {
+        long hash = FNV_OFFSET;
+        for (final byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ b) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /** Final mix of MurmurHash3, so that similar positions spread over the disk buckets. */
+    private static long mix(final long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Number of lookups answered from the cache. */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Number of lookups that had to search. */
+    public long misses() {
+        return misses.get();
+    }
+
+    @Override
+    public void close() {
+        if (disk != null) {
+            try {
+                disk.close();
+            } catch (final IOException e) {
+                log.error("Error closing the analysis cache", e);
+            }
+        }
+        log.info("Analysis cache closed: {} hits, {} misses.", hits.get(), misses.get());
+    }
+
+}
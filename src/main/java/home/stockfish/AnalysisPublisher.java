@@ -0,0 +1,266 @@
+package home.stockfish;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes the progress of one search as {@link AnalysisUpdate}s, see {@link Stockfish#publish(SearchLimits)}. It
+ * completes when 'bestmove' arrives, or fails if the engine dies.
+ * <p>
+ * Subscribers get updates only as they request them. While a subscriber is behind, a newer update for a principal
+ * variation replaces the one still waiting, so at most one update per MultiPV line is kept: the engine reader never
+ * waits for a consumer, and memory stays bounded whatever the speed of either side. Updates are delivered on the
+ * given executor (a virtual thread by default), never on the engine reader thread. A late subscriber first gets the
+ * latest update of every line.
+ */
+public final class AnalysisPublisher implements Flow.Publisher<AnalysisUpdate>, UciListener {
+    /** Delivers the updates. */
+    private final Executor executor;
+    private final List<Lines> subscriptions = new CopyOnWriteArrayList<>();
+    /** Guards {@link #current}, {@link #finished} and {@link #failure}. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Latest update of every line, indexed by MultiPV - 1. */
+    private AnalysisUpdate[] current = new AnalysisUpdate[1];
+    private boolean finished;
+    private Throwable failure;
+    /** Result of the search, completed after the subscribers are told. */
+    private final CompletableFuture<AnalysisResult> result = new CompletableFuture<>();
+
+    /** Creates a publisher delivering on virtual threads. */
+    public AnalysisPublisher() {
+        this(runnable -> Thread.ofVirtual().name("analysis-publisher").start(runnable));
+    }
+
+    /**
+     * Creates a publisher.
+     *
+     * @param executor Delivers the updates to the subscribers.
+     */
+    public AnalysisPublisher(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Follows a search: the subscribers are completed (or failed) with it.
+     *
+     * @param search The future of the search this publisher listens to.
+     */
+    /* default */ void attach(final CompletableFuture<AnalysisResult> search) {
+        search.whenComplete((analysis, error) -> {
+            lock.lock();
+            try {
+                finished = true;
+                failure = error;
+            } finally {
+                lock.unlock();
+            }
+            for (final Lines lines : subscriptions) {
+                lines.finish(error);
+            }
+            if (error == null) {
+                result.complete(analysis);
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * The result of the search.
+     *
+     * @return Future completed when the search ends.
+     */
+    public CompletableFuture<AnalysisResult> result() {
+        return result;
+    }
+
+    @Override
+    public void onInfo(final InfoFields info) {
+        if (info.hasScore) {
+            final AnalysisUpdate update = AnalysisUpdate.of(info);
+            lock.lock();
+            try {
+                final int line = Math.max(1, update.multipv()) - 1;
+                if (line >= current.length) {
+                    current = Arrays.copyOf(current, line + 1);
+                }
+                current[line] = update;
+            } finally {
+                lock.unlock();
+            }
+            for (final Lines lines : subscriptions) {
+                lines.offer(update);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super AnalysisUpdate> subscriber) {
+        final Lines lines = new Lines(subscriber);
+        lock.lock();
+        try {
+            for (final AnalysisUpdate update : current) {
+                if (update != null) {
+                    lines.offer(update);
+                }
+            }
+            if (finished) {
+                lines.finish(failure);
+            } else {
+                subscriptions.add(lines);
+            }
+        } finally {
+            lock.unlock();
+        }
+        subscriber.onSubscribe(lines);
+        lines.start();
+    }
+
+    /** A subscription: the updates not yet delivered, at most one per line. */
+    private final class Lines implements Flow.Subscription {
+        private final Flow.Subscriber<? super AnalysisUpdate> subscriber;
+        /** Guards {@link #waiting}, {@link #order}, {@link #done} and {@link #error}. */
+        private final ReentrantLock guard = new ReentrantLock();
+        /** Update waiting for every line, indexed by MultiPV - 1; null if none. */
+        private AnalysisUpdate[] waiting = new AnalysisUpdate[1];
+        /** Lines with a waiting update, in the order they first got one. */
+        private final Deque<Integer> order = new ArrayDeque<>();
+        private boolean done;
+        private Throwable error;
+        private final AtomicLong demand = new AtomicLong();
+        /** Serializes the deliveries: the drain runs on one thread at a time. */
+        private final AtomicInteger work = new AtomicInteger();
+        /** True once onSubscribe returned, nothing is delivered before. */
+        private volatile boolean started;
+        private volatile boolean cancelled;
+
+        private Lines(final Flow.Subscriber<? super AnalysisUpdate> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        private void start() {
+            started = true;
+            schedule();
+        }
+
+        private void offer(final AnalysisUpdate update) {
+            guard.lock();
+            try {
+                if (!done) {
+                    final int line = Math.max(1, update.multipv()) - 1;
+                    if (line >= waiting.length) {
+                        waiting = Arrays.copyOf(waiting, line + 1);
+                    }
+                    if (waiting[line] == null) {
+                        order.addLast(line);
+                    }
+                    // Conflation: the subscriber only ever sees the latest state of a line
+                    waiting[line] = update;
+                }
+            } finally {
+                guard.unlock();
+            }
+            schedule();
+        }
+
+        private void finish(final Throwable failure) {
+            guard.lock();
+            try {
+                if (done) {
+                    // Already ended, e.g. by a non-positive request whose error must still be signalled (rule 3.9)
+                    return; // NOPMD OnlyOneReturn
+                }
+                done = true;
+                error = failure;
+            } finally {
+                guard.unlock();
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                guard.lock();
+                try {
+                    order.clear();
+                    done = true;
+                    error = new IllegalArgumentException("La demanda debe ser positiva: " + n);
+                } finally {
+                    guard.unlock();
+                }
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE
+                    : current + added);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void schedule() {
+            if (started && !cancelled && work.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            while (missed != 0) {
+                boolean more = true;
+                while (more && !cancelled) {
+                    more = deliverOne();
+                }
+                missed = work.addAndGet(-missed);
+            }
+        }
+
+        /** Delivers the next update, or the end of the stream; false if there is nothing to do now. */
+        private boolean deliverOne() {
+            AnalysisUpdate next = null;
+            boolean end = false;
+            Throwable failure = null;
+            guard.lock();
+            try {
+                if (order.isEmpty()) {
+                    end = done;
+                    failure = error;
+                } else if (demand.get() > 0) {
+                    final int line = order.pollFirst();
+                    next = waiting[line];
+                    waiting[line] = null;
+                }
+            } finally {
+                guard.unlock();
+            }
+            if (next != null) {
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                subscriber.onNext(next);
+            } else if (end) {
+                cancel();
+                if (failure == null) {
+                    subscriber.onComplete();
+                } else {
+                    subscriber.onError(failure);
+                }
+            }
+            return next != null;
+        }
+    }
+
+}
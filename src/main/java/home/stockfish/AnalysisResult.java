@@ -0,0 +1,73 @@
+package home.stockfish;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Outcome of a search: the best move and the last principal variation reported for it.
+ *
+ * @param bestMove The best move in UCI (lan) format, "(none)" if there are no legal moves.
+ * @param ponder   The expected reply, or null if the engine did not report one.
+ * @param depth    The depth reached.
+ * @param score    The score in centipawns, or the moves to mate if {@code mate} is true (side to move's view).
+ * @param mate     True if {@code score} is a mate distance.
+ * @param nodes    The number of nodes searched.
+ * @param pv       The principal variation in UCI (lan) format.
+ */
+public record AnalysisResult(String bestMove, String ponder, int depth, int score, boolean mate, long nodes,
+        List<String> pv) {
+
+    /**
+     * Parses the engine output of a search, up to and including the 'bestmove' line.
+     *
+     * @param output The engine output.
+     * @return The analysis result.
+     */
+    public static AnalysisResult parse(final String output) {
+        String bestMove = "";
+        String ponder = null;
+        int depth = 0;
+        int score = 0;
+        boolean mate = false;
+        long nodes = 0;
+        List<String> pv = List.of();
+        for (final String line : output.split("\n")) {
+            final String[] tokens = line.trim().split(" ");
+            if ("bestmove".equals(tokens[0]) && tokens.length > 1) {
+                bestMove = tokens[1];
+                if (tokens.length > 3 && "ponder".equals(tokens[2])) {
+                    ponder = tokens[3];
+                }
+            } else if ("info".equals(tokens[0]) && line.contains(" score ") && isFirstPv(tokens)) {
+                for (int i = 1; i < tokens.length - 1; i++) {
+                    switch (tokens[i]) {
+                        case "depth" -> depth = Integer.parseInt(tokens[++i]);
+                        case "nodes" -> nodes = Long.parseLong(tokens[++i]);
+                        case "score" -> {
+                            mate = "mate".equals(tokens[++i]);
+                            score = Integer.parseInt(tokens[++i]);
+                        }
+                        case "pv" -> {
+                            pv = List.copyOf(Arrays.asList(tokens).subList(i + 1, tokens.length));
+                            i = tokens.length;
+                        }
+                        default -> {
+                            // Other fields are not needed
+                        }
+                    }
+                }
+            }
+        }
+        return new AnalysisResult(bestMove, ponder, depth, score, mate, nodes, pv);
+    }
+
+    private static boolean isFirstPv(final String... tokens) {
+        for (int i = 1; i < tokens.length - 1; i++) {
+            if ("multipv".equals(tokens[i])) {
+                return "1".equals(tokens[i + 1]); // NOPMD OnlyOneReturn
+            }
+        }
+        return true;
+    }
+
+}
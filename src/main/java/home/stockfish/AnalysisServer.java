@@ -0,0 +1,497 @@
+package home.stockfish;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Long-running analysis service over a line protocol on a local TCP socket (loopback only), backed by a pool of
+ * warm engines. Every connection and every request runs on its own virtual thread; requests queue for the engines
+ * of the {@link EnginePool}, and at most 'server.max.requests' are queued or running at once (more are refused
+ * with "busy").
+ * <p>
+ * Commands, one per line:
+ * <ul>
+ * <li>{@code go <id> [movetime N] [depth N] [nodes N] [mate N] [multipv N] [deadline MS] fen <FEN> [moves ...]}:
+ * analyses a position. The deadline counts from the arrival of the request and covers the wait for an engine: a
+ * request still queued then fails, a running search gets 'stop' and answers its best move so far;</li>
+ * <li>{@code stop <id>}: cancels a request, sending 'stop' to its engine if it is already searching;</li>
+ * <li>{@code quit}: closes the connection, cancelling its requests.</li>
+ * </ul>
+ * Every request gets one JSON line back, in any order: the analysis as written by {@link BatchAnalyzer}, or
+ * {@code {"id":"<id>","error":"<reason>"}}. With multipv above 1 the analysis also has a "lines" array with the last
+ * exact score of every principal variation: {@code {"multipv":2,"depth":..,"score":..,"mate":..,"pv":[..]}}.
+ */
+@Slf4j
+public final class AnalysisServer implements AutoCloseable {
+    /** Time allowed for a search without movetime or deadline (depth, nodes or mate limits). */
+    private static final int SEARCH_TIMEOUT = 600_000;
+    /** Extra time allowed over the requested movetime before sending 'stop'. */
+    private static final int MOVETIME_SLACK = 5_000;
+    /** Time allowed to the running requests to give their engines back when the server is closed. */
+    private static final int CLOSE_TIMEOUT = 10_000;
+    private final EnginePool pool;
+    private final ServerSocket socket;
+    /** Requests that may be queued or running. */
+    private final Semaphore slots;
+    /** Runs the connections and the requests, one virtual thread each. */
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    /** Released by {@link #close()}. */
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    /**
+     * A request of a client.
+     *
+     * @param id       The id chosen by the client, echoed in the answer.
+     * @param fen      The position in FEN format, optionally followed by " moves ...".
+     * @param limits   The search limits; a search without limits runs until the deadline.
+     * @param deadline Time allowed for the whole request in milliseconds, 0 for none.
+     */
+    /* default */ record Request(String id, String fen, SearchLimits limits, long deadline) {
+    }
+
+    /** A request being served, which the client may cancel. */
+    private static final class Job {
+        private final Request request;
+        /** Time the request arrived, from {@link System#nanoTime()}. */
+        private final long received = System.nanoTime();
+        private volatile boolean cancelled;
+        /** The engine taken for the request, null while queued and once given back. */
+        private Stockfish engine;
+        /** Every principal variation of a MultiPV search, or null. */
+        private Lines lines;
+        /** The thread serving the request, interrupted to cancel it while queued. */
+        private Thread worker;
+        /**
+         * Guards {@link #engine} and {@link #worker}, so a late cancel never stops the engine once it serves another
+         * request, nor interrupts the worker once it has an engine.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private Job(final Request request) {
+            this.request = request;
+        }
+
+        private void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                if (engine != null) {
+                    engine.sendCommand("stop");
+                } else if (worker != null) {
+                    worker.interrupt();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void start() {
+            lock.lock();
+            try {
+                worker = Thread.currentThread();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void attach(final Stockfish taken) {
+            lock.lock();
+            try {
+                engine = taken;
+                // A cancel that came after the checkout interrupted nothing worth keeping; 'cancelled' tells
+                Thread.interrupted();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Takes the engine back from the request, null if it never had one. The request is answered: a late cancel
+         * no longer interrupts the worker, which is giving the engine back.
+         */
+        private Stockfish detach() {
+            lock.lock();
+            try {
+                final Stockfish taken = engine;
+                engine = null;
+                worker = null;
+                return taken;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Milliseconds left before the deadline, or {@link Long#MAX_VALUE} without one. */
+        private long remaining() {
+            return request.deadline() > 0
+                ? request.deadline() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - received) : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Keeps the last exact 'info' line of every principal variation. Written by the engine reader and read once the
+     * search is over, which the completion of the search orders.
+     */
+    private static final class Lines implements UciListener {
+        private final AnalysisUpdate[] latest;
+
+        private Lines(final int multiPv) {
+            latest = new AnalysisUpdate[multiPv];
+        }
+
+        @Override
+        public void onInfo(final InfoFields info) {
+            if (info.hasScore && info.bound == InfoFields.EXACT && info.multipv >= 1 && info.multipv <= latest.length) {
+                latest[info.multipv - 1] = AnalysisUpdate.of(info);
+            }
+        }
+
+        /** Adds the lines to the JSON analysis, as a "lines" array. */
+        private String appendTo(final String json) {
+            final StringBuilder text = new StringBuilder(json.length() + 128 * latest.length)
+                .append(json, 0, json.length() - 1).append(",\"lines\":[");
+            boolean first = true;
+            for (final AnalysisUpdate line : latest) {
+                if (line != null) {
+                    text.append(first ? "" : ",").append("{\"multipv\":").append(line.multipv())
+                        .append(",\"depth\":").append(line.depth()).append(",\"score\":").append(line.score())
+                        .append(",\"mate\":").append(line.mate()).append(",\"pv\":[");
+                    final List<String> pv = line.pv();
+                    for (int i = 0; i < pv.size(); i++) {
+                        text.append(i == 0 ? "\"" : ",\"").append(pv.get(i)).append('"');
+                    }
+                    text.append("]}");
+                    first = false;
+                }
+            }
+            return text.append("]}").toString();
+        }
+    }
+
+    /** A client connection: its pending jobs and the writer shared by their answers. */
+    private static final class Connection {
+        private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+        private final Writer writer;
+        /** Guards the socket writer: the jobs of a connection answer from their own threads, one line at a time. */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private Connection(final Socket client) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        private void reply(final String line) {
+            lock.lock();
+            try {
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+            } catch (final IOException e) {
+                log.debug("Can't answer the client: {}", e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Starts listening.
+     *
+     * @param pool        The engines.
+     * @param port        The TCP port, 0 for any free one.
+     * @param maxRequests Requests that may be queued or running at once.
+     * @throws IOException If the port cannot be bound.
+     */
+    public AnalysisServer(final EnginePool pool, final int port, final int maxRequests) throws IOException {
+        this.pool = pool;
+        this.slots = new Semaphore(maxRequests);
+        socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        executor.submit(this::accept);
+        log.info("Analysis server listening on port {}.", getPort());
+    }
+
+    /**
+     * The port the server listens on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    private void accept() {
+        try {
+            while (!socket.isClosed()) {
+                final Socket client = socket.accept();
+                executor.submit(() -> serve(client));
+            }
+        } catch (final SocketException e) {
+            log.debug("Server socket closed: {}", e.getMessage());
+        } catch (final IOException e) {
+            log.error("Can't accept connections", e);
+        }
+    }
+
+    private void serve(final Socket client) {
+        Connection connection = null;
+        try (client; BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            connection = new Connection(client);
+            String line = reader.readLine();
+            while (line != null && !"quit".equals(line.trim())) {
+                handle(connection, line);
+                line = reader.readLine();
+            }
+        } catch (final IOException e) {
+            log.debug("Connection closed: {}", e.getMessage());
+        } finally {
+            if (connection != null) {
+                final Connection closing = connection;
+                uninterrupted(() -> closing.jobs.values().forEach(Job::cancel));
+            }
+        }
+    }
+
+    private void handle(final Connection connection, final String line) {
+        final String[] words = line.trim().split("\\s+", 3);
+        if ("go".equals(words[0])) {
+            try {
+                submit(connection, new Job(parse(line)));
+            } catch (final IllegalArgumentException e) {
+                connection.reply(error(words.length > 1 ? words[1] : "", e.getMessage()));
+            }
+        } else if ("stop".equals(words[0]) && words.length > 1) {
+            final Job job = connection.jobs.get(words[1]);
+            if (job != null) {
+                job.cancel();
+            }
+        } else if (!words[0].isEmpty()) {
+            connection.reply(error("", "unknown command: " + words[0]));
+        }
+    }
+
+    private void submit(final Connection connection, final Job job) {
+        final String id = job.request.id();
+        if (connection.jobs.putIfAbsent(id, job) != null) {
+            connection.reply(error(id, "duplicate id"));
+        } else if (slots.tryAcquire()) {
+            executor.submit(() -> run(connection, job));
+        } else {
+            connection.jobs.remove(id);
+            Metrics.increment("server_rejected_total", "");
+            connection.reply(error(id, "busy"));
+        }
+    }
+
+    private void run(final Connection connection, final Job job) {
+        final Request request = job.request;
+        try {
+            job.start();
+            final AnalysisResult result = analyse(job);
+            if (result == null) {
+                connection.reply(error(request.id(), job.cancelled ? "cancelled" : "timeout"));
+            } else {
+                final String json = BatchAnalyzer.toJson(new BatchAnalyzer.Position(request.fen(), request.id()),
+                    result);
+                connection.reply(job.lines == null ? json : job.lines.appendTo(json));
+            }
+        } catch (final IllegalStateException e) {
+            connection.reply(error(request.id(), e.getMessage()));
+        } catch (final InterruptedException e) {
+            if (job.cancelled) {
+                connection.reply(error(request.id(), "cancelled"));
+            } else {
+                Thread.currentThread().interrupt();
+                connection.reply(error(request.id(), "server shutting down"));
+            }
+        } finally {
+            // The client has its answer before the engine is reset for the next request
+            final Stockfish engine = job.detach();
+            if (engine != null) {
+                uninterrupted(() -> pool.release(engine));
+            }
+            connection.jobs.remove(request.id());
+            slots.release();
+        }
+    }
+
+    /**
+     * Waits for an engine and searches, leaving the engine attached to the job; null if the request was cancelled or
+     * its deadline passed while queued.
+     */
+    private AnalysisResult analyse(final Job job) throws InterruptedException {
+        final long start = System.nanoTime();
+        final Stockfish engine = pool.tryCheckout(Math.max(0, Math.min(job.remaining(), SEARCH_TIMEOUT)));
+        Metrics.recordSince("server_queue_microseconds", "", start);
+        if (engine != null) {
+            job.attach(engine);
+        }
+        if (engine == null || job.cancelled || job.remaining() <= 0) {
+            return null; // NOPMD OnlyOneReturn
+        }
+        final SearchLimits limits = job.request.limits();
+        final int multiPv = Math.max(1, limits.multiPv());
+        engine.setOption("MultiPV", multiPv);
+        engine.sendCommand("position fen " + job.request.fen());
+        job.lines = multiPv > 1 ? new Lines(multiPv) : null;
+        final CompletableFuture<AnalysisResult> search = engine.search(limits, job.lines, UciParser.INFO);
+        // A cancel that came before 'go' sent its 'stop' too early
+        if (job.cancelled) {
+            engine.sendCommand("stop");
+        }
+        final long timeout = limits.maxMillis() > 0 ? limits.maxMillis() + MOVETIME_SLACK : SEARCH_TIMEOUT;
+        final AnalysisResult result = engine.awaitSearch(search, Math.max(0, Math.min(timeout, job.remaining())));
+        return job.cancelled ? null : result;
+    }
+
+    /**
+     * Runs an action that talks to an engine with the interrupt flag of the thread cleared, and sets it again after.
+     * Threads are interrupted on cancels and on {@link #close()}; an interrupted write closes the engine's pipe or
+     * socket, and the pool would then restart a healthy engine.
+     */
+    private static void uninterrupted(final Runnable action) {
+        final boolean interrupted = Thread.interrupted();
+        try {
+            action.run();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String error(final String id, final String reason) {
+        return "{\"id\":\"" + escape(id) + "\",\"error\":\"" + escape(reason) + "\"}";
+    }
+
+    private static String escape(final String text) {
+        return text == null ? "" : text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Reads a 'go' command.
+     *
+     * @param line The command.
+     * @return The request.
+     */
+    /* default */ static Request parse(final String line) {
+        final String[] words = line.trim().split("\\s+");
+        if (words.length < 3 || !"go".equals(words[0])) {
+            throw new IllegalArgumentException("Petición no válida: " + line);
+        }
+        int movetime = 0;
+        int depth = 0;
+        long nodes = 0;
+        int mate = 0;
+        int multiPv = 1;
+        long deadline = 0;
+        int i = 2;
+        try {
+            for (; i + 1 < words.length && !"fen".equals(words[i]); i += 2) {
+                final String value = words[i + 1];
+                switch (words[i]) {
+                    case "movetime" -> movetime = Integer.parseInt(value);
+                    case "depth" -> depth = Integer.parseInt(value);
+                    case "nodes" -> nodes = Long.parseLong(value);
+                    case "mate" -> mate = Integer.parseInt(value);
+                    case "multipv" -> multiPv = Integer.parseInt(value);
+                    case "deadline" -> deadline = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Límite no válido: " + words[i]);
+                }
+            }
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Valor no válido para " + words[i] + ": " + words[i + 1], e);
+        }
+        if (i + 1 >= words.length || !"fen".equals(words[i])) {
+            throw new IllegalArgumentException("Falta la posición: " + line);
+        }
+        final SearchLimits limits = new SearchLimits(movetime, depth, nodes, mate, 0, 0, 0, 0, 0, multiPv);
+        if (deadline <= 0 && movetime <= 0 && depth <= 0 && nodes <= 0 && mate <= 0) {
+            throw new IllegalArgumentException("Una búsqueda sin límites necesita un deadline: " + line);
+        }
+        final String fen = String.join(" ", Arrays.copyOfRange(words, i + 1, words.length));
+        return new Request(words[1], fen, limits, deadline);
+    }
+
+    /**
+     * Waits until the server is closed.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void await() throws InterruptedException {
+        closed.await();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        executor.shutdownNow();
+        // The interrupted requests are still releasing their engines, the pool may be closed right after
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                log.warn("Requests still running after closing the server.");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closed.countDown();
+        }
+    }
+
+    /**
+     * Serves analyses until the process is stopped. Reads the pool settings (see
+     * {@link EnginePool#fromProperties(Properties)}), 'server.port' and 'server.max.requests' from the configuration.
+     *
+     * @param args Not used.
+     * @throws IOException          If the configuration cannot be read or the port cannot be bound.
+     * @throws InterruptedException If interrupted while serving.
+     */
+    public static void main(final String... args) throws IOException, InterruptedException {
+        final Properties properties = new Properties();
+        try (InputStream config = Files.newInputStream(Paths.get(StockfishMain.CONFIG_FILE))) {
+            properties.load(config);
+        }
+        final int port = Integer.parseInt(properties.getProperty("server.port", "7070"));
+        final int maxRequests = Integer.parseInt(properties.getProperty("server.max.requests", "64"));
+
+        try (Metrics.Reporter metrics = Metrics.fromProperties(properties);
+                EnginePool pool = EnginePool.fromProperties(properties);
+                EngineSupervisor supervisor = EngineSupervisor.fromProperties(pool, properties);
+                AnalysisServer server = new AnalysisServer(pool, port, maxRequests)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                } catch (final IOException e) {
+                    log.warn("Can't close the server: {}", e.getMessage());
+                }
+            }));
+            server.await();
+        }
+    }
+
+}
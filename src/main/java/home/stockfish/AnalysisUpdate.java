@@ -0,0 +1,48 @@
+package home.stockfish;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Progress of a search: one 'info' line with a score, for one principal variation.
+ *
+ * @param multipv  The principal variation number, from 1.
+ * @param depth    The depth reached.
+ * @param seldepth The selective depth.
+ * @param score    The score in centipawns, or the moves to mate if {@code mate} is true (side to move's view).
+ * @param mate     True if {@code score} is a mate distance.
+ * @param bound    {@link InfoFields#EXACT}, {@link InfoFields#LOWERBOUND} or {@link InfoFields#UPPERBOUND}.
+ * @param nodes    The number of nodes searched.
+ * @param nps      The nodes per second.
+ * @param time     The search time in milliseconds.
+ * @param moves    The principal variation as {@link MoveCodec} codes.
+ */
+public record AnalysisUpdate(int multipv, int depth, int seldepth, int score, boolean mate, int bound, long nodes,
+        long nps, long time, int[] moves) {
+
+    /**
+     * Copies a parsed 'info' line.
+     *
+     * @param info The line, reused by the parser afterwards.
+     * @return The update.
+     */
+    public static AnalysisUpdate of(final InfoFields info) {
+        return new AnalysisUpdate(info.multipv, info.depth, info.seldepth, info.score, info.mate, info.bound,
+            info.nodes, info.nps, info.time, Arrays.copyOf(info.pv, info.pvLength));
+    }
+
+    /**
+     * The principal variation.
+     *
+     * @return The moves in UCI (lan) format.
+     */
+    public List<String> pv() {
+        final List<String> lans = new ArrayList<>(moves.length);
+        for (final int move : moves) {
+            lans.add(MoveCodec.toLan(move));
+        }
+        return lans;
+    }
+
+}
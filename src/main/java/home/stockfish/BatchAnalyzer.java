@@ -0,0 +1,400 @@
+package home.stockfish;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Square;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Analyses a file of positions (EPD or one FEN per line) on an {@link EnginePool}, streaming the results to an EPD
+ * or JSONL file in input order.
+ * <p>
+ * Positions are read lazily and at most {@code maxInFlight} of them are queued or being analysed, so memory stays
+ * bounded whatever the size of the input. Progress is saved in a {@code <output>.checkpoint} file (lines done and
+ * output length); a new run with the same files truncates the output to the checkpoint and resumes from there.
+ */
+@Slf4j
+public class BatchAnalyzer {
+    /** Throughput is logged every this many positions. */
+    private static final int REPORT_EVERY = 10_000;
+    /** The checkpoint is saved every this many positions. */
+    private static final int CHECKPOINT_EVERY = 1_000;
+    /** EPD 'id' operation. */
+    private static final Pattern ID = Pattern.compile("\\bid\\s+\"([^\"]*)\"");
+    /** Move counters at the end of a FEN. */
+    private static final Pattern COUNTERS = Pattern.compile("\\d+\\s+\\d+\\s*");
+    /** Marks the end of the input in the queue. */
+    private static final Pending END = new Pending(null, null);
+    /** Engines analysing the positions. */
+    private final EnginePool pool;
+    /** Search limits of every position. */
+    private final SearchLimits limits;
+    /** Maximum number of positions queued or being analysed. */
+    private final int maxInFlight;
+    /** Start of the run, in milliseconds. */
+    private long startMillis;
+
+    /** Output formats. */
+    public enum Format {
+        /** EPD with bm, ce (or dm), acd and pv operations, moves in SAN. */
+        EPD,
+        /** One JSON object per line, moves in UCI (lan) format. */
+        JSONL;
+
+        /**
+         * Chooses the format from the file extension: ".epd" for EPD, anything else for JSONL.
+         *
+         * @param file The output file.
+         * @return The format.
+         */
+        public static Format of(final Path file) {
+            return file.getFileName().toString().endsWith(".epd") ? EPD : JSONL;
+        }
+    }
+
+    /**
+     * A position read from the input.
+     *
+     * @param fen The position in FEN format.
+     * @param id  The EPD 'id' operation, or null.
+     */
+    /* default */ record Position(String fen, String id) {
+    }
+
+    /** A line of the input and its analysis; both null for lines without a position. */
+    private record Pending(Position position, CompletableFuture<AnalysisResult> analysis) {
+    }
+
+    /**
+     * Progress of a run.
+     *
+     * @param lines Input lines done.
+     * @param bytes Output bytes written for them.
+     */
+    /* default */ record Checkpoint(long lines, long bytes) {
+
+        /* default */ static Checkpoint read(final Path file) throws IOException {
+            Checkpoint checkpoint = new Checkpoint(0, 0);
+            if (Files.exists(file)) {
+                final String[] fields = Files.readString(file).trim().split(" ");
+                checkpoint = new Checkpoint(Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+            }
+            return checkpoint;
+        }
+
+        /* default */ void write(final Path file) throws IOException {
+            final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(temporary, lines + " " + bytes + "\n");
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param pool        Engines analysing the positions.
+     * @param limits      Search limits of every position.
+     * @param maxInFlight Maximum number of positions queued or being analysed.
+     */
+    public BatchAnalyzer(final EnginePool pool, final SearchLimits limits, final int maxInFlight) {
+        this.pool = pool;
+        this.limits = limits;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Analyses all the positions of the input, resuming from the checkpoint of a previous run if there is one.
+     *
+     * @param input  The EPD or FEN file.
+     * @param output The result file, EPD if its name ends with ".epd", JSONL otherwise.
+     * @return The number of positions analysed in this run.
+     * @throws IOException If an I/O error occurs reading or writing the files.
+     */
+    public long run(final Path input, final Path output) throws IOException {
+        final Path checkpointFile = output.resolveSibling(output.getFileName() + ".checkpoint");
+        final Checkpoint start = Checkpoint.read(checkpointFile);
+        final Format format = Format.of(output);
+        final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(maxInFlight);
+        startMillis = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+                FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(start.bytes());
+            channel.position(start.bytes());
+            final OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            for (long i = 0; i < start.lines() && reader.readLine() != null; i++) {
+                // Already done in a previous run
+            }
+            if (start.lines() > 0) {
+                log.info("Resuming after {} lines.", start.lines());
+            }
+            final CompletableFuture<Long> writing = CompletableFuture.supplyAsync(
+                () -> write(queue, out, format, start, checkpointFile), runnable -> Thread.ofVirtual().start(runnable));
+            try {
+                long number = start.lines();
+                String line;
+                while ((line = reader.readLine()) != null) { // NOPMD AssignmentInOperand
+                    number++;
+                    final Position position = parseOrSkip(line, number);
+                    enqueue(queue, writing, position == null ? new Pending(null, null)
+                        : new Pending(position, pool.analyse(position.fen(), limits)));
+                }
+            } finally {
+                // Even if reading fails, the writer flushes what is done and saves the checkpoint
+                enqueue(queue, writing, END);
+            }
+            return writing.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /** Reads a line, skipping it (as a line without a position) if it is not valid. */
+    private static Position parseOrSkip(final String line, final long number) {
+        Position position = null;
+        try {
+            position = parse(line);
+        } catch (final IllegalArgumentException e) {
+            log.warn("Skipping line {}: {}", number, e.getMessage());
+        }
+        return position;
+    }
+
+    /** Queues a line, waiting while the queue is full (backpressure) and failing if the writer died. */
+    private static void enqueue(final BlockingQueue<Pending> queue, final CompletableFuture<Long> writing,
+            final Pending pending) {
+        try {
+            while (!queue.offer(pending, 1, TimeUnit.SECONDS)) {
+                if (writing.isDone()) {
+                    writing.join();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    /** Writes the results in input order, saving the checkpoint now and then. */
+    private long write(final BlockingQueue<Pending> queue, final OutputStream out, final Format format,
+            final Checkpoint start, final Path checkpointFile) {
+        long lines = start.lines();
+        long bytes = start.bytes();
+        long analysed = 0;
+        try {
+            Pending pending;
+            while ((pending = queue.take()) != END) { // NOPMD AssignmentInOperand
+                if (pending.position() != null) {
+                    final byte[] result = (format(pending, format) + "\n").getBytes(StandardCharsets.UTF_8);
+                    out.write(result);
+                    bytes += result.length;
+                    analysed++;
+                    if (analysed % REPORT_EVERY == 0 && log.isInfoEnabled()) {
+                        log.info("{} positions analysed, {} positions/s.", analysed,
+                            String.format("%.1f", positionsPerSecond(analysed)));
+                    }
+                }
+                lines++;
+                if (lines % CHECKPOINT_EVERY == 0) {
+                    out.flush();
+                    new Checkpoint(lines, bytes).write(checkpointFile);
+                }
+            }
+            out.flush();
+            new Checkpoint(lines, bytes).write(checkpointFile);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        if (log.isInfoEnabled()) {
+            log.info("{} positions analysed, {} positions/s.", analysed,
+                String.format("%.1f", positionsPerSecond(analysed)));
+        }
+        return analysed;
+    }
+
+    private double positionsPerSecond(final long analysed) {
+        return analysed * 1000.0 / Math.max(1, System.currentTimeMillis() - startMillis);
+    }
+
+    private static String format(final Pending pending, final Format format) {
+        final Position position = pending.position();
+        String text;
+        try {
+            final AnalysisResult result = pending.analysis().join();
+            text = format == Format.EPD ? toEpd(position, result) : toJson(position, result);
+        } catch (final RuntimeException e) {
+            // A failed analysis, or a PV that cannot be converted to SAN, must not stop the writer
+            final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            log.error("Analysis of {} failed", position.fen(), cause);
+            text = format == Format.EPD ? epdPosition(position.fen()) + " c0 \"error\";"
+                : "{\"fen\":\"" + escape(position.fen()) + "\",\"error\":\"" + escape(String.valueOf(cause))
+                    + "\"}";
+        }
+        return text;
+    }
+
+    /**
+     * Reads a line of EPD or FEN.
+     *
+     * @param line The line.
+     * @return The position, or null for empty lines and comments.
+     */
+    /* default */ static Position parse(final String line) {
+        final String trimmed = line.trim();
+        Position position = null;
+        if (!trimmed.isEmpty() && trimmed.charAt(0) != '#') {
+            final String[] fields = trimmed.split("\\s+", 5);
+            if (fields.length < 4) {
+                throw new IllegalArgumentException("Posición no válida: " + line);
+            }
+            if (!valid(fields[0], fields[1])) {
+                throw new IllegalArgumentException("Posición no válida: " + line);
+            }
+            final String placement = String.join(" ", fields[0], fields[1], fields[2], fields[3]);
+            final String rest = fields.length > 4 ? fields[4] : "";
+            if (COUNTERS.matcher(rest).matches()) {
+                position = new Position(placement + " " + rest.trim(), null);
+            } else {
+                final Matcher id = ID.matcher(rest);
+                position = new Position(placement + " 0 1", id.find() ? id.group(1) : null);
+            }
+        }
+        return position;
+    }
+
+    /** Whether the board has exactly one king per side and the side to move is "w" or "b". */
+    private static boolean valid(final String placement, final String side) {
+        if (!"w".equals(side) && !"b".equals(side)) {
+            return false; // NOPMD OnlyOneReturn
+        }
+        final Board board = new Board();
+        try {
+            board.loadFromFen(placement + " " + side + " - - 0 1");
+        } catch (final RuntimeException e) {
+            return false; // NOPMD OnlyOneReturn
+        }
+        int white = 0;
+        int black = 0;
+        for (final Square square : Square.values()) {
+            if (square != Square.NONE) {
+                final Piece piece = board.getPiece(square);
+                white += piece == Piece.WHITE_KING ? 1 : 0;
+                black += piece == Piece.BLACK_KING ? 1 : 0;
+            }
+        }
+        return white == 1 && black == 1;
+    }
+
+    /* default */ static String toEpd(final Position position, final AnalysisResult result) {
+        final StringBuilder epd = new StringBuilder(epdPosition(position.fen()));
+        final List<String> pv = result.pv().isEmpty() || !result.pv().get(0).equals(result.bestMove())
+            ? List.of(result.bestMove()) : result.pv();
+        if (!"(none)".equals(result.bestMove()) && !result.bestMove().isEmpty()) {
+            final List<String> san = MoveUtils.toSan(position.fen(), pv);
+            epd.append(" bm ").append(san.get(0)).append(';');
+            if (result.mate()) {
+                epd.append(" dm ").append(result.score()).append(';');
+            } else {
+                epd.append(" ce ").append(result.score()).append(';');
+            }
+            epd.append(" acd ").append(result.depth()).append("; pv ").append(String.join(" ", san)).append(';');
+        }
+        if (position.id() != null) {
+            epd.append(" id \"").append(position.id()).append("\";");
+        }
+        return epd.toString();
+    }
+
+    private static String epdPosition(final String fen) {
+        final String[] fields = fen.split(" ");
+        return String.join(" ", fields[0], fields[1], fields[2], fields[3]);
+    }
+
+    /* default */ static String toJson(final Position position, final AnalysisResult result) {
+        final StringBuilder json = new StringBuilder(256).append("{\"fen\":\"").append(escape(position.fen()))
+            .append('"');
+        if (position.id() != null) {
+            json.append(",\"id\":\"").append(escape(position.id())).append('"');
+        }
+        json.append(",\"bestmove\":\"").append(result.bestMove()).append('"');
+        if (result.ponder() != null) {
+            json.append(",\"ponder\":\"").append(result.ponder()).append('"');
+        }
+        json.append(",\"depth\":").append(result.depth()).append(",\"score\":").append(result.score())
+            .append(",\"mate\":").append(result.mate()).append(",\"nodes\":").append(result.nodes())
+            .append(",\"pv\":[");
+        for (int i = 0; i < result.pv().size(); i++) {
+            json.append(i == 0 ? "\"" : ",\"").append(result.pv().get(i)).append('"');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String escape(final String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Analyses a file of positions with the engine and pool settings of the configuration file.
+     *
+     * @param args The EPD or FEN input file and the output file (EPD if it ends with ".epd", JSONL otherwise).
+     * @throws IOException If an I/O error occurs reading or writing the files.
+     */
+    public static void main(final String... args) throws IOException {
+        if (args.length < 2) {
+            log.error("Usage: BatchAnalyzer <epd or fen file> <output file>");
+            return;
+        }
+        final Properties properties = new Properties();
+        try (InputStream config = Files.newInputStream(Paths.get(StockfishMain.CONFIG_FILE))) {
+            properties.load(config);
+        }
+        final int depth = Integer.parseInt(properties.getProperty("batch.depth", "0"));
+        final SearchLimits limits = depth > 0 ? SearchLimits.depth(depth) : StockfishConfig.readLimits(properties,
+            Integer.parseInt(properties.getProperty("thinking.time", "1000")));
+        final String cacheFile = properties.getProperty("cache.file", "");
+        final int cacheEntries = Integer.parseInt(properties.getProperty("cache.entries", "100000"));
+
+        try (Metrics.Reporter metrics = Metrics.fromProperties(properties);
+                EnginePool pool = EnginePool.fromProperties(properties);
+                AnalysisCache cache = cacheFile.isEmpty()
+                    ? new AnalysisCache(pool.getEngineInfo().name(), cacheEntries)
+                    : new AnalysisCache(pool.getEngineInfo().name(), cacheEntries, Path.of(cacheFile),
+                        Integer.parseInt(properties.getProperty("cache.slots", "1000000")));
+                EngineSupervisor supervisor = EngineSupervisor.fromProperties(pool, properties)) {
+            pool.setCache(cache);
+            pool.setEarlyStop(EarlyStop.fromProperties(properties));
+            new BatchAnalyzer(pool, limits, pool.getSize() * 4).run(Path.of(args[0]), Path.of(args[1]));
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package home.stockfish;
+
+import java.nio.CharBuffer;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Square;
+
+/**
+ * Draws a board with Unicode pieces, in the layout of Stockfish's 'd' command, from the local board: no FEN is
+ * built or parsed and no engine round-trip is needed.
+ * <p>
+ * The diagram is a fixed template where only the 64 piece cells change, so rendering writes one glyph per square
+ * from a lookup table into a buffer reused by every call. Not thread-safe: use one renderer per game.
+ */
+public final class BoardRenderer {
+    /** Board separator line, as printed by Stockfish's 'd' command. */
+    private static final String SEPARATOR = " +---+---+---+---+---+---+---+---+";
+    /** Squares by index (a1 = 0, h8 = 63). */
+    private static final Square[] SQUARES = Square.values();
+    /** Glyph of every piece, by ordinal; a blank for {@link Piece#NONE}. */
+    private static final char[] GLYPHS = new char[Piece.values().length];
+    /** The diagram of an empty board. */
+    private static final char[] TEMPLATE;
+    /** Position in {@link #TEMPLATE} of the cell of every square. */
+    private static final int[] CELLS = new int[64];
+
+    static {
+        for (final Piece piece : Piece.values()) {
+            GLYPHS[piece.ordinal()] = switch (piece) {
+                case WHITE_KING -> '♔';
+                case WHITE_QUEEN -> '♕';
+                case WHITE_ROOK -> '♖';
+                case WHITE_BISHOP -> '♗';
+                case WHITE_KNIGHT -> '♘';
+                case WHITE_PAWN -> '♙';
+                case BLACK_KING -> '♚';
+                case BLACK_QUEEN -> '♛';
+                case BLACK_ROOK -> '♜';
+                case BLACK_BISHOP -> '♝';
+                case BLACK_KNIGHT -> '♞';
+                case BLACK_PAWN -> '♟';
+                default -> ' ';
+            };
+        }
+        final StringBuilder template = new StringBuilder(700).append(SEPARATOR).append('\n');
+        for (int rank = 7; rank >= 0; rank--) {
+            template.append(" |");
+            for (int file = 0; file < 8; file++) {
+                CELLS[rank * 8 + file] = template.length() + 1;
+                template.append("   |");
+            }
+            template.append(' ').append(rank + 1).append('\n').append(SEPARATOR).append('\n');
+        }
+        template.append("   a   b   c   d   e   f   g   h");
+        TEMPLATE = template.toString().toCharArray();
+    }
+
+    /** The diagram of the last board rendered. */
+    private final char[] buffer = TEMPLATE.clone();
+
+    /**
+     * Draws a board.
+     *
+     * @param board The board.
+     * @return The diagram, a view of the reused buffer valid until the next call.
+     */
+    public CharSequence render(final Board board) {
+        for (int square = 0; square < CELLS.length; square++) {
+            buffer[CELLS[square]] = GLYPHS[board.getPiece(SQUARES[square]).ordinal()];
+        }
+        return CharBuffer.wrap(buffer);
+    }
+
+}
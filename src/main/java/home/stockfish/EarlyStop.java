@@ -0,0 +1,75 @@
+package home.stockfish;
+
+import java.util.Properties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Policy that ends a search before its limit when more thinking is unlikely to change the answer: the best move has
+ * stayed the same for a number of depth iterations, or the score is decisive. The engine is told to 'stop' and
+ * answers with its current best move. Only the first principal variation is watched.
+ *
+ * @param stableDepths Consecutive completed depths with the same best move that end the search, 0 to disable.
+ * @param decisiveCp   Absolute score in centipawns that ends the search (mate scores always do), 0 to disable.
+ * @param minDepth     No search is stopped before this depth.
+ */
+@Slf4j
+public record EarlyStop(int stableDepths, int decisiveCp, int minDepth) {
+
+    /**
+     * Reads the policy from the configuration: 'early.stop.stable', 'early.stop.decisive' and 'early.stop.min.depth'.
+     *
+     * @param properties The configuration.
+     * @return The policy, or null if both rules are disabled.
+     */
+    public static EarlyStop fromProperties(final Properties properties) {
+        final int stable = Integer.parseInt(properties.getProperty("early.stop.stable", "0"));
+        final int decisive = Integer.parseInt(properties.getProperty("early.stop.decisive", "0"));
+        final int minDepth = Integer.parseInt(properties.getProperty("early.stop.min.depth", "8"));
+        return stable > 0 || decisive > 0 ? new EarlyStop(stable, decisive, minDepth) : null;
+    }
+
+    /**
+     * Creates the listener of one search.
+     *
+     * @param engine The engine to stop.
+     * @return A new listener, to pass to {@link Stockfish#search(SearchLimits, UciListener, int)} with
+     *         {@link UciParser#INFO} subscribed.
+     */
+    public UciListener listener(final Stockfish engine) {
+        return new Watcher(engine);
+    }
+
+    /** State of one search. */
+    private final class Watcher implements UciListener {
+        private final Stockfish engine;
+        private int lastDepth;
+        private int bestMove = MoveCodec.NONE;
+        private int stable;
+        private boolean stopped;
+
+        private Watcher(final Stockfish engine) {
+            this.engine = engine;
+        }
+
+        @Override
+        public void onInfo(final InfoFields info) {
+            // Bound scores are partial results of an aspiration window, wait for the exact one
+            if (!stopped && info.hasScore && info.multipv == 1 && info.bound == InfoFields.EXACT
+                    && info.pvLength > 0) {
+                if (info.depth > lastDepth) {
+                    stable = info.pv[0] == bestMove ? stable + 1 : 1;
+                    bestMove = info.pv[0];
+                    lastDepth = info.depth;
+                }
+                if (info.depth >= minDepth && (stableDepths > 0 && stable >= stableDepths
+                        || decisiveCp > 0 && (info.mate || Math.abs(info.score) >= decisiveCp))) {
+                    stopped = true;
+                    log.debug("Stopping the search at depth {}, score {}.", info.depth, info.score);
+                    engine.sendCommand("stop");
+                }
+            }
+        }
+    }
+
+}
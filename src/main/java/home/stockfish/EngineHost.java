@@ -0,0 +1,159 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Engine-host agent: makes a local UCI engine reachable over TCP for a {@link SocketTransport}. Every connection gets
+ * its own engine process, whose stdin and stdout are copied to and from the socket byte for byte; the process is
+ * killed when the connection closes, and the client reads the end of the stream when its process exits.
+ * <p>
+ * The agent runs whatever binary it was started with and nothing else, but anyone who can reach the port can use
+ * the machine's CPU: bind it to a trusted network.
+ */
+@Slf4j
+public final class EngineHost implements AutoCloseable {
+    /** Size of the copy buffers, larger than any UCI line. */
+    private static final int BUFFER = 8192;
+    private final List<String> command;
+    private final ServerSocket socket;
+    /** Runs the connections and their copies, one virtual thread each. */
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    /** Released by {@link #close()}. */
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    /**
+     * Starts listening.
+     *
+     * @param command The engine command line.
+     * @param address The address to bind, e.g. the loopback address or a private interface.
+     * @param port    The TCP port, 0 for any free one.
+     * @throws IOException If the port cannot be bound.
+     */
+    public EngineHost(final List<String> command, final InetAddress address, final int port) throws IOException {
+        this.command = List.copyOf(command);
+        socket = new ServerSocket(port, 0, address);
+        executor.submit(this::accept);
+        log.info("Engine host serving '{}' on {}:{}.", String.join(" ", command), address.getHostAddress(),
+            getPort());
+    }
+
+    /**
+     * The port the agent listens on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    private void accept() {
+        try {
+            while (!socket.isClosed()) {
+                final Socket client = socket.accept();
+                executor.submit(() -> serve(client));
+            }
+        } catch (final SocketException e) {
+            log.debug("Engine host socket closed: {}", e.getMessage());
+        } catch (final IOException e) {
+            log.error("Can't accept connections", e);
+        }
+    }
+
+    private void serve(final Socket client) {
+        Process process = null;
+        try (client) {
+            client.setTcpNoDelay(true);
+            final ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            process = builder.start();
+            log.debug("Engine started for {}.", client.getRemoteSocketAddress());
+            final Process engine = process;
+            final Future<?> output = executor.submit(() -> {
+                copy(engine.getInputStream(), client.getOutputStream());
+                // The engine exited: the client reads the end of the stream
+                client.shutdownOutput();
+                return null;
+            });
+            copy(client.getInputStream(), process.getOutputStream());
+            // The client hung up: let the engine read the end of its input, then make sure it is gone
+            process.getOutputStream().close();
+            output.cancel(true);
+        } catch (final IOException e) {
+            log.warn("Engine connection from {} failed: {}", client.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /** Copies a stream until it ends, flushing every read so no UCI line waits in a buffer. */
+    private static void copy(final InputStream in, final OutputStream out) throws IOException {
+        final byte[] buffer = new byte[BUFFER];
+        int read = in.read(buffer);
+        while (read >= 0) {
+            out.write(buffer, 0, read);
+            out.flush();
+            read = in.read(buffer);
+        }
+    }
+
+    /**
+     * Waits until the agent is closed.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void await() throws InterruptedException {
+        closed.await();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        executor.shutdownNow();
+        closed.countDown();
+    }
+
+    /**
+     * Runs the agent until the process is stopped.
+     *
+     * @param args The port, then the engine command line; e.g. "7071 /usr/local/bin/stockfish". The agent binds the
+     *             loopback address unless the system property 'engine.host.bind' names another one (e.g. a private
+     *             interface, or 0.0.0.0 for all).
+     * @throws IOException          If the port cannot be bound.
+     * @throws InterruptedException If interrupted while serving.
+     */
+    public static void main(final String... args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            log.error("Usage: EngineHost <port> <engine> [engine arguments]");
+            return;
+        }
+        final String bind = System.getProperty("engine.host.bind", "").trim();
+        final InetAddress address = bind.isEmpty() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+        final EngineHost host = new EngineHost(Arrays.asList(args).subList(1, args.length), address,
+            Integer.parseInt(args[0]));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                host.close();
+            } catch (final IOException e) {
+                log.warn("Can't close the engine host: {}", e.getMessage());
+            }
+        }));
+        host.await();
+    }
+
+}
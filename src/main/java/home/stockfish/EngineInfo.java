@@ -0,0 +1,131 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What an engine tells about itself in the 'uci' handshake: its 'id' lines and its 'option' list. The information
+ * is cached per binary (path, size and modification time), so engines started again from the same binary can have
+ * their options checked before the handshake ends.
+ *
+ * @param name    The 'id name' of the engine.
+ * @param author  The 'id author' of the engine.
+ * @param options The options the engine supports.
+ */
+public record EngineInfo(String name, String author, List<Option> options) {
+    /** Engine information by binary. */
+    private static final Map<String, EngineInfo> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * An 'option' line.
+     *
+     * @param name         The option name, e.g. "Hash".
+     * @param type         The option type: check, spin, combo, button or string.
+     * @param defaultValue The default value, empty if there is none.
+     */
+    public record Option(String name, String type, String defaultValue) {
+    }
+
+    /**
+     * Parses the output of the 'uci' command.
+     *
+     * @param output The engine output, up to 'uciok' at least.
+     * @return The engine information.
+     */
+    public static EngineInfo parse(final String output) {
+        String name = "";
+        String author = "";
+        final List<Option> options = new ArrayList<>();
+        for (final String line : output.split("\n")) {
+            if (line.startsWith("id name ")) {
+                name = line.substring(8).trim();
+            } else if (line.startsWith("id author ")) {
+                author = line.substring(10).trim();
+            } else if (line.startsWith("option name ")) {
+                options.add(parseOption(line));
+            }
+        }
+        return new EngineInfo(name, author, List.copyOf(options));
+    }
+
+    private static Option parseOption(final String line) {
+        final int type = line.indexOf(" type ");
+        final String name = (type < 0 ? line.substring(12) : line.substring(12, type)).trim();
+        String kind = "";
+        String defaultValue = "";
+        if (type >= 0) {
+            final String[] rest = line.substring(type + 6).trim().split(" ", 2);
+            kind = rest[0];
+            final int start = line.indexOf(" default ");
+            if (start >= 0) {
+                int end = line.length();
+                for (final String next : new String[] {" min ", " max ", " var "}) {
+                    final int at = line.indexOf(next, start + 9);
+                    if (at >= 0 && at < end) {
+                        end = at;
+                    }
+                }
+                defaultValue = line.substring(start + 9, end).trim();
+            }
+        }
+        return new Option(name, kind, defaultValue);
+    }
+
+    /**
+     * Tells if the engine has an option. UCI option names are case insensitive.
+     *
+     * @param option The option name.
+     * @return true if the engine listed the option.
+     */
+    public boolean hasOption(final String option) {
+        return options.stream().anyMatch(known -> known.name().equalsIgnoreCase(option));
+    }
+
+    /**
+     * Key of a binary in the cache.
+     *
+     * @param command The command line of the engine.
+     * @return The key (path, size and modification time), or null if the executable is not a file.
+     */
+    /* default */ static String binaryKey(final List<String> command) {
+        String key = null;
+        final Path binary = Path.of(command.get(0));
+        if (Files.isRegularFile(binary)) {
+            try {
+                key = String.join(" ", command) + '|' + Files.size(binary) + '|'
+                    + Files.getLastModifiedTime(binary).toMillis();
+            } catch (final IOException e) {
+                key = null;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Looks up a binary in the cache.
+     *
+     * @param key The key from {@link #binaryKey(List)}, or null.
+     * @return The cached information, or null.
+     */
+    /* default */ static EngineInfo cached(final String key) {
+        return key == null ? null : CACHE.get(key);
+    }
+
+    /**
+     * Caches the information of a binary.
+     *
+     * @param key  The key from {@link #binaryKey(List)}, or null to cache nothing.
+     * @param info The engine information.
+     */
+    /* default */ static void cache(final String key, final EngineInfo info) {
+        if (key != null) {
+            CACHE.put(key, info);
+        }
+    }
+
+}
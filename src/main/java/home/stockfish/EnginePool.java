@@ -0,0 +1,479 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pool of pre-started engine processes. Engines are handed out with {@link #checkout()} and given back with
+ * {@link #release(Stockfish)}, which resets them ('ucinewgame' + 'isready') for the next job. Most callers only need
+ * {@link #analyse(String, SearchLimits)}, which answers from the {@link AnalysisCache} when one is set.
+ * <p>
+ * Many small single-threaded engines usually use a multi-core box better than one big search, so the default is
+ * one thread per engine.
+ * <p>
+ * Engines may also run on other machines, behind an {@link EngineHost} agent (see {@link #fromProperties(Properties)}).
+ * When several engines are idle, the one expected to finish a typical job first is handed out: the one with the
+ * lowest 'isready' latency plus time to search {@link #REFERENCE_NODES} at its measured speed. Faster engines also
+ * come back sooner, so over a run they take a share of the jobs that grows with their nps.
+ */
+@Slf4j
+public class EnginePool implements AutoCloseable {
+    /** Time allowed for an engine to answer 'isready'. */
+    private static final int READY_TIMEOUT = 5_000;
+    /** Time allowed for a search without movetime or clock (depth, nodes or mate limits). */
+    private static final int SEARCH_TIMEOUT = 600_000;
+    /** Extra time allowed over the requested movetime or clock before sending 'stop'. */
+    private static final int MOVETIME_SLACK = 5_000;
+    /** Engines an analysis is tried on before giving up, when they die under it. */
+    private static final int ATTEMPTS = 3;
+    /** How often a caller waiting for an engine checks that the pool still has some. */
+    private static final int CHECKOUT_POLL = 1_000;
+    /** Time allowed to connect to a remote engine. */
+    private static final int CONNECT_TIMEOUT = 5_000;
+    /** Round trips of a job besides the search ('position' and 'go', the reset after it). */
+    private static final int JOB_ROUND_TRIPS = 2;
+    /** Nodes of the typical job engines are compared on. */
+    private static final long REFERENCE_NODES = 1_000_000L;
+    /** Microseconds in a second. */
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+    /** Starts every engine, already past the 'uci' handshake; a dead engine is replaced from the same factory. */
+    private final Map<Stockfish, Supplier<Stockfish>> factories = new HashMap<>();
+    /** True if the factory already sets the options during the handshake. */
+    private final boolean configured;
+    /** UCI 'Threads' option of every engine. */
+    private final int threads;
+    /** UCI 'Hash' option of every engine, in MB. */
+    private final int hashMb;
+    /** Number of engines in the pool. */
+    @Getter
+    private final int size;
+    /**
+     * Engines ready to be checked out, the fastest first. The cost of an engine only changes while it is out of the
+     * queue (searching, being reset or pinged), so the order stays valid.
+     */
+    private final BlockingQueue<Stockfish> idle = new PriorityBlockingQueue<>(16,
+        Comparator.comparingLong(EnginePool::cost));
+    /** All the engines, idle or checked out; also guards {@link #factories}. */
+    private final List<Stockfish> engines = new ArrayList<>();
+    /** Results of earlier analyses, or null. */
+    @Setter
+    private volatile AnalysisCache cache;
+    /** Ends searches early when the answer is clear, or null. */
+    @Setter
+    private volatile EarlyStop earlyStop;
+    /** Serializes {@link #checkout(int)}. */
+    private final Lock multiCheckout = new ReentrantLock();
+    /** Runs the analysis jobs, one virtual thread per job. */
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Starts the engines of the pool.
+     *
+     * @param path    Path to the engine executable.
+     * @param size    Number of engine processes.
+     * @param threads UCI 'Threads' option of every engine.
+     * @param hashMb  UCI 'Hash' option of every engine, in MB.
+     */
+    public EnginePool(final String path, final int size, final int threads, final int hashMb) {
+        this(Collections.nCopies(size, () -> start(path, threads, hashMb)), threads, hashMb, true);
+    }
+
+    /**
+     * Starts the engines of the pool with a custom factory (e.g. remote engines, or scripted ones in tests).
+     *
+     * @param factory Starts a new engine, already past the 'uci' handshake.
+     * @param size    Number of engine processes.
+     * @param threads UCI 'Threads' option of every engine.
+     * @param hashMb  UCI 'Hash' option of every engine, in MB.
+     */
+    public EnginePool(final Supplier<Stockfish> factory, final int size, final int threads, final int hashMb) {
+        this(Collections.nCopies(size, factory), threads, hashMb, false);
+    }
+
+    private EnginePool(final List<Supplier<Stockfish>> factories, final int threads, final int hashMb,
+            final boolean configured) {
+        if (factories.isEmpty()) {
+            throw new IllegalArgumentException("El tamaño del pool debe ser mayor que cero");
+        }
+        this.configured = configured;
+        this.size = factories.size();
+        this.threads = threads;
+        this.hashMb = hashMb;
+        final List<CompletableFuture<Stockfish>> starting = new ArrayList<>();
+        for (final Supplier<Stockfish> factory : factories) {
+            starting.add(CompletableFuture.supplyAsync(() -> spawn(factory), executor));
+        }
+        try {
+            CompletableFuture.allOf(starting.toArray(CompletableFuture[]::new)).join();
+        } catch (final CompletionException e) {
+            // Do not leave the engines that did start running
+            for (final CompletableFuture<Stockfish> engine : starting) {
+                if (!engine.isCompletedExceptionally()) {
+                    engine.join().stopEngine();
+                }
+            }
+            executor.shutdownNow();
+            throw e;
+        }
+        for (int i = 0; i < size; i++) {
+            add(starting.get(i).join(), factories.get(i));
+        }
+        log.info("Engine pool started with {} engines ({} threads, {} MB hash each).", size, threads, hashMb);
+    }
+
+    /**
+     * Starts the pool described by the configuration: 'pool.size' local engines running 'stockfish.path' (one per
+     * core by default, none by default if there are remote ones) and one remote engine per entry of 'pool.remote',
+     * a comma-separated list of "host:port" of {@link EngineHost} agents. An agent listed twice runs two engines.
+     *
+     * @param properties The configuration.
+     * @return The pool, with one thread and 16 MB of hash per engine.
+     */
+    public static EnginePool fromProperties(final Properties properties) {
+        final String path = properties.getProperty("stockfish.path");
+        final String remote = properties.getProperty("pool.remote", "").trim();
+        final int local = Integer.parseInt(properties.getProperty("pool.size",
+            remote.isEmpty() ? String.valueOf(Runtime.getRuntime().availableProcessors()) : "0"));
+        final List<Supplier<Stockfish>> factories = new ArrayList<>(Collections.nCopies(local,
+            () -> start(path, 1, 16)));
+        for (final String address : remote.split(",")) {
+            if (!address.isBlank()) {
+                factories.add(() -> connect(address.trim(), 1, 16));
+            }
+        }
+        return new EnginePool(factories, 1, 16, true);
+    }
+
+    private static Stockfish start(final String path, final int threads, final int hashMb) {
+        final Stockfish engine = new Stockfish();
+        final Map<String, Object> options = new LinkedHashMap<>();
+        options.put("Threads", threads);
+        options.put("Hash", hashMb);
+        if (!engine.startEngine(List.of(path), options)) {
+            engine.stopEngine();
+            throw new IllegalStateException("Can't start the engine: " + path);
+        }
+        return engine;
+    }
+
+    private static Stockfish connect(final String address, final int threads, final int hashMb) {
+        final Stockfish engine = new Stockfish();
+        final Map<String, Object> options = new LinkedHashMap<>();
+        options.put("Threads", threads);
+        options.put("Hash", hashMb);
+        try {
+            if (!engine.startEngine(new SocketTransport(address, CONNECT_TIMEOUT), options)) {
+                engine.stopEngine();
+                throw new IllegalStateException("The remote engine did not answer: " + address);
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Can't connect to the engine host: " + address, e);
+        }
+        return engine;
+    }
+
+    private Stockfish spawn(final Supplier<Stockfish> factory) {
+        final Stockfish engine = factory.get();
+        if (configured) {
+            return engine; // NOPMD OnlyOneReturn
+        }
+        engine.setOption("Threads", threads);
+        engine.setOption("Hash", hashMb);
+        if (!engine.isReady(READY_TIMEOUT)) {
+            engine.stopEngine();
+            throw new IllegalStateException("Engine not ready after setting options");
+        }
+        return engine;
+    }
+
+    private void add(final Stockfish engine, final Supplier<Stockfish> factory) {
+        synchronized (engines) {
+            engines.add(engine);
+            factories.put(engine, factory);
+        }
+        idle.add(engine);
+    }
+
+    /**
+     * Expected time of a typical job on an engine, from its measured latency and speed. An engine whose speed is not
+     * measured yet counts as infinitely fast, so every engine gets tried.
+     *
+     * @param engine The engine.
+     * @return The time in microseconds.
+     */
+    /* default */ static long cost(final Stockfish engine) {
+        final long nps = engine.getNps();
+        return engine.getLatencyMicros() * JOB_ROUND_TRIPS + (nps > 0 ? REFERENCE_NODES * MICROS_PER_SECOND / nps : 0);
+    }
+
+    /**
+     * Takes an idle engine, waiting until one is available.
+     *
+     * @return The engine, to be given back with {@link #release(Stockfish)}.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Stockfish checkout() throws InterruptedException {
+        Stockfish engine = null;
+        while (engine == null) {
+            engine = tryCheckout(CHECKOUT_POLL);
+        }
+        return engine;
+    }
+
+    /**
+     * Takes an idle engine, waiting at most the given time for one to be available.
+     *
+     * @param timeoutMillis The time allowed.
+     * @return The engine, to be given back with {@link #release(Stockfish)}; or null if none was available in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Stockfish tryCheckout(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Stockfish engine = null;
+        long wait = Math.min(CHECKOUT_POLL, timeoutMillis);
+        while (engine == null && wait >= 0) {
+            engine = idle.poll(wait, TimeUnit.MILLISECONDS);
+            if (engine == null) {
+                synchronized (engines) {
+                    if (engines.isEmpty()) {
+                        throw new IllegalStateException("No engines left in the pool");
+                    }
+                }
+            } else if (!engine.isAlive()) {
+                // Died while idle: replace it and wait for another one
+                replace(engine);
+                engine = null;
+            }
+            wait = engine == null && wait > 0
+                ? Math.min(CHECKOUT_POLL, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) : -1;
+        }
+        return engine;
+    }
+
+    /**
+     * Takes several idle engines at once, waiting until all of them are available. Callers taking several engines
+     * are served one at a time, so two of them can not hold part of the engines each and wait forever.
+     *
+     * @param count Number of engines, at most the pool size.
+     * @return The engines, each to be given back with {@link #release(Stockfish)}.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public List<Stockfish> checkout(final int count) throws InterruptedException {
+        if (count > size) {
+            throw new IllegalArgumentException("No se pueden pedir más motores que el tamaño del pool: " + count);
+        }
+        final List<Stockfish> taken = new ArrayList<>(count);
+        // A lock rather than a monitor: virtual threads waiting here must not pin their carrier
+        multiCheckout.lockInterruptibly();
+        try {
+            while (taken.size() < count) {
+                taken.add(checkout());
+            }
+        } catch (final InterruptedException | IllegalStateException e) {
+            idle.addAll(taken);
+            throw e;
+        } finally {
+            multiCheckout.unlock();
+        }
+        return taken;
+    }
+
+    /**
+     * Gives back an engine, resetting it for the next job: a search still running (e.g. a ponder search of a game
+     * that failed) is stopped first. An engine that died or does not answer is replaced.
+     *
+     * @param engine The engine taken with {@link #checkout()}.
+     */
+    public void release(final Stockfish engine) {
+        boolean reusable = engine.isAlive() && engine.stopSearch(READY_TIMEOUT);
+        if (reusable) {
+            engine.sendCommand("ucinewgame");
+            reusable = engine.isAlive() && engine.isReady(READY_TIMEOUT);
+        }
+        if (reusable) {
+            idle.add(engine);
+        } else {
+            log.warn("Engine died or did not answer 'bestmove' or 'isready', replacing it.");
+            replace(engine);
+        }
+    }
+
+    /**
+     * Stops an engine and starts a new one in its place. If the new one can not be started the pool goes on with
+     * one engine less: this runs when a job gives its engine back, and must not lose the job's result.
+     */
+    private void replace(final Stockfish engine) {
+        Metrics.increment("engine_restarts_total", "");
+        final Supplier<Stockfish> factory;
+        synchronized (engines) {
+            engines.remove(engine);
+            factory = factories.remove(engine);
+        }
+        engine.stopEngine();
+        try {
+            add(spawn(factory), factory);
+        } catch (final RuntimeException e) {
+            // Factories are supplied by the caller and may fail with any unchecked exception
+            log.error("Can't restart the engine, the pool goes on with {} engines.", engineCount(), e);
+        }
+    }
+
+    private int engineCount() {
+        synchronized (engines) {
+            return engines.size();
+        }
+    }
+
+    /**
+     * Pings the idle engines with 'isready', one at a time, replacing those that do not answer in time or are worn.
+     *
+     * @param timeoutMillis Time allowed for each answer.
+     * @param worn          Tells if an idle engine should be restarted anyway (e.g. over its CPU time).
+     */
+    /* default */ void pingIdle(final int timeoutMillis, final Predicate<Stockfish> worn) {
+        // A pinged engine goes back to the queue and may come first again, so the round works on the engines idle now
+        for (final Stockfish engine : List.copyOf(idle)) {
+            // Unless it was checked out meanwhile
+            if (idle.remove(engine)) {
+                ping(engine, timeoutMillis, worn);
+            }
+        }
+    }
+
+    private void ping(final Stockfish engine, final int timeoutMillis, final Predicate<Stockfish> worn) {
+        final long start = System.nanoTime();
+        if (worn.test(engine)) {
+            replace(engine);
+        } else if (engine.isAlive() && engine.isReady(timeoutMillis)) {
+            Metrics.recordSince("engine_ping_microseconds", "", start);
+            idle.add(engine);
+        } else {
+            log.warn("Engine did not answer the ping, replacing it.");
+            replace(engine);
+        }
+    }
+
+    /**
+     * All the engines, idle or checked out.
+     *
+     * @return A copy of the list.
+     */
+    /* default */ List<Stockfish> engines() {
+        synchronized (engines) {
+            return List.copyOf(engines);
+        }
+    }
+
+    /**
+     * Analyses a position on the first idle engine, unless the cache already has a good enough result.
+     *
+     * @param fen    The position in FEN format, optionally followed by " moves ...".
+     * @param limits The search limits.
+     * @return Future completed with the analysis result.
+     */
+    public CompletableFuture<AnalysisResult> analyse(final String fen, final SearchLimits limits) {
+        final AnalysisCache results = cache;
+        final AnalysisResult cached = results == null ? null : results.get(fen, limits);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached); // NOPMD OnlyOneReturn
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            AnalysisResult result = null;
+            // An engine that dies under the job is replaced, and the job (position and options) replayed on another
+            for (int attempt = 1; result == null; attempt++) {
+                final Stockfish engine;
+                try {
+                    engine = checkout();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(e);
+                }
+                try {
+                    result = analyse(engine, fen, limits, earlyStop);
+                } catch (final IllegalStateException e) {
+                    if (attempt == ATTEMPTS) {
+                        throw e;
+                    }
+                    log.warn("Analysis failed ({}), retrying on another engine.", e.getMessage());
+                    Metrics.increment("job_retries_total", "");
+                } finally {
+                    release(engine);
+                }
+            }
+            if (results != null) {
+                results.put(fen, limits, result);
+            }
+            return result;
+        }, executor);
+    }
+
+    /**
+     * Analyses a position on the given engine.
+     *
+     * @param engine    The engine to use.
+     * @param fen       The position in FEN format, optionally followed by " moves ...".
+     * @param limits    The search limits.
+     * @param earlyStop Ends the search early when the answer is clear, or null.
+     * @return The analysis result.
+     */
+    /* default */ static AnalysisResult analyse(final Stockfish engine, final String fen, final SearchLimits limits,
+            final EarlyStop earlyStop) {
+        engine.setOption("MultiPV", Math.max(1, limits.multiPv()));
+        engine.sendCommand("position fen " + fen);
+        final int timeout = limits.maxMillis() > 0 ? limits.maxMillis() + MOVETIME_SLACK : SEARCH_TIMEOUT;
+        return engine.awaitSearch(engine.search(limits, earlyStop == null ? null : earlyStop.listener(engine),
+            UciParser.INFO), timeout);
+    }
+
+    /**
+     * What the engines told about themselves in the handshake. The answer describes the first engine of the pool; all
+     * of them are expected to run the same binary.
+     *
+     * @return The information of the first engine.
+     * @throws IllegalStateException If the pool has no engines left, e.g. once closed.
+     */
+    public EngineInfo getEngineInfo() {
+        synchronized (engines) {
+            if (engines.isEmpty()) {
+                throw new IllegalStateException("The engine pool has no engines");
+            }
+            return engines.get(0).getEngineInfo();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        synchronized (engines) {
+            for (final Stockfish engine : engines) {
+                engine.stopEngine();
+            }
+            engines.clear();
+            factories.clear();
+        }
+        idle.clear();
+    }
+
+}
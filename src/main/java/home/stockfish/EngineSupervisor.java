@@ -0,0 +1,174 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches the engines of a pool. Every period it kills the engines whose process exited, whose search has been
+ * silent for too long, or that use more memory than allowed, and pings the idle ones with 'isready' (their latency
+ * goes to the {@link Metrics}), restarting those past their CPU time. A killed engine fails its running search at
+ * once; the pool then replaces it and {@link EnginePool#analyse(String, SearchLimits)} replays the job on another
+ * engine, so a crash costs one search instead of the whole run.
+ */
+@Slf4j
+public final class EngineSupervisor implements AutoCloseable {
+    /** Kilobytes in a megabyte. */
+    private static final long KB_PER_MB = 1024L;
+    private final EnginePool pool;
+    private final Settings settings;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * What is checked and how often.
+     *
+     * @param periodMillis  Time between two checks, also the time allowed for a ping.
+     * @param stallMillis   A search with no output for this long is stalled, 0 to never kill for silence.
+     * @param maxRssMb      Resident memory per engine in MB, 0 for no cap (only on Linux).
+     * @param maxCpuSeconds CPU time per engine process in seconds, 0 for no cap; an engine past it is restarted
+     *                      once it is idle, so no search is cut short, which also bounds what a leaking engine can
+     *                      grow to.
+     */
+    public record Settings(int periodMillis, int stallMillis, long maxRssMb, long maxCpuSeconds) {
+
+        /**
+         * Reads the settings from the configuration: 'supervisor.period', 'supervisor.stall',
+         * 'supervisor.max.rss.mb' and 'supervisor.max.cpu.seconds'.
+         *
+         * @param properties The configuration.
+         * @return The settings, or null if 'supervisor.period' is 0 (the default).
+         */
+        public static Settings fromProperties(final Properties properties) {
+            final int period = Integer.parseInt(properties.getProperty("supervisor.period", "0"));
+            return period > 0 ? new Settings(period,
+                Integer.parseInt(properties.getProperty("supervisor.stall", "60000")),
+                Long.parseLong(properties.getProperty("supervisor.max.rss.mb", "0")),
+                Long.parseLong(properties.getProperty("supervisor.max.cpu.seconds", "0"))) : null;
+        }
+    }
+
+    /**
+     * Starts watching a pool.
+     *
+     * @param pool     The pool.
+     * @param settings What is checked and how often.
+     */
+    public EngineSupervisor(final EnginePool pool, final Settings settings) {
+        this.pool = pool;
+        this.settings = settings;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "engine-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, settings.periodMillis(), settings.periodMillis(),
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a supervisor if the configuration enables it.
+     *
+     * @param pool       The pool.
+     * @param properties The configuration.
+     * @return The supervisor, to close before the pool; or null.
+     */
+    public static EngineSupervisor fromProperties(final EnginePool pool, final Properties properties) {
+        final Settings settings = Settings.fromProperties(properties);
+        return settings == null ? null : new EngineSupervisor(pool, settings);
+    }
+
+    private void tick() {
+        try {
+            for (final Stockfish engine : pool.engines()) {
+                check(engine);
+            }
+            pool.pingIdle(settings.periodMillis(), this::worn);
+        } catch (final RuntimeException e) {
+            // An exception would cancel the schedule
+            log.error("Engine check failed", e);
+        }
+    }
+
+    /**
+     * Checks an engine, killing it if it is dead, stalled or over its caps.
+     *
+     * @param engine The engine.
+     * @return true if the engine is healthy.
+     */
+    /* default */ boolean check(final Stockfish engine) {
+        final String problem = problem(engine);
+        if (problem != null) {
+            log.warn("Engine unhealthy ({}), killing it.", problem);
+            Metrics.increment("engine_kills_total", "");
+            engine.kill();
+        }
+        return problem == null;
+    }
+
+    /**
+     * Tells if an engine used up its CPU time. The time is counted since the process started, so it is only checked
+     * on idle engines: a long-lived engine would otherwise be killed in the middle of a search.
+     *
+     * @param engine The engine, not searching.
+     * @return true if it should be restarted.
+     */
+    /* default */ boolean worn(final Stockfish engine) {
+        final long cpuSeconds = settings.maxCpuSeconds() > 0 ? engine.processHandle()
+            .flatMap(process -> process.info().totalCpuDuration()).map(Duration::toSeconds).orElse(0L) : 0;
+        if (cpuSeconds > settings.maxCpuSeconds()) {
+            log.info("Engine used {} s of CPU time, over the cap, restarting it.", cpuSeconds);
+        }
+        return cpuSeconds > settings.maxCpuSeconds();
+    }
+
+    /** What is wrong with an engine, or null. */
+    private String problem(final Stockfish engine) {
+        String problem = null;
+        if (!engine.isAlive()) {
+            problem = "the process exited";
+        } else if (settings.stallMillis() > 0 && engine.isSearching()
+                && engine.silentMillis() > settings.stallMillis()) {
+            problem = "no output for " + engine.silentMillis() + " ms while searching";
+        } else if (settings.maxRssMb() > 0 && engine.processHandle().isPresent()) {
+            final long rssMb = residentMb(engine.processHandle().get().pid());
+            if (rssMb > settings.maxRssMb()) {
+                problem = "resident memory " + rssMb + " MB over the cap";
+            }
+        }
+        return problem;
+    }
+
+    /**
+     * Resident memory of a process, from {@code /proc/<pid>/status}.
+     *
+     * @param pid The process id.
+     * @return The memory in MB, 0 if it can not be read (e.g. not on Linux).
+     */
+    /* default */ static long residentMb(final long pid) {
+        long megabytes = 0;
+        try {
+            for (final String line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    // e.g. "VmRSS:    123456 kB"
+                    megabytes = Long.parseLong(line.substring(6).replace("kB", "").trim()) / KB_PER_MB;
+                }
+            }
+        } catch (final IOException | NumberFormatException e) {
+            log.trace("Can't read the memory of process {}: {}", pid, e.getMessage());
+        }
+        return megabytes;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+}
@@ -0,0 +1,60 @@
+package home.stockfish;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+
+/**
+ * The link to a UCI engine: a local process ({@link ProcessTransport}) or a socket to an {@link EngineHost} agent on
+ * another machine ({@link SocketTransport}). {@link Stockfish} only talks to the engine through these streams, so
+ * both are used the same way.
+ */
+public interface EngineTransport extends AutoCloseable {
+
+    /**
+     * The stream the engine writes to.
+     *
+     * @return The engine output.
+     */
+    InputStream input();
+
+    /**
+     * The stream the engine reads from.
+     *
+     * @return The engine input.
+     */
+    OutputStream output();
+
+    /**
+     * Tells if the link is up: the process is running, or the socket is open.
+     *
+     * @return true if alive.
+     */
+    boolean isAlive();
+
+    /**
+     * The engine process, to read its resource usage.
+     *
+     * @return The process handle, empty if the engine does not run in a local process.
+     */
+    default Optional<ProcessHandle> processHandle() {
+        return Optional.empty();
+    }
+
+    /**
+     * Key of the engine binary in the {@link EngineInfo} cache.
+     *
+     * @return The key, or null if the binary can not be identified.
+     */
+    default String cacheKey() {
+        return null;
+    }
+
+    /** Cuts the link at once, without letting the engine quit. */
+    void kill();
+
+    /** Closes the link, letting the engine quit. */
+    @Override
+    void close();
+
+}
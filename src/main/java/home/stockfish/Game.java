@@ -0,0 +1,520 @@
+package home.stockfish;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A self-play game from a given position. Each game owns its state and its engines, so many games can be played at
+ * the same time in one JVM.
+ * <p>
+ * With one engine per side and pondering on, the side that just moved keeps thinking on the reply its engine expects
+ * ('go ponder') while the other side searches. If the reply is played the pondering engine gets 'ponderhit' and
+ * answers sooner; otherwise it is stopped and searches the real position.
+ */
+@Slf4j
+public class Game {
+    /** Stockfish responds with this when there are no more valid moves. */
+    private static final String NONE = "(none)";
+    /** Extra time allowed over the thinking time or clock before sending 'stop'. */
+    private static final int MOVETIME_SLACK = 5_000;
+    /** Time allowed for a search without movetime or clock. */
+    private static final int SEARCH_TIMEOUT = 600_000;
+    /** Nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    /** Metrics label of the SAN conversion and local board update. */
+    private static final String SAN_PHASE = "phase=\"san\"";
+    /** Metrics label of the 'position' command update. */
+    private static final String POSITION_PHASE = "phase=\"position\"";
+    /** For the rule of draw by triple repetition of position. */
+    private static final int DRAW_BY_3 = 3;
+    /** Half-move clock value of the 50-move rule. */
+    private static final int FIFTY_MOVES = 100;
+    /** Engine playing White. */
+    private final Stockfish white;
+    /** Engine playing Black, the same as {@link #white} unless two engines play. */
+    private final Stockfish black;
+    /** If true and there are two engines, each one ponders on the expected reply. */
+    @Setter
+    private boolean ponder;
+    /** Expected reply of the last search, or null. */
+    private String expectedReply;
+    /** Engine pondering, or null. */
+    private Stockfish ponderer;
+    /** Move {@link #ponderer} is pondering on. */
+    private String ponderMove;
+    /** Ponder search of {@link #ponderer}. */
+    private CompletableFuture<AnalysisResult> pondering;
+    /** Ponder search that was hit, to be awaited as the next move; or null. */
+    private CompletableFuture<AnalysisResult> ponderHit;
+    /** Initial position in FEN format. */
+    @Getter
+    private final String initialFen;
+    /**
+     * Search limits of every move. With clocks (wtime/btime) the game keeps the time of each side, charging the wall
+     * time of every search and adding the increments.
+     */
+    private SearchLimits limits;
+    /** Ends searches early when the move is clear, or null. */
+    @Setter
+    private EarlyStop earlyStop;
+    /** Plays the opening moves without searching, or null. */
+    @Setter
+    private OpeningBook book;
+    /** True once a position was not found in {@link #book}: the engines play the rest of the game. */
+    private boolean outOfBook;
+    /** If true, every search reports its score for {@link #toRecord}, even without early stop or adjudication. */
+    @Setter
+    private boolean scored;
+    /** Ends the game from the engine scores, or null. */
+    private Adjudicator adjudicator;
+    /** White's remaining time in milliseconds, with clocks. */
+    private long whiteClock;
+    /** Black's remaining time in milliseconds, with clocks. */
+    private long blackClock;
+    /** Receives the board diagram before every move, valid only during the call; or null. */
+    @Setter
+    private Consumer<CharSequence> boardSink;
+    /** Draws the board, created when first needed. */
+    private BoardRenderer renderer;
+    /** Local copy of the game position, updated with every move played. */
+    private final Board board = new Board();
+    /** The moves played, in UCI (lan) format. */
+    private final List<String> bestMoves = new ArrayList<>();
+    /** The 'position' command sent to the engine, extended with every move. */
+    private final PositionCommand position;
+    /** Score of every move played ({@link GameRecord#score}), while the searches report them. */
+    private short[] scores = new short[64];
+    /** Score of the last search. */
+    private short lastScore = GameRecord.NO_SCORE;
+    /** The moves played, in SAN format. */
+    private final List<String> sanMoves = new ArrayList<>();
+    /** The number of times a position has been reached. */
+    private final RepetitionTable repetitions = new RepetitionTable();
+    /** True if the game starts with Black's turn. */
+    private final boolean isBlackTurn;
+    /** Full move number of the initial position. */
+    private final int firstMoveNumber;
+    /** If true, the local board is compared with the engine's one on every ply. */
+    @Setter
+    private boolean verifyBoard;
+    /**
+     * Moves after which the 'position' command is re-rooted at the current FEN (at the next irreversible move), 0 to
+     * always send the whole game.
+     */
+    @Setter
+    private int rerootPlies;
+    /** Result of the game, {@link GameResult#UNFINISHED} until it is played. */
+    @Getter
+    private GameResult result = GameResult.UNFINISHED;
+    /** Why the game ended. */
+    @Getter
+    private String termination = "";
+
+    /**
+     * Creates a game.
+     *
+     * @param engine       Engine playing both sides.
+     * @param initialFen   Initial position in FEN format.
+     * @param thinkingTime Time in milliseconds for the engine to "think" each move.
+     */
+    public Game(final Stockfish engine, final String initialFen, final int thinkingTime) {
+        this(engine, engine, initialFen, thinkingTime);
+    }
+
+    /**
+     * Creates a game between two engines.
+     *
+     * @param white        Engine playing White.
+     * @param black        Engine playing Black.
+     * @param initialFen   Initial position in FEN format.
+     * @param thinkingTime Time in milliseconds for the engine to "think" each move.
+     */
+    public Game(final Stockfish white, final Stockfish black, final String initialFen, final int thinkingTime) {
+        this.white = white;
+        this.black = black;
+        this.initialFen = initialFen;
+        limits = SearchLimits.movetime(thinkingTime);
+        board.loadFromFen(initialFen);
+        position = new PositionCommand(initialFen);
+        isBlackTurn = board.getSideToMove() == Side.BLACK;
+        firstMoveNumber = board.getMoveCounter();
+    }
+
+    /**
+     * Replaces the fixed thinking time with other search limits, e.g. {@link SearchLimits#clock}.
+     *
+     * @param limits The search limits of every move.
+     */
+    public void setLimits(final SearchLimits limits) {
+        this.limits = limits;
+        whiteClock = limits.wtime();
+        blackClock = limits.btime();
+    }
+
+    /**
+     * Ends the game early when the engine scores say it is decided, with the termination "adjudication".
+     *
+     * @param rules The adjudication rules, or null to play every game to the end.
+     */
+    public void setAdjudication(final Adjudicator.Rules rules) {
+        adjudicator = rules == null ? null : new Adjudicator(rules);
+    }
+
+    /**
+     * Plays the game until it ends.
+     *
+     * @return The result of the game.
+     */
+    public GameResult play() {
+        int moveCount = 2;
+        if (isPondering()) {
+            white.setOption("Ponder", true);
+            black.setOption("Ponder", true);
+        }
+        while (result == GameResult.UNFINISHED) {
+            final String move = getMove();
+            if (result != GameResult.UNFINISHED) {
+                break;
+            }
+            if (NONE.equals(move) || move.isEmpty()) {
+                log.debug("No valid moves available. Game over.");
+                finish();
+            } else {
+                // Converts the move and plays it on the local board
+                final long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+                final String algebraicMove = MoveUtils.toSan(board, move);
+                final long converted = start == 0 ? 0 : System.nanoTime();
+                if (log.isDebugEnabled()) {
+                    log.debug("Move {} {}", moveCount / 2, algebraicMove);
+                }
+                sanMoves.add(algebraicMove);
+                if (bestMoves.size() == scores.length) {
+                    scores = Arrays.copyOf(scores, scores.length * 2);
+                }
+                scores[bestMoves.size()] = lastScore;
+                bestMoves.add(move);
+                position.add(move);
+                if (rerootPlies > 0 && position.plies() >= rerootPlies && board.getHalfMoveCounter() == 0) {
+                    position.reroot(board.getFen());
+                }
+                if (start != 0) {
+                    Metrics.record(Stockfish.OVERHEAD, SAN_PHASE, converted - start);
+                    Metrics.record(Stockfish.OVERHEAD, POSITION_PHASE, System.nanoTime() - converted);
+                }
+                if (pondering != null) {
+                    resolvePondering(move);
+                }
+                if (isPondering() && expectedReply != null) {
+                    startPondering();
+                }
+                moveCount++;
+            }
+        }
+        stopPondering();
+        if (ponderHit != null) {
+            // The game ended before the move of the hit search was needed
+            engineToMove().sendCommand("stop");
+            engineToMove().awaitSearch(ponderHit, MOVETIME_SLACK);
+            ponderHit = null;
+        }
+        return result;
+    }
+
+    private boolean isPondering() {
+        return ponder && white != black;
+    }
+
+    /** The engine of the side to move. */
+    private Stockfish engineToMove() {
+        return board.getSideToMove() == Side.WHITE ? white : black;
+    }
+
+    /** The engine that just moved ponders on its expected reply. */
+    private void startPondering() {
+        ponderer = board.getSideToMove() == Side.WHITE ? black : white;
+        ponderMove = expectedReply;
+        ponderer.sendCommand(position + " " + ponderMove);
+        pondering = ponderer.ponder(currentLimits(), null, subscriptions());
+    }
+
+    /** The engine to move was pondering: its search goes on if the expected move was played, else it stops. */
+    private void resolvePondering(final String move) {
+        if (move.equals(ponderMove)) {
+            log.debug("Ponder hit on {}", move);
+            Metrics.increment("ponder_hits_total", "");
+            ponderer.ponderHit();
+            ponderHit = pondering;
+            pondering = null;
+            ponderer = null;
+        } else {
+            stopPondering();
+        }
+    }
+
+    /** Ends the ponder search that was not hit, discarding its result. */
+    private void stopPondering() {
+        if (pondering != null) {
+            ponderer.sendCommand("stop");
+            ponderer.awaitSearch(pondering, MOVETIME_SLACK);
+            pondering = null;
+            ponderer = null;
+        }
+    }
+
+    private SearchLimits currentLimits() {
+        return limits.hasClock() ? limits.withClock((int) whiteClock, (int) blackClock) : limits;
+    }
+
+    /** Renders the board for the sink and the debug log, only if one of them is on. */
+    private void printBoard() {
+        final boolean debug = log.isDebugEnabled();
+        if (boardSink != null || debug) {
+            if (renderer == null) {
+                renderer = new BoardRenderer();
+            }
+            final CharSequence diagram = renderer.render(board);
+            if (boardSink != null) {
+                boardSink.accept(diagram);
+            }
+            if (debug) {
+                log.debug("\n{}", diagram);
+            }
+        }
+    }
+
+    /** Sets the result once the engine has no moves: checkmate or stalemate. */
+    private void finish() {
+        if (board.isMated()) {
+            result = board.getSideToMove() == Side.WHITE ? GameResult.BLACK_WINS : GameResult.WHITE_WINS;
+            termination = "checkmate";
+        } else {
+            result = GameResult.DRAW;
+            termination = "stalemate";
+        }
+    }
+
+    private String getMove() {
+        if (log.isDebugEnabled()) {
+            log.debug("Moves: {}", movesWithNumbers(bestMoves));
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Position command: {}", position);
+            log.trace("FEN actual: {}", board.getFen());
+        }
+        if (isDrawn()) {
+            return ""; // NOPMD OnlyOneReturn
+        }
+        final String bookMove = bookMove();
+        if (bookMove != null) {
+            return bookMove; // NOPMD OnlyOneReturn
+        }
+
+        final Stockfish engine = engineToMove();
+        final SearchLimits current = currentLimits();
+        final CompletableFuture<AnalysisResult> search;
+        if (ponderHit == null) {
+            // Send the updated position to the engine
+            engine.sendCommand(position);
+            if (verifyBoard) {
+                verifyBoard(engine, board.getFen());
+            }
+            search = engine.search(current, earlyStop == null ? null : earlyStop.listener(engine), subscriptions());
+        } else {
+            search = ponderHit;
+            ponderHit = null;
+        }
+        final long start = System.nanoTime();
+        // Print the current board position while the engine thinks
+        printBoard();
+
+        // Wait for the best move
+        final int timeout = current.maxMillis() > 0 ? current.maxMillis() + MOVETIME_SLACK : SEARCH_TIMEOUT;
+        final AnalysisResult analysis = engine.awaitSearch(search, timeout);
+        final String move = analysis.bestMove();
+        expectedReply = analysis.ponder();
+        lastScore = GameRecord.score(analysis);
+        if (current.hasClock()) {
+            chargeClock((System.nanoTime() - start) / NANOS_PER_MILLI);
+        }
+        if (adjudicator != null && result == GameResult.UNFINISHED) {
+            result = adjudicator.record(analysis, board.getSideToMove() == Side.WHITE, board.getMoveCounter());
+            if (result != GameResult.UNFINISHED) {
+                log.info("Game adjudicated: {}", result.getNotation());
+                termination = "adjudication";
+            }
+        }
+        return move;
+    }
+
+    /**
+     * Search events to parse: the scores are only needed by the early stop, the adjudication and a {@link #scored}
+     * game, whose record goes to the training data.
+     */
+    private int subscriptions() {
+        return earlyStop == null && adjudicator == null && !scored ? UciParser.BESTMOVE
+            : UciParser.INFO | UciParser.BESTMOVE;
+    }
+
+    /** Charges the time of a search to the side to move, which loses if its flag falls. */
+    private void chargeClock(final long elapsed) {
+        final boolean white = board.getSideToMove() == Side.WHITE;
+        final long left = (white ? whiteClock : blackClock) - elapsed;
+        if (left < 0) {
+            log.info("{} ran out of time.", white ? "White" : "Black");
+            result = white ? GameResult.BLACK_WINS : GameResult.WHITE_WINS;
+            termination = "time forfeit";
+        } else if (white) {
+            whiteClock = left + limits.winc();
+        } else {
+            blackClock = left + limits.binc();
+        }
+    }
+
+    /**
+     * The book move of the current position, played instantly. A move that is not legal here (a corrupt book, or a
+     * key collision) takes the game out of the book.
+     *
+     * @return The move in UCI (lan) format, or null once out of the book.
+     */
+    private String bookMove() {
+        String move = null;
+        if (book != null && !outOfBook && ponderHit == null) {
+            final int ply = 2 * (board.getMoveCounter() - 1) + (board.getSideToMove() == Side.BLACK ? 1 : 0);
+            move = book.move(board.getFen(), ply);
+            if (move != null && !isLegal(move)) {
+                log.warn("Book move {} is not legal in {}, leaving the book.", move, board.getFen());
+                move = null;
+            }
+            if (move == null) {
+                outOfBook = true;
+                log.debug("Out of book at ply {}", ply);
+            } else {
+                log.debug("Book move {}", move);
+                expectedReply = null;
+                lastScore = GameRecord.NO_SCORE;
+            }
+        }
+        return move;
+    }
+
+    private boolean isLegal(final String lan) {
+        boolean legal = false;
+        for (final Move move : board.legalMoves()) {
+            legal |= lan.equals(move.toString());
+        }
+        return legal;
+    }
+
+    /**
+     * Checks the draw rules that can be decided locally: threefold repetition, the 50-move rule and insufficient
+     * material.
+     *
+     * @return true if the game ended in a draw.
+     */
+    private boolean isDrawn() {
+        final int halfMoves = board.getHalfMoveCounter();
+        final boolean irreversible = halfMoves == 0;
+        if (repetitions.add(board.getIncrementalHashKey(), irreversible) >= DRAW_BY_3) {
+            log.info("The same position has been repeated 3 times. Stopping the game (Draw).");
+            termination = "3-fold repetition";
+        } else if (halfMoves >= FIFTY_MOVES && !board.isMated()) {
+            log.info("50 moves without captures or pawn moves. Stopping the game (Draw).");
+            termination = "50-move rule";
+        } else if ((irreversible || bestMoves.isEmpty()) && board.isInsufficientMaterial()) {
+            // Material only changes with captures and promotions, which reset the clock; the initial position is
+            // checked whatever its clock
+            log.info("Insufficient material. Stopping the game (Draw).");
+            termination = "insufficient material";
+        }
+        if (!termination.isEmpty()) {
+            result = GameResult.DRAW;
+        }
+        return result == GameResult.DRAW;
+    }
+
+    private String movesWithNumbers(final List<String> moves) {
+        final StringBuilder text = new StringBuilder();
+        int moveNumber = firstMoveNumber;
+
+        for (int i = 0; i < moves.size(); i++) {
+            if (i == 0 && isBlackTurn) {
+                // Start with Black's turn
+                text.append(moveNumber).append("... ");
+                moveNumber++;
+            } else if (i % 2 == (isBlackTurn ? 1 : 0)) {
+                // Add move number every two moves
+                text.append(moveNumber).append(". ");
+                moveNumber++;
+            }
+            text.append(moves.get(i)).append(' ');
+        }
+
+        return text.toString().trim();
+    }
+
+    /**
+     * Compares the local board with the engine's one, logging any difference.
+     *
+     * @param engine   The engine to check.
+     * @param localFen The FEN string of the local board.
+     */
+    private void verifyBoard(final Stockfish engine, final String localFen) {
+        final String engineFen = StockfishMain.getFen(engine);
+        if (!localFen.equals(engineFen)) {
+            log.warn("Local board {} differs from engine board {}", localFen, engineFen);
+        }
+    }
+
+    /**
+     * Generates the game report in PGN format.
+     *
+     * @return The game report in PGN format.
+     */
+    public String toPgn() {
+        final StringBuilder report = new StringBuilder(256);
+        report.append("[Result \"").append(result.getNotation()).append("\"]\n");
+        if (!termination.isEmpty()) {
+            report.append("[Termination \"").append(termination).append("\"]\n");
+        }
+        report.append("[SetUp \"1\"]\n[FEN \"").append(initialFen).append("\"]\n\n")
+            .append(movesWithNumbers(sanMoves)).append(' ').append(result.getNotation()).append('\n');
+        return report.toString();
+    }
+
+    /**
+     * Converts the game to its compact binary form. Scores are included if the searches reported them, that is with
+     * early stop, adjudication or scoring on.
+     *
+     * @param configId Identifier of the engine configuration that played the game.
+     * @return The game record.
+     */
+    public GameRecord toRecord(final int configId) {
+        final short[] played = Arrays.copyOf(scores, bestMoves.size());
+        boolean scored = false;
+        for (final short score : played) {
+            scored |= score != GameRecord.NO_SCORE;
+        }
+        return GameRecord.of(initialFen, result, configId, bestMoves, scored ? played : null);
+    }
+
+    /**
+     * The moves played so far.
+     *
+     * @return The moves in UCI (lan) format.
+     */
+    public List<String> getMoves() {
+        return List.copyOf(bestMoves);
+    }
+
+}
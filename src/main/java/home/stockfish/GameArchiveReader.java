@@ -0,0 +1,106 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Random access to the games of an archive written by {@link GameArchiveWriter}. The archive and its index are
+ * memory-mapped, so reading a game costs no system call and scanning an archive reads it sequentially from the page
+ * cache. Games appended after the reader was opened are not seen.
+ * <p>
+ * The archive is mapped in windows of {@link #WINDOW} bytes that overlap by the largest possible game, so every
+ * game lies whole inside the window of its offset and archives larger than 2 GB can be read.
+ */
+public final class GameArchiveReader implements AutoCloseable {
+    /** Size of a mapping window. */
+    private static final long WINDOW = 1L << 30;
+    /** Largest game: the header and 65535 plies with scores. */
+    private static final long MAX_GAME = GameArchiveWriter.GAME_HEADER + 0xFFFFL * Short.BYTES * 2;
+    private static final GameResult[] RESULTS = GameResult.values();
+    private final FileChannel channel;
+    private final MappedByteBuffer[] windows;
+    private final MappedByteBuffer index;
+    private final int size;
+    private final List<String> fens;
+
+    /**
+     * Opens an archive.
+     *
+     * @param archive The archive file.
+     * @throws IOException If the files cannot be mapped, or the archive has another layout.
+     */
+    public GameArchiveReader(final Path archive) throws IOException {
+        fens = Files.readAllLines(GameArchiveWriter.sibling(archive, GameArchiveWriter.FENS), StandardCharsets.UTF_8);
+        channel = FileChannel.open(archive, StandardOpenOption.READ);
+        if (!GameArchiveWriter.hasHeader(channel)) {
+            channel.close();
+            throw new IOException("Not a game archive: " + archive);
+        }
+        final long length = channel.size();
+        windows = new MappedByteBuffer[(int) ((length + WINDOW - 1) / WINDOW)];
+        for (int i = 0; i < windows.length; i++) {
+            final long start = i * WINDOW;
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(WINDOW + MAX_GAME, length - start));
+            windows[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        final Path indexFile = GameArchiveWriter.sibling(archive, GameArchiveWriter.INDEX);
+        try (FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+            index.order(ByteOrder.LITTLE_ENDIAN);
+            size = (int) (indexChannel.size() / Long.BYTES);
+        }
+    }
+
+    /**
+     * Number of games.
+     *
+     * @return The number of indexed games.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reads a game.
+     *
+     * @param game Index of the game, from 0.
+     * @return The game.
+     */
+    public GameRecord get(final int game) {
+        if (game < 0 || game >= size) {
+            throw new IllegalArgumentException("Partida no válida: " + game);
+        }
+        final long offset = index.getLong(game * Long.BYTES);
+        final MappedByteBuffer window = windows[(int) (offset / WINDOW)];
+        final int position = (int) (offset % WINDOW);
+        final String fen = fens.get(window.getInt(position));
+        final int configId = window.getInt(position + 4);
+        final GameResult result = RESULTS[window.get(position + 8)];
+        final boolean scored = (window.get(position + 9) & GameArchiveWriter.SCORES) != 0;
+        final int plies = Short.toUnsignedInt(window.getShort(position + 10));
+        // Games start at even offsets, so the plies can be read as shorts with absolute (thread-safe) bulk gets
+        final int first = (position + GameArchiveWriter.GAME_HEADER) / Short.BYTES;
+        final short[] moves = new short[plies];
+        window.asShortBuffer().get(first, moves);
+        short[] scores = null;
+        if (scored) {
+            scores = new short[plies];
+            window.asShortBuffer().get(first + plies, scores);
+        }
+        return new GameRecord(fen, result, configId, moves, scores);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
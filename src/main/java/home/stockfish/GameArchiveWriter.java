@@ -0,0 +1,165 @@
+package home.stockfish;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Appends {@link GameRecord}s to a binary game archive, made of three files:
+ * <ul>
+ * <li>{@code <archive>}: a header ("SFGA", version) and the games, each one a 12-byte header (FEN index, engine
+ * configuration id, result, flags, plies) followed by the 16-bit moves and, if flagged, the 16-bit scores;</li>
+ * <li>{@code <archive>.idx}: the offset of every game as a 64-bit integer, for random access;</li>
+ * <li>{@code <archive>.fens}: the distinct initial positions, one FEN per line, referenced by index.</li>
+ * </ul>
+ * All numbers are little-endian. A game is indexed only after its data is written, so a crash leaves at worst
+ * unindexed bytes at the end of the archive. Appends from many threads are serialized.
+ */
+@Slf4j
+public final class GameArchiveWriter implements AutoCloseable {
+    /** "SFGA" in ASCII. */
+    /* default */ static final int MAGIC = 0x53464741;
+    /** Version of the layout. */
+    /* default */ static final int VERSION = 1;
+    /** Size of the file header. */
+    /* default */ static final int FILE_HEADER = 8;
+    /** Size of the header of every game. */
+    /* default */ static final int GAME_HEADER = 12;
+    /** Flag of games with scores. */
+    /* default */ static final int SCORES = 1;
+    /** Extension of the index file. */
+    /* default */ static final String INDEX = ".idx";
+    /** Extension of the FEN table. */
+    /* default */ static final String FENS = ".fens";
+    private final FileChannel data;
+    private final FileChannel index;
+    private final BufferedWriter fens;
+    /** Index of every FEN in the table. */
+    private final Map<String, Integer> fenIndex = new HashMap<>();
+    /**
+     * Guards the end of the data file where the next game goes, with the index, the FEN table and the buffers: a game
+     * and its index entry are written together.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Reused encoding buffer, grown for long games. */
+    private ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer offset = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Opens an archive for appending, creating it if it does not exist.
+     *
+     * @param archive The archive file.
+     * @throws IOException If the files cannot be opened, or the archive has another layout.
+     */
+    public GameArchiveWriter(final Path archive) throws IOException {
+        final Path fenFile = sibling(archive, FENS);
+        if (Files.exists(fenFile)) {
+            final List<String> lines = Files.readAllLines(fenFile, StandardCharsets.UTF_8);
+            for (int i = 0; i < lines.size(); i++) {
+                fenIndex.put(lines.get(i), i);
+            }
+        }
+        data = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        if (data.size() == 0) {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            data.write(header, 0);
+        } else if (!hasHeader(data)) {
+            data.close();
+            throw new IOException("Not a game archive: " + archive);
+        }
+        data.position(data.size());
+        index = FileChannel.open(sibling(archive, INDEX), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+        fens = Files.newBufferedWriter(fenFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+        log.debug("Appending games to {}, {} positions known.", archive, fenIndex.size());
+    }
+
+    /* default */ static Path sibling(final Path archive, final String extension) {
+        return archive.resolveSibling(archive.getFileName() + extension);
+    }
+
+    /* default */ static boolean hasHeader(final FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        return channel.read(header, 0) == FILE_HEADER && header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+    }
+
+    /**
+     * Appends a game.
+     *
+     * @param game The game.
+     * @throws IOException If the game cannot be written.
+     */
+    public void append(final GameRecord game) throws IOException {
+        lock.lock();
+        try {
+            final int fen = internFen(game.fen());
+            final int plies = game.plies();
+            final int size = GAME_HEADER + plies * Short.BYTES * (game.scores() == null ? 1 : 2);
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            buffer.clear();
+            buffer.putInt(fen).putInt(game.configId()).put((byte) game.result().ordinal())
+                .put((byte) (game.scores() == null ? 0 : SCORES)).putShort((short) plies);
+            buffer.asShortBuffer().put(game.moves());
+            buffer.position(buffer.position() + plies * Short.BYTES);
+            if (game.scores() != null) {
+                buffer.asShortBuffer().put(game.scores());
+                buffer.position(buffer.position() + plies * Short.BYTES);
+            }
+            buffer.flip();
+            final long start = data.position();
+            while (buffer.hasRemaining()) {
+                data.write(buffer);
+            }
+            offset.clear();
+            offset.putLong(start).flip();
+            while (offset.hasRemaining()) {
+                index.write(offset);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Index of a FEN, adding it to the table the first time. */
+    private int internFen(final String fen) throws IOException {
+        Integer found = fenIndex.get(fen);
+        if (found == null) {
+            found = fenIndex.size();
+            fens.write(fen);
+            fens.newLine();
+            // The table is written before any game that refers to it
+            fens.flush();
+            fenIndex.put(fen, found);
+        }
+        return found;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try (data; index; fens) {
+            data.force(false);
+            index.force(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+package home.stockfish;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A game in compact form: 16-bit move codes ({@link MoveCodec}) and, optionally, a 16-bit score per ply. This is
+ * what {@link GameArchiveWriter} stores; PGN is only built on demand.
+ * <p>
+ * Scores are from the view of the side to move before each ply, in centipawns; mates are stored as
+ * {@code ±(MATE - moves)} and plies without a score as {@link #NO_SCORE}.
+ *
+ * @param fen      The initial position in FEN format.
+ * @param result   The result of the game.
+ * @param configId Identifier of the engine configuration that played the game.
+ * @param moves    The move codes, one per ply.
+ * @param scores   The scores, one per ply, or null if they were not recorded.
+ */
+public record GameRecord(String fen, GameResult result, int configId, short[] moves, short[] scores) {
+    /** Score of a ply that was not searched or reported no score. */
+    public static final short NO_SCORE = Short.MIN_VALUE;
+    /** Score of being mated now; mate in n is {@code MATE - n}. */
+    public static final short MATE = Short.MAX_VALUE;
+    /** Largest centipawn score stored, larger ones are clamped. */
+    private static final int MAX_CP = 30_000;
+    /** Initial position of PGN games without a FEN tag. */
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    /** Centipawns in a pawn, for the PGN evaluation comments. */
+    private static final double PAWN = 100.0;
+
+    /**
+     * Creates a record.
+     *
+     * @param fen      The initial position in FEN format.
+     * @param result   The result of the game.
+     * @param configId Identifier of the engine configuration that played the game.
+     * @param moves    The move codes, one per ply.
+     * @param scores   The scores, one per ply, or null if they were not recorded.
+     */
+    public GameRecord {
+        if (moves.length > 0xFFFF) {
+            throw new IllegalArgumentException("Partida demasiado larga: " + moves.length);
+        }
+        if (scores != null && scores.length != moves.length) {
+            throw new IllegalArgumentException("Debe haber una puntuación por jugada");
+        }
+    }
+
+    /**
+     * Builds a record from moves in UCI (lan) format.
+     *
+     * @param fen      The initial position in FEN format.
+     * @param result   The result of the game.
+     * @param configId Identifier of the engine configuration.
+     * @param lans     The moves in LAN format.
+     * @param scores   The scores, one per ply, or null.
+     * @return The record.
+     */
+    public static GameRecord of(final String fen, final GameResult result, final int configId,
+            final List<String> lans, final short[] scores) {
+        final short[] moves = new short[lans.size()];
+        for (int i = 0; i < moves.length; i++) {
+            final int code = MoveCodec.encode(lans.get(i));
+            if (code == MoveCodec.NONE) {
+                throw new IllegalArgumentException("Movimiento LAN no válido: " + lans.get(i));
+            }
+            moves[i] = (short) code;
+        }
+        return new GameRecord(fen, result, configId, moves, scores);
+    }
+
+    /**
+     * Packs the score of a search.
+     *
+     * @param analysis The search result.
+     * @return The 16-bit score, {@link #NO_SCORE} if the search reported none.
+     */
+    public static short score(final AnalysisResult analysis) {
+        final int score;
+        if (analysis.depth() == 0) {
+            score = NO_SCORE;
+        } else if (analysis.mate()) {
+            score = analysis.score() > 0 ? MATE - analysis.score() : -MATE - analysis.score();
+        } else {
+            score = Math.clamp(analysis.score(), -MAX_CP, MAX_CP);
+        }
+        return (short) score;
+    }
+
+    /**
+     * Number of plies.
+     *
+     * @return The number of moves.
+     */
+    public int plies() {
+        return moves.length;
+    }
+
+    /**
+     * The moves in UCI (lan) format.
+     *
+     * @return The moves.
+     */
+    public List<String> lanMoves() {
+        final List<String> lans = new ArrayList<>(moves.length);
+        for (final short move : moves) {
+            lans.add(MoveCodec.toLan(Short.toUnsignedInt(move)));
+        }
+        return lans;
+    }
+
+    /**
+     * Converts the game to PGN, with the scores as evaluation comments (e.g. {@code {+0.35}} or {@code {#-3}}).
+     *
+     * @return The game in PGN format.
+     */
+    public String toPgn() {
+        final List<String> sans = MoveUtils.toSan(fen, lanMoves());
+        final String[] fields = fen.split(" ");
+        final boolean blackFirst = fields.length > 1 && "b".equals(fields[1]);
+        int moveNumber = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        final StringBuilder pgn = new StringBuilder(64 + sans.size() * 12);
+        pgn.append("[Result \"").append(result.getNotation()).append("\"]\n[SetUp \"1\"]\n[FEN \"").append(fen)
+            .append("\"]\n\n");
+        for (int i = 0; i < sans.size(); i++) {
+            final boolean white = i % 2 == (blackFirst ? 1 : 0);
+            if (white) {
+                pgn.append(moveNumber).append(". ");
+            } else if (i == 0) {
+                pgn.append(moveNumber).append("... ");
+            }
+            pgn.append(sans.get(i)).append(' ');
+            if (scores != null && scores[i] != NO_SCORE) {
+                appendScore(pgn, scores[i]);
+            }
+            if (!white) {
+                moveNumber++;
+            }
+        }
+        return pgn.append(result.getNotation()).append('\n').toString();
+    }
+
+    private static void appendScore(final StringBuilder pgn, final short score) {
+        pgn.append('{');
+        if (Math.abs(score) > MAX_CP) {
+            pgn.append('#').append(score > 0 ? MATE - score : -MATE - score);
+        } else {
+            pgn.append(String.format(Locale.ROOT, "%+.2f", score / PAWN));
+        }
+        pgn.append("} ");
+    }
+
+    /**
+     * Reads a game in PGN format, as written by {@link #toPgn()} or {@link Game#toPgn()}. Evaluation comments in
+     * the {@link #toPgn()} format are read back as scores and other comments are skipped; comments must end on the
+     * line they start and variations are not supported.
+     *
+     * @param pgn      The game in PGN format.
+     * @param configId Identifier of the engine configuration.
+     * @return The record.
+     */
+    public static GameRecord fromPgn(final String pgn, final int configId) {
+        String fen = START_FEN;
+        GameResult result = GameResult.UNFINISHED;
+        final List<String> sans = new ArrayList<>();
+        final List<Short> scores = new ArrayList<>();
+        boolean scored = false;
+        for (final String line : pgn.split("\n")) {
+            final String trimmed = line.trim();
+            if (trimmed.startsWith("[")) {
+                final int quote = trimmed.indexOf('"');
+                final int endQuote = trimmed.lastIndexOf('"');
+                // Tags without a quoted value, such as "[Event ?]", are skipped
+                if (endQuote > quote && quote >= 0) {
+                    final String value = trimmed.substring(quote + 1, endQuote);
+                    if (trimmed.startsWith("[FEN ")) {
+                        fen = value;
+                    } else if (trimmed.startsWith("[Result ")) {
+                        result = parseResult(value);
+                    }
+                }
+                continue;
+            }
+            int i = 0;
+            while (i < trimmed.length()) {
+                final char c = trimmed.charAt(i);
+                if (c == '{') {
+                    final int end = trimmed.indexOf('}', i);
+                    final short score = parseScore(trimmed.substring(i + 1, end).trim());
+                    if (score != NO_SCORE && !scores.isEmpty()) {
+                        scores.set(scores.size() - 1, score);
+                        scored = true;
+                    }
+                    i = end + 1;
+                } else if (Character.isWhitespace(c)) {
+                    i++;
+                } else {
+                    int end = i;
+                    while (end < trimmed.length() && !Character.isWhitespace(trimmed.charAt(end))
+                            && trimmed.charAt(end) != '{') {
+                        end++;
+                    }
+                    final String token = trimmed.substring(i, end);
+                    final String move = token.substring(token.lastIndexOf('.') + 1);
+                    if (!move.isEmpty() && Character.isLetter(move.charAt(0))) {
+                        sans.add(move);
+                        scores.add(NO_SCORE);
+                    }
+                    i = end;
+                }
+            }
+        }
+        short[] packed = null;
+        if (scored) {
+            packed = new short[scores.size()];
+            for (int i = 0; i < packed.length; i++) {
+                packed[i] = scores.get(i);
+            }
+        }
+        return of(fen, result, configId, MoveUtils.toLan(fen, sans), packed);
+    }
+
+    private static GameResult parseResult(final String notation) {
+        GameResult found = GameResult.UNFINISHED;
+        for (final GameResult result : GameResult.values()) {
+            if (result.getNotation().equals(notation)) {
+                found = result;
+            }
+        }
+        return found;
+    }
+
+    private static short parseScore(final String comment) {
+        short score = NO_SCORE;
+        try {
+            if (comment.startsWith("#")) {
+                final int moves = Integer.parseInt(comment.substring(1));
+                score = (short) (moves > 0 ? MATE - moves : -MATE - moves);
+            } else if (!comment.isEmpty() && (comment.charAt(0) == '+' || comment.charAt(0) == '-')) {
+                score = (short) Math.round(Double.parseDouble(comment) * PAWN);
+            }
+        } catch (final NumberFormatException e) {
+            // A comment that is not an evaluation
+            score = NO_SCORE;
+        }
+        return score;
+    }
+
+}
@@ -0,0 +1,24 @@
+package home.stockfish;
+
+import lombok.Getter;
+
+/** Result of a game, with its PGN notation. */
+public enum GameResult {
+    /** White won. */
+    WHITE_WINS("1-0"),
+    /** Black won. */
+    BLACK_WINS("0-1"),
+    /** Drawn game. */
+    DRAW("1/2-1/2"),
+    /** Game still in progress or interrupted. */
+    UNFINISHED("*");
+
+    /** Result as written in PGN. */
+    @Getter
+    private final String notation;
+
+    GameResult(final String notation) {
+        this.notation = notation;
+    }
+
+}
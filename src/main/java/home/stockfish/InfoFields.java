@@ -0,0 +1,76 @@
+package home.stockfish;
+
+import java.util.Arrays;
+
+/**
+ * Fields of one UCI 'info' line, parsed without creating strings. The same instance is filled again for every
+ * line, so listeners must copy what they want to keep.
+ */
+public final class InfoFields {
+    /** Score is exact. */
+    public static final int EXACT = 0;
+    /** Score is a lower bound. */
+    public static final int LOWERBOUND = 1;
+    /** Score is an upper bound. */
+    public static final int UPPERBOUND = 2;
+    /** Longest principal variation kept. */
+    /* default */ static final int MAX_PV = 128;
+    /** Search depth, 0 if absent. */
+    public int depth;
+    /** Selective search depth, 0 if absent. */
+    public int seldepth;
+    /** Principal variation number, 1 if absent. */
+    public int multipv;
+    /** True if the line has a score. */
+    public boolean hasScore;
+    /** True if the score is a mate distance. */
+    public boolean mate;
+    /** Score in centipawns, or moves to mate if {@link #mate} (side to move's view). */
+    public int score;
+    /** {@link #EXACT}, {@link #LOWERBOUND} or {@link #UPPERBOUND}. */
+    public int bound;
+    /** Nodes searched, 0 if absent. */
+    public long nodes;
+    /** Nodes per second, 0 if absent. */
+    public long nps;
+    /** Search time in milliseconds, 0 if absent. */
+    public long time;
+    /** Principal variation as {@link MoveCodec} codes, the first {@link #pvLength} are valid. */
+    public final int[] pv = new int[MAX_PV];
+    /** Number of moves in {@link #pv}. */
+    public int pvLength;
+
+    /** Clears all the fields before parsing a new line. */
+    public void reset() {
+        depth = 0;
+        seldepth = 0;
+        multipv = 1;
+        hasScore = false;
+        mate = false;
+        score = 0;
+        bound = EXACT;
+        nodes = 0;
+        nps = 0;
+        time = 0;
+        pvLength = 0;
+    }
+
+    /**
+     * Adds a move to the principal variation, ignoring moves past the maximum length.
+     *
+     * @param move The {@link MoveCodec} code.
+     */
+    /* default */ void addPv(final int move) {
+        if (pvLength < MAX_PV) {
+            pv[pvLength++] = move;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "info depth " + depth + " seldepth " + seldepth + " multipv " + multipv + " score "
+            + (mate ? "mate " : "cp ") + score + " nodes " + nodes + " nps " + nps + " time " + time + " pv "
+            + Arrays.toString(Arrays.copyOf(pv, pvLength));
+    }
+
+}
@@ -0,0 +1,163 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Disk tier of the {@link AnalysisCache}: a memory-mapped file of fixed size slots, laid out like an engine
+ * transposition table. Each key maps to a bucket of {@link #WAYS} slots; when the bucket is full the shallowest
+ * result is replaced. A slot is written with its key last, so a crash mid-write leaves at worst a stale slot.
+ */
+@Slf4j
+final class MappedResultTable implements AutoCloseable {
+    /** "SFAC" in ASCII. */
+    private static final int MAGIC = 0x53464143;
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int SLOT = 128;
+    private static final int WAYS = 4;
+    /** Slots that fit in a single mapping, whose offsets are ints (2 GB): about 16 million. */
+    /* default */ static final int MAX_SLOTS = (Integer.MAX_VALUE - HEADER) / (WAYS * SLOT) * WAYS;
+    /** Longest principal variation stored. */
+    /* default */ static final int MAX_PV = 44;
+    private static final int KEY = 0;
+    private static final int NODES = 8;
+    private static final int DEPTH = 16;
+    private static final int SCORE = 20;
+    private static final int MOVETIME = 24;
+    private static final int BEST_MOVE = 28;
+    private static final int PONDER = 30;
+    private static final int MATE = 32;
+    private static final int PV_LENGTH = 33;
+    private static final int PV = 40;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int buckets;
+
+    /**
+     * Opens the table, creating the file if it does not exist or was made with another layout.
+     *
+     * @param file  The cache file.
+     * @param slots Number of slots (rounded up to whole buckets), at most {@link #MAX_SLOTS}.
+     * @throws IOException If the file cannot be mapped.
+     */
+    /* default */ MappedResultTable(final Path file, final int slots) throws IOException {
+        if (slots > MAX_SLOTS) {
+            throw new IllegalArgumentException("Demasiadas entradas para la caché en disco: " + slots + " (máximo "
+                + MAX_SLOTS + ")");
+        }
+        buckets = Math.max(1, (slots + WAYS - 1) / WAYS);
+        final long size = HEADER + (long) buckets * WAYS * SLOT;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        final boolean fresh = channel.size() != size;
+        if (fresh && channel.size() > 0) {
+            log.warn("Cache file {} has another size, starting empty.", file);
+            channel.truncate(0);
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (fresh || map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != buckets) {
+            for (long i = 0; i < size; i += Long.BYTES) {
+                map.putLong((int) i, 0L);
+            }
+            map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, buckets);
+        }
+    }
+
+    private int bucket(final long key) {
+        return HEADER + (int) Long.remainderUnsigned(key, buckets) * WAYS * SLOT;
+    }
+
+    /**
+     * Looks up a key.
+     *
+     * @param key The position key, never 0.
+     * @return The stored entry, or null.
+     */
+    /* default */ synchronized AnalysisCache.Entry get(final long key) {
+        final int bucket = bucket(key);
+        AnalysisCache.Entry entry = null;
+        for (int way = 0; way < WAYS && entry == null; way++) {
+            final int slot = bucket + way * SLOT;
+            if (map.getLong(slot + KEY) == key) {
+                entry = read(slot);
+            }
+        }
+        return entry;
+    }
+
+    private AnalysisCache.Entry read(final int slot) {
+        final int pvLength = map.get(slot + PV_LENGTH);
+        final List<String> pv = new ArrayList<>(pvLength);
+        for (int i = 0; i < pvLength; i++) {
+            pv.add(MoveCodec.toLan(Short.toUnsignedInt(map.getShort(slot + PV + i * Short.BYTES))));
+        }
+        final int ponder = Short.toUnsignedInt(map.getShort(slot + PONDER));
+        final AnalysisResult result = new AnalysisResult(
+            MoveCodec.toLan(Short.toUnsignedInt(map.getShort(slot + BEST_MOVE))),
+            ponder == MoveCodec.NONE ? null : MoveCodec.toLan(ponder), map.getInt(slot + DEPTH),
+            map.getInt(slot + SCORE), map.get(slot + MATE) != 0, map.getLong(slot + NODES), List.copyOf(pv));
+        return new AnalysisCache.Entry(result, map.getInt(slot + MOVETIME));
+    }
+
+    /**
+     * Stores an entry, replacing an entry of the same key only if the new one is at least as deep.
+     *
+     * @param key   The position key, never 0.
+     * @param entry The entry.
+     */
+    /* default */ synchronized void put(final long key, final AnalysisCache.Entry entry) {
+        final int bucket = bucket(key);
+        int target = -1;
+        int shallowest = Integer.MAX_VALUE;
+        for (int way = 0; way < WAYS; way++) {
+            final int slot = bucket + way * SLOT;
+            final long stored = map.getLong(slot + KEY);
+            if (stored == key) {
+                target = map.getInt(slot + DEPTH) <= entry.result().depth() ? slot : -2;
+                break;
+            }
+            final int depth = stored == 0 ? -1 : map.getInt(slot + DEPTH);
+            if (depth < shallowest) {
+                shallowest = depth;
+                target = slot;
+            }
+        }
+        if (target >= 0) {
+            write(target, key, entry);
+        }
+    }
+
+    private void write(final int slot, final long key, final AnalysisCache.Entry entry) {
+        final AnalysisResult result = entry.result();
+        map.putLong(slot + KEY, 0L);
+        map.putLong(slot + NODES, result.nodes());
+        map.putInt(slot + DEPTH, result.depth());
+        map.putInt(slot + SCORE, result.score());
+        map.putInt(slot + MOVETIME, entry.movetime());
+        map.putShort(slot + BEST_MOVE, (short) MoveCodec.encode(result.bestMove()));
+        map.putShort(slot + PONDER, (short) (result.ponder() == null ? MoveCodec.NONE
+            : MoveCodec.encode(result.ponder())));
+        map.put(slot + MATE, (byte) (result.mate() ? 1 : 0));
+        final int pvLength = Math.min(MAX_PV, result.pv().size());
+        map.put(slot + PV_LENGTH, (byte) pvLength);
+        for (int i = 0; i < pvLength; i++) {
+            map.putShort(slot + PV + i * Short.BYTES, (short) MoveCodec.encode(result.pv().get(i)));
+        }
+        map.putLong(slot + KEY, key);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        channel.close();
+    }
+
+}
@@ -0,0 +1,315 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Process-wide counters and histograms of the client: UCI round trips, search overshoot, engine speed, per-ply
+ * client overhead, timeouts and engine restarts. Off by default: every call site checks {@link #isEnabled()} before
+ * taking any time stamp, so a disabled build pays one field read per event.
+ * <p>
+ * Snapshots can be written periodically to a file, in Prometheus text format or, for a {@code .json} file, as JSON.
+ */
+@Slf4j
+public final class Metrics {
+    /** Prefix of the exported names. */
+    private static final String PREFIX = "stockfish_";
+    /** Histogram buckets: the upper bound of bucket i is 2^i. */
+    private static final int BUCKETS = 48;
+    /** Nanoseconds in a microsecond. */
+    private static final long NANOS_PER_MICRO = 1_000L;
+    /** True to record. */
+    private static volatile boolean enabled;
+    /** Histograms by name and labels, sorted for the export. */
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    /** Counters by name and labels, sorted for the export. */
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Tells if metrics are recorded; call sites check it before measuring anything.
+     *
+     * @return true if enabled.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off.
+     *
+     * @param on true to record.
+     */
+    public static void setEnabled(final boolean on) {
+        enabled = on;
+    }
+
+    /** Discards everything recorded. */
+    public static void reset() {
+        HISTOGRAMS.clear();
+        COUNTERS.clear();
+    }
+
+    private static String key(final String name, final String labels) {
+        return labels.isEmpty() ? name : name + '{' + labels + '}';
+    }
+
+    /**
+     * Records a value in a histogram.
+     *
+     * @param name   The metric name, e.g. "uci_roundtrip_microseconds".
+     * @param labels The labels in Prometheus syntax, e.g. {@code command="go"}, or "".
+     * @param value  The value.
+     */
+    public static void record(final String name, final String labels, final long value) {
+        if (enabled) {
+            HISTOGRAMS.computeIfAbsent(key(name, labels), k -> new Histogram(name, labels)).add(value);
+        }
+    }
+
+    /**
+     * Records the microseconds elapsed since a {@link System#nanoTime()} stamp.
+     *
+     * @param name   The metric name.
+     * @param labels The labels, or "".
+     * @param start  The start stamp.
+     */
+    public static void recordSince(final String name, final String labels, final long start) {
+        record(name, labels, (System.nanoTime() - start) / NANOS_PER_MICRO);
+    }
+
+    /**
+     * Adds one to a counter.
+     *
+     * @param name   The metric name, e.g. "timeouts_total".
+     * @param labels The labels, or "".
+     */
+    public static void increment(final String name, final String labels) {
+        if (enabled) {
+            COUNTERS.computeIfAbsent(key(name, labels), k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Current value of a counter.
+     *
+     * @param name   The metric name.
+     * @param labels The labels, or "".
+     * @return The count, 0 if never incremented.
+     */
+    public static long count(final String name, final String labels) {
+        final LongAdder counter = COUNTERS.get(key(name, labels));
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * A histogram, if anything was recorded in it.
+     *
+     * @param name   The metric name.
+     * @param labels The labels, or "".
+     * @return The histogram, or null.
+     */
+    public static Histogram histogram(final String name, final String labels) {
+        return HISTOGRAMS.get(key(name, labels));
+    }
+
+    /**
+     * Snapshot in Prometheus text exposition format.
+     *
+     * @return The metrics, histograms with cumulative power-of-two buckets.
+     */
+    public static String toPrometheus() {
+        final StringBuilder text = new StringBuilder(4096);
+        String typed = "";
+        for (final Map.Entry<String, LongAdder> counter : COUNTERS.entrySet()) {
+            final String name = PREFIX + counter.getKey();
+            final String bare = name.contains("{") ? name.substring(0, name.indexOf('{')) : name;
+            if (!bare.equals(typed)) {
+                text.append("# TYPE ").append(bare).append(" counter\n");
+                typed = bare;
+            }
+            text.append(name).append(' ').append(counter.getValue().sum()).append('\n');
+        }
+        for (final Histogram histogram : HISTOGRAMS.values()) {
+            final String name = PREFIX + histogram.name;
+            if (!name.equals(typed)) {
+                text.append("# TYPE ").append(name).append(" histogram\n");
+                typed = name;
+            }
+            final String separator = histogram.labels.isEmpty() ? "" : histogram.labels + ',';
+            long cumulative = 0;
+            for (int i = 0; i <= histogram.highest(); i++) {
+                cumulative += histogram.buckets.get(i);
+                text.append(name).append("_bucket{").append(separator).append("le=\"").append(1L << i)
+                    .append("\"} ").append(cumulative).append('\n');
+            }
+            final String labels = histogram.labels.isEmpty() ? "" : '{' + histogram.labels + '}';
+            text.append(name).append("_bucket{").append(separator).append("le=\"+Inf\"} ")
+                .append(histogram.getCount()).append('\n')
+                .append(name).append("_sum").append(labels).append(' ').append(histogram.sum.sum()).append('\n')
+                .append(name).append("_count").append(labels).append(' ').append(histogram.getCount()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Snapshot as JSON: counters, and count, sum and approximate percentiles of every histogram.
+     *
+     * @return The metrics.
+     */
+    public static String toJson() {
+        final StringBuilder json = new StringBuilder(4096).append("{\"counters\":{");
+        String separator = "";
+        for (final Map.Entry<String, LongAdder> counter : COUNTERS.entrySet()) {
+            json.append(separator).append('"').append(counter.getKey().replace("\"", "\\\"")).append("\":")
+                .append(counter.getValue().sum());
+            separator = ",";
+        }
+        json.append("},\"histograms\":{");
+        separator = "";
+        for (final Map.Entry<String, Histogram> entry : HISTOGRAMS.entrySet()) {
+            final Histogram histogram = entry.getValue();
+            json.append(separator).append('"').append(entry.getKey().replace("\"", "\\\"")).append("\":{\"count\":")
+                .append(histogram.getCount()).append(",\"sum\":").append(histogram.sum.sum()).append(",\"p50\":")
+                .append(histogram.percentile(0.5)).append(",\"p90\":").append(histogram.percentile(0.9))
+                .append(",\"p99\":").append(histogram.percentile(0.99)).append('}');
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Turns the metrics on if 'metrics.file' is set, and writes a snapshot there every 'metrics.period'
+     * milliseconds (10 seconds by default) and at close.
+     *
+     * @param properties The configuration.
+     * @return The running reporter, to close at the end; or null if metrics are off.
+     */
+    public static Reporter fromProperties(final Properties properties) {
+        final String file = properties.getProperty("metrics.file", "").trim();
+        Reporter reporter = null;
+        if (!file.isEmpty()) {
+            setEnabled(true);
+            reporter = new Reporter(Path.of(file), Long.parseLong(properties.getProperty("metrics.period", "10000")));
+        }
+        return reporter;
+    }
+
+    /** Histogram of non-negative values, in power-of-two buckets. */
+    public static final class Histogram {
+        private final String name;
+        private final String labels;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+
+        private Histogram(final String name, final String labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        private void add(final long value) {
+            final int bucket = value <= 1 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value - 1));
+            buckets.incrementAndGet(bucket);
+            sum.add(Math.max(0, value));
+        }
+
+        /**
+         * Number of values recorded.
+         *
+         * @return The count.
+         */
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        private int highest() {
+            int highest = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (buckets.get(i) > 0) {
+                    highest = i;
+                }
+            }
+            return highest;
+        }
+
+        /**
+         * Approximate percentile.
+         *
+         * @param fraction The percentile as a fraction, e.g. 0.99.
+         * @return The upper bound of the bucket holding it, 0 if empty.
+         */
+        public long percentile(final double fraction) {
+            final long count = getCount();
+            long bound = 0;
+            if (count > 0) {
+                final long rank = Math.max(1, (long) Math.ceil(count * fraction));
+                long seen = 0;
+                int bucket = -1;
+                while (seen < rank && bucket < BUCKETS - 1) {
+                    bucket++;
+                    seen += buckets.get(bucket);
+                }
+                bound = 1L << bucket;
+            }
+            return bound;
+        }
+    }
+
+    /** Writes a snapshot to a file periodically, replacing it atomically so readers never see half a file. */
+    public static final class Reporter implements AutoCloseable {
+        /** The snapshot file. */
+        @Getter
+        private final Path file;
+        private final ScheduledExecutorService scheduler;
+
+        private Reporter(final Path file, final long periodMillis) {
+            this.file = file;
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::write, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /** Writes a snapshot now. */
+        public void write() {
+            final String snapshot = file.getFileName().toString().endsWith(".json") ? toJson() : toPrometheus();
+            final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                Files.writeString(temporary, snapshot, StandardCharsets.UTF_8);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final IOException e) {
+                log.warn("Can't write the metrics to {}: {}", file, e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() {
+            scheduler.shutdownNow();
+            write();
+        }
+    }
+
+}
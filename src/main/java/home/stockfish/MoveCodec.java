@@ -0,0 +1,121 @@
+package home.stockfish;
+
+/**
+ * Packs a move into 16 bits: origin square (bits 0-5), destination square (bits 6-11) and promotion piece
+ * (bits 12-14: 0 none, 1 knight, 2 bishop, 3 rook, 4 queen). Squares go from a1 = 0 to h8 = 63. The code 0
+ * (a1a1) is never a legal move and stands for "no move", the engine's "(none)".
+ */
+public final class MoveCodec {
+    /** No move. */
+    public static final int NONE = 0;
+    /** Promotion letters by code. */
+    private static final char[] PROMOTIONS = {' ', 'n', 'b', 'r', 'q'};
+
+    private MoveCodec() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Encodes a move in UCI (lan) format.
+     *
+     * @param lan The move, e.g. "e7e8q".
+     * @return The move code, {@link #NONE} if the text is not a move.
+     */
+    public static int encode(final CharSequence lan) {
+        int code = NONE;
+        if (lan.length() == 4 || lan.length() == 5) {
+            code = encode(lan.charAt(0), lan.charAt(1), lan.charAt(2), lan.charAt(3),
+                lan.length() == 5 ? lan.charAt(4) : ' ');
+        }
+        return code;
+    }
+
+    /**
+     * Encodes a move in UCI (lan) format read as ASCII bytes.
+     *
+     * @param bytes  The buffer.
+     * @param offset Start of the move.
+     * @param length Length of the move, 4 or 5.
+     * @return The move code, {@link #NONE} if the bytes are not a move.
+     */
+    public static int encode(final byte[] bytes, final int offset, final int length) {
+        int code = NONE;
+        if (length == 4 || length == 5) {
+            code = encode((char) bytes[offset], (char) bytes[offset + 1], (char) bytes[offset + 2],
+                (char) bytes[offset + 3], length == 5 ? (char) bytes[offset + 4] : ' ');
+        }
+        return code;
+    }
+
+    private static int encode(final char fromFile, final char fromRank, final char toFile, final char toRank,
+            final char promotion) {
+        int code = NONE;
+        if (isFile(fromFile) && isRank(fromRank) && isFile(toFile) && isRank(toRank)) {
+            final int from = (fromRank - '1') * 8 + fromFile - 'a';
+            final int to = (toRank - '1') * 8 + toFile - 'a';
+            code = from | to << 6 | promotionCode(promotion) << 12;
+        }
+        return code;
+    }
+
+    private static boolean isFile(final char file) {
+        return file >= 'a' && file <= 'h';
+    }
+
+    private static boolean isRank(final char rank) {
+        return rank >= '1' && rank <= '8';
+    }
+
+    private static int promotionCode(final char promotion) {
+        return switch (Character.toLowerCase(promotion)) {
+            case 'n' -> 1;
+            case 'b' -> 2;
+            case 'r' -> 3;
+            case 'q' -> 4;
+            default -> 0;
+        };
+    }
+
+    /** Origin square of a move code. */
+    public static int from(final int code) {
+        return code & 0x3F;
+    }
+
+    /** Destination square of a move code. */
+    public static int to(final int code) {
+        return code >>> 6 & 0x3F;
+    }
+
+    /** Promotion of a move code, as the UCI letter (n, b, r, q), or 0 if none. */
+    public static char promotion(final int code) {
+        final int promotion = code >>> 12 & 0x7;
+        return promotion == 0 ? 0 : PROMOTIONS[promotion];
+    }
+
+    /**
+     * Decodes a move code.
+     *
+     * @param code The move code.
+     * @return The move in UCI (lan) format, "(none)" for {@link #NONE}.
+     */
+    public static String toLan(final int code) {
+        final String lan;
+        if (code == NONE) {
+            lan = "(none)";
+        } else {
+            final StringBuilder text = new StringBuilder(5);
+            appendSquare(text, from(code));
+            appendSquare(text, to(code));
+            if (promotion(code) != 0) {
+                text.append(promotion(code));
+            }
+            lan = text.toString();
+        }
+        return lan;
+    }
+
+    private static void appendSquare(final StringBuilder text, final int square) {
+        text.append((char) ('a' + (square & 7))).append((char) ('1' + (square >> 3)));
+    }
+
+}
@@ -1,95 +1,428 @@
 package home.stockfish;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.github.bhlangonijr.chesslib.Board;
-import com.github.bhlangonijr.chesslib.MoveBackup;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Side;
 import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
 import com.github.louism33.chesscore.Chessboard;
-import com.github.louism33.utils.MoveParserFromAN;
 
 import lombok.extern.slf4j.Slf4j;
 
-/** Main class to run the Stockfish chess engine. */
+/**
+ * Move notation utilities.
+ * <p>
+ * The SAN encoder works on a single chesslib {@link Board}: disambiguation, captures, promotions, castling and
+ * check are decided from precomputed attack tables and the board's squares, then the move is played on that same
+ * board. No board is cloned and no FEN is parsed, so a whole game can be converted in one incremental pass.
+ */
 @Slf4j
 public final class MoveUtils {
+    /** Squares by index (a1 = 0, h8 = 63). */
+    private static final Square[] SQUARES = Square.values();
+    /** Knight moves as (file, rank) deltas. */
+    private static final int[][] KNIGHT_DELTAS = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1},
+        {-1, 2}};
+    /** King moves as (file, rank) deltas. */
+    private static final int[][] KING_DELTAS = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1},
+        {1, -1}};
+    /** Sliding directions as (file, rank) deltas: four orthogonal, then four diagonal. */
+    private static final int[][] DIRECTIONS = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}, {1, 1}, {-1, 1}, {-1, -1}, {1, -1}};
+    /** Number of orthogonal directions at the start of {@link #DIRECTIONS}. */
+    private static final int ORTHOGONAL = 4;
+    /** Squares attacked by a knight on each square. */
+    private static final int[][] KNIGHT_ATTACKS = attacks(KNIGHT_DELTAS);
+    /** Squares attacked by a king on each square. */
+    private static final int[][] KING_ATTACKS = attacks(KING_DELTAS);
+    /** Rays from each square in each direction, nearest square first. */
+    private static final int[][][] RAYS = new int[64][DIRECTIONS.length][];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                final List<Integer> ray = new ArrayList<>();
+                int file = (square & 7) + DIRECTIONS[d][0];
+                int rank = (square >> 3) + DIRECTIONS[d][1];
+                while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+                    ray.add(rank * 8 + file);
+                    file += DIRECTIONS[d][0];
+                    rank += DIRECTIONS[d][1];
+                }
+                RAYS[square][d] = ray.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
 
     private MoveUtils() {
         // Private constructor to prevent instantiation
     }
 
+    private static int[][] attacks(final int[][] deltas) {
+        final int[][] table = new int[64][];
+        for (int square = 0; square < 64; square++) {
+            final List<Integer> targets = new ArrayList<>();
+            for (final int[] delta : deltas) {
+                final int file = (square & 7) + delta[0];
+                final int rank = (square >> 3) + delta[1];
+                if (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+                    targets.add(rank * 8 + file);
+                }
+            }
+            table[square] = targets.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return table;
+    }
+
     /**
      * Converts a move in LAN (Long Algebraic Notation) format to SAN (Standard
-     * Algebraic Notation) format.
+     * Algebraic Notation) format. The board is left unchanged.
      *
      * @param board      The current board state.
-     * @param chessboard The chess board object for additional context.
+     * @param chessboard The chess board object for additional context (no longer needed).
      * @param lan        The move in LAN format (e.g., "e5f6").
      * @return The move in SAN format (e.g., "exf6").
+     * @deprecated Use {@link #toSan(Board, String)}, which needs a single board.
      */
-    // @SuppressWarnings({"PMD.CommentSize"})
+    @Deprecated
     public static String lanToSan(final Board board, final Chessboard chessboard, final String lan) {
-        validate(board, chessboard, lan);
+        if (chessboard == null) {
+            throw new IllegalArgumentException("El parámetro 'chessboard' no puede ser nulo");
+        }
+        final String san = toSan(board, lan);
+        board.undoMove();
+        if (log.isDebugEnabled()) {
+            log.debug("LAN: {} -> SAN: {}", lan, san);
+        }
+        return san;
+    }
+
+    /**
+     * Converts a move in LAN format to SAN format and plays it on the board.
+     *
+     * @param board The current board state, advanced by the move.
+     * @param lan   The move in LAN format (e.g., "e5f6").
+     * @return The move in SAN format (e.g., "exf6").
+     */
+    public static String toSan(final Board board, final String lan) {
+        validate(board, lan);
+        final StringBuilder san = new StringBuilder(8);
+        appendSan(board, lan, san);
+        return san.toString();
+    }
+
+    /**
+     * Converts the moves of a game from LAN to SAN in one pass over a single board.
+     *
+     * @param fen  The initial position in FEN format.
+     * @param lans The moves in LAN format.
+     * @return The moves in SAN format.
+     */
+    public static List<String> toSan(final String fen, final List<String> lans) {
+        final Board board = new Board();
+        board.loadFromFen(fen);
+        final List<String> sans = new ArrayList<>(lans.size());
+        final StringBuilder san = new StringBuilder(8);
+        for (final String lan : lans) {
+            san.setLength(0);
+            appendSan(board, lan, san);
+            sans.add(san.toString());
+        }
+        return sans;
+    }
+
+    /**
+     * Converts the moves of a game from SAN to LAN, matching each one against the SAN of the legal moves.
+     *
+     * @param fen  The initial position in FEN format.
+     * @param sans The moves in SAN format, with or without check and annotation suffixes.
+     * @return The moves in LAN format.
+     */
+    public static List<String> toLan(final String fen, final List<String> sans) {
+        final Board board = new Board();
+        board.loadFromFen(fen);
+        final List<String> lans = new ArrayList<>(sans.size());
+        final StringBuilder san = new StringBuilder(8);
+        for (final String text : sans) {
+            final String wanted = stripSuffix(text);
+            String found = null;
+            for (final Move move : board.legalMoves()) {
+                final String lan = move.toString();
+                san.setLength(0);
+                appendSanBase(board, lan, san);
+                if (wanted.contentEquals(san)) {
+                    found = lan;
+                    break;
+                }
+            }
+            if (found == null || !board.doMove(found)) {
+                throw new IllegalArgumentException("Movimiento SAN no válido: " + text);
+            }
+            lans.add(found);
+        }
+        return lans;
+    }
 
-        // Create a temporary board to avoid modifying the original
-        final Board tempBoard = new Board();
-        tempBoard.loadFromFen(board.getFen());
+    /** Removes the check, mate and annotation suffixes of a SAN move, and reads zeros as castling O's. */
+    private static String stripSuffix(final String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return san.substring(0, end).replace('0', 'O');
+    }
+
+    /**
+     * Appends the SAN of a move, without the check suffix, leaving the board unchanged.
+     *
+     * @param board The current board state.
+     * @param lan   The move in LAN format.
+     * @param san   Destination of the SAN text.
+     * @return The moving piece.
+     */
+    /* default */ static Piece appendSanBase(final Board board, final String lan, final StringBuilder san) {
+        if (lan == null || lan.length() < 4 || lan.length() > 5) {
+            throw new IllegalArgumentException("Movimiento LAN no válido: " + lan);
+        }
+        final int from = squareIndex(lan, 0);
+        final int to = squareIndex(lan, 2);
+        final Piece piece = board.getPiece(SQUARES[from]);
+        if (piece == null || piece == Piece.NONE) {
+            throw new IllegalArgumentException("Movimiento LAN no válido: " + lan);
+        }
+        final PieceType type = piece.getPieceType();
+        final int fileDelta = (to & 7) - (from & 7);
+        if (type == PieceType.KING && Math.abs(fileDelta) == 2) {
+            san.append(fileDelta > 0 ? "O-O" : "O-O-O");
+        } else if (type == PieceType.PAWN) {
+            if (fileDelta != 0) {
+                // Captures, en passant included
+                san.append(lan.charAt(0)).append('x');
+            }
+            san.append(lan, 2, 4);
+            if (lan.length() == 5) {
+                san.append('=').append(Character.toUpperCase(lan.charAt(4)));
+            }
+        } else {
+            san.append(pieceLetter(type));
+            if (type != PieceType.KING) {
+                appendDisambiguation(board, piece, from, to, san);
+            }
+            if (board.getPiece(SQUARES[to]) != Piece.NONE) {
+                san.append('x');
+            }
+            san.append(lan, 2, 4);
+        }
+        return piece;
+    }
 
+    private static void appendSan(final Board board, final String lan, final StringBuilder san) {
+        final Piece piece = appendSanBase(board, lan, san);
+        if (!board.doMove(lan)) {
+            throw new IllegalArgumentException("Movimiento LAN no válido: " + lan);
+        }
+        if (board.isKingAttacked()) {
+            san.append(isMate(board, piece.getPieceSide().flip()) ? '#' : '+');
+        }
         if (log.isTraceEnabled()) {
-            log.trace("Board:\n{}", tempBoard);
+            log.trace("LAN: {} -> SAN: {}", lan, san);
+        }
+    }
+
+    /**
+     * Checks if the side in check is mated. A king with a safe square to go is not, which settles most checks from
+     * the attack tables; only the remaining ones need the full legal move generation.
+     */
+    private static boolean isMate(final Board board, final Side checked) {
+        final int king = find(board, Piece.make(checked, PieceType.KING));
+        for (final int escape : KING_ATTACKS[king]) {
+            final Piece occupant = board.getPiece(SQUARES[escape]);
+            if ((occupant == Piece.NONE || occupant.getPieceSide() != checked)
+                    && !isAttacked(board, escape, checked.flip(), king)) {
+                return false; // NOPMD OnlyOneReturn
+            }
         }
+        return board.isMated();
+    }
 
-        String san;
-        final String check;
-        if (tempBoard.doMove(lan)) {
-            check = inCheck(tempBoard, lan);
-            final MoveBackup last = tempBoard.getBackup().getLast();
-            if (log.isTraceEnabled()) {
-                log.trace("Move applied: {}", last);
+    /**
+     * Adds the origin file and/or rank when another piece of the same kind can legally move to the same square.
+     */
+    private static void appendDisambiguation(final Board board, final Piece piece, final int from, final int to,
+            final StringBuilder san) {
+        long others = origins(board, piece, to) & ~(1L << from);
+        boolean ambiguous = false;
+        boolean sameFile = false;
+        boolean sameRank = false;
+        int king = -1;
+        while (others != 0) {
+            final int other = Long.numberOfTrailingZeros(others);
+            others &= others - 1;
+            if (king < 0) {
+                king = find(board, Piece.make(piece.getPieceSide(), PieceType.KING));
+            }
+            if (!isPinned(board, piece.getPieceSide(), king, other, to)) {
+                ambiguous = true;
+                sameFile |= (other & 7) == (from & 7);
+                sameRank |= (other >> 3) == (from >> 3);
             }
-            if (Square.NONE.equals(last.getEnPassant()) || Square.NONE.equals(last.getEnPassantTarget())) {
-                san = MoveParserFromAN.lanToSan(chessboard, lan);
+        }
+        if (ambiguous) {
+            if (!sameFile) {
+                san.append((char) ('a' + (from & 7)));
+            } else if (sameRank) {
+                san.append((char) ('a' + (from & 7))).append((char) ('1' + (from >> 3)));
             } else {
-                san = lan.charAt(0) + "x" + lan.substring(2);
-                log.info("En passant move found: {}", san);
+                san.append((char) ('1' + (from >> 3)));
+            }
+        }
+    }
+
+    /** Squares, as a bit mask, of the pieces equal to {@code piece} that attack {@code to}. */
+    private static long origins(final Board board, final Piece piece, final int to) {
+        long found = 0;
+        final PieceType type = piece.getPieceType();
+        if (type == PieceType.KNIGHT) {
+            for (final int square : KNIGHT_ATTACKS[to]) {
+                if (board.getPiece(SQUARES[square]) == piece) {
+                    found |= 1L << square;
+                }
             }
         } else {
-            throw new IllegalArgumentException("Movimiento LAN no válido: " + lan);
+            final int first = type == PieceType.BISHOP ? ORTHOGONAL : 0;
+            final int last = type == PieceType.ROOK ? ORTHOGONAL : DIRECTIONS.length;
+            for (int d = first; d < last; d++) {
+                final int square = firstOccupied(board, RAYS[to][d], -1);
+                if (square >= 0 && board.getPiece(SQUARES[square]) == piece) {
+                    found |= 1L << square;
+                }
+            }
         }
-        if (!check.isEmpty()) {
-            // If check or check-mate, append the symbol
-            san += check;
+        return found;
+    }
+
+    /**
+     * Checks if moving the piece on {@code from} to {@code to} would leave its own king attacked by a slider.
+     */
+    private static boolean isPinned(final Board board, final Side side, final int king, final int from,
+            final int to) {
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            final int[] ray = RAYS[king][d];
+            if (firstOccupied(board, ray, -1) == from) {
+                // The piece shields the king in this direction: look behind it, unless it stays on the line
+                if (indexOf(ray, to) >= 0) {
+                    return false; // NOPMD OnlyOneReturn
+                }
+                for (int i = indexOf(ray, from) + 1; i < ray.length; i++) {
+                    final Piece behind = board.getPiece(SQUARES[ray[i]]);
+                    if (behind != Piece.NONE) {
+                        return behind.getPieceSide() != side && slides(behind.getPieceType(), d); // NOPMD
+                    }
+                }
+                return false; // NOPMD OnlyOneReturn
+            }
         }
-        if (log.isDebugEnabled()) {
-            log.debug("LAN: {} -> SAN: {}", lan, san);
+        return false;
+    }
+
+    /** Checks if a square is attacked by a side, with the {@code ignored} square taken as empty. */
+    private static boolean isAttacked(final Board board, final int square, final Side attacker, final int ignored) {
+        final Piece knightPiece = Piece.make(attacker, PieceType.KNIGHT);
+        for (final int knight : KNIGHT_ATTACKS[square]) {
+            if (board.getPiece(SQUARES[knight]) == knightPiece) {
+                return true; // NOPMD OnlyOneReturn
+            }
         }
+        final Piece kingPiece = Piece.make(attacker, PieceType.KING);
+        for (final int king : KING_ATTACKS[square]) {
+            if (board.getPiece(SQUARES[king]) == kingPiece) {
+                return true; // NOPMD OnlyOneReturn
+            }
+        }
+        final Piece pawnPiece = Piece.make(attacker, PieceType.PAWN);
+        final int pawnRank = (square >> 3) + (attacker == Side.WHITE ? -1 : 1);
+        if (pawnRank >= 0 && pawnRank < 8) {
+            for (int file = (square & 7) - 1; file <= (square & 7) + 1; file += 2) {
+                if (file >= 0 && file < 8 && board.getPiece(SQUARES[pawnRank * 8 + file]) == pawnPiece) {
+                    return true; // NOPMD OnlyOneReturn
+                }
+            }
+        }
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            final int slider = firstOccupied(board, RAYS[square][d], ignored);
+            if (slider >= 0) {
+                final Piece piece = board.getPiece(SQUARES[slider]);
+                if (piece.getPieceSide() == attacker && slides(piece.getPieceType(), d)) {
+                    return true; // NOPMD OnlyOneReturn
+                }
+            }
+        }
+        return false;
+    }
 
-        return san;
+    /** Checks if a piece type slides in the given direction. */
+    private static boolean slides(final PieceType type, final int direction) {
+        return type == PieceType.QUEEN || (direction < ORTHOGONAL ? type == PieceType.ROOK : type == PieceType.BISHOP);
     }
 
-    private static String inCheck(final Board board, final String lan) {
-      String check = "";
-      if (board.isKingAttacked()) {
-          if (log.isTraceEnabled()) {
-              log.trace("King attacked: {}", lan);
-          }
-          if (board.isMated()) {
-              check = "#";
-          } else {
-              check = "+";
-          }
-      }
-      return check;
+    /** First occupied square of a ray, -1 if none. The {@code ignored} square is taken as empty. */
+    private static int firstOccupied(final Board board, final int[] ray, final int ignored) {
+        for (final int square : ray) {
+            if (square != ignored && board.getPiece(SQUARES[square]) != Piece.NONE) {
+                return square; // NOPMD OnlyOneReturn
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(final int[] ray, final int square) {
+        for (int i = 0; i < ray.length; i++) {
+            if (ray[i] == square) {
+                return i; // NOPMD OnlyOneReturn
+            }
+        }
+        return -1;
     }
 
-    private static void validate(final Board board, final Chessboard chessboard, final String lan) {
+    private static int find(final Board board, final Piece piece) {
+        for (int square = 0; square < 64; square++) {
+            if (board.getPiece(SQUARES[square]) == piece) {
+                return square; // NOPMD OnlyOneReturn
+            }
+        }
+        throw new IllegalArgumentException("Pieza no encontrada: " + piece);
+    }
+
+    private static int squareIndex(final String lan, final int offset) {
+        final int file = lan.charAt(offset) - 'a';
+        final int rank = lan.charAt(offset + 1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+            throw new IllegalArgumentException("Movimiento LAN no válido: " + lan);
+        }
+        return rank * 8 + file;
+    }
+
+    private static char pieceLetter(final PieceType type) {
+        return switch (type) {
+            case KNIGHT -> 'N';
+            case BISHOP -> 'B';
+            case ROOK -> 'R';
+            case QUEEN -> 'Q';
+            case KING -> 'K';
+            default -> throw new IllegalArgumentException("Tipo de pieza no válido: " + type);
+        };
+    }
+
+    private static void validate(final Board board, final String lan) {
         if (board == null) {
             throw new IllegalArgumentException("El parámetro 'board' no puede ser nulo");
         }
-        if (chessboard == null) {
-            throw new IllegalArgumentException("El parámetro 'chessboard' no puede ser nulo");
-        }
         if (lan == null || lan.isEmpty()) {
             throw new IllegalArgumentException("El parámetro 'lan' no puede ser nulo ni vacío");
         }
     }
 
-}
\ No newline at end of file
+}
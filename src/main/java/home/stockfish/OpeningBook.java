@@ -0,0 +1,318 @@
+package home.stockfish;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Polyglot opening book ({@code .bin}): 16-byte big-endian entries (key, move, weight, learn) sorted by the Polyglot
+ * Zobrist key of the position. The book is memory-mapped and looked up by binary search, so a probe costs a few
+ * page-cache reads and the book is shared by all the games of a run.
+ * <p>
+ * The key needs the 781 random numbers of the Polyglot specification, which are shipped as a resource or read from a
+ * file (the {@code Random64} array of the Polyglot sources as text, or the 6248 bytes of the numbers in big-endian)
+ * and checked against the key of the initial position.
+ */
+@Slf4j
+public final class OpeningBook implements AutoCloseable {
+    /** Random numbers of a Polyglot key: 768 piece-square, 4 castling, 8 en passant files and 1 side to move. */
+    /* default */ static final int RANDOMS = 781;
+    /** Size of a book entry. */
+    /* default */ static final int ENTRY = 16;
+    /** Polyglot key of the initial position, from the specification. */
+    /* default */ static final long START_KEY = 0x463B96181691FC9CL;
+    /** Resource with the {@code Random64} array of the Polyglot sources. */
+    private static final String POLYGLOT_RANDOMS = "/polyglot-random64.txt";
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final int CASTLING = 768;
+    private static final int EN_PASSANT = 772;
+    private static final int TURN = 780;
+    /** Polyglot piece kinds, in order: black pawn, white pawn, black knight... white king. */
+    private static final String PIECES = "pPnNbBrRqQkK";
+    private static final String PROMOTIONS = " nbrq";
+    /** A 64-bit number in hexadecimal, as written in the Polyglot sources. */
+    private static final Pattern HEX = Pattern.compile("(?i)(?:0x)?([0-9a-f]{16})(?![0-9a-f])");
+    private final FileChannel channel;
+    private final MappedByteBuffer entries;
+    private final int size;
+    private final long[] randoms;
+    /** Book moves are only played in the first plies of a game. */
+    @Getter
+    private final int maxPlies;
+    /** True to always play the move with the highest weight, false to choose at random by weight. */
+    private final boolean best;
+
+    /**
+     * A move of the book.
+     *
+     * @param move   The move in UCI (lan) format.
+     * @param weight The weight, relative to the other moves of the position.
+     */
+    public record Entry(String move, int weight) {
+    }
+
+    /**
+     * Opens a book.
+     *
+     * @param book     The {@code .bin} file.
+     * @param randoms  The Polyglot random numbers, see {@link #readRandoms(Path)}.
+     * @param maxPlies Book moves are only played in the first plies of a game.
+     * @param best     True to always play the move with the highest weight, false to choose by weight.
+     * @throws IOException If the book cannot be mapped.
+     */
+    public OpeningBook(final Path book, final long[] randoms, final int maxPlies, final boolean best)
+            throws IOException {
+        if (randoms.length != RANDOMS) {
+            throw new IllegalArgumentException("Se esperan " + RANDOMS + " números aleatorios: " + randoms.length);
+        }
+        this.randoms = randoms.clone();
+        this.maxPlies = maxPlies;
+        this.best = best;
+        channel = FileChannel.open(book, StandardOpenOption.READ);
+        final long length = channel.size();
+        if (length % ENTRY != 0 || length > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Not a Polyglot book: " + book);
+        }
+        entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        size = (int) (length / ENTRY);
+        log.debug("Opening book {} with {} entries.", book, size);
+    }
+
+    /**
+     * Opens the book of the configuration: 'book.file', 'book.randoms' (a file with the random numbers, the shipped
+     * ones by default), 'book.max.plies' (16 by default) and 'book.choice' ("weighted", the default, or "best").
+     *
+     * @param properties The configuration.
+     * @return The book, to close at the end; or null if 'book.file' is not set.
+     * @throws IOException If the files cannot be read.
+     */
+    public static OpeningBook fromProperties(final Properties properties) throws IOException {
+        final String file = properties.getProperty("book.file", "").trim();
+        OpeningBook book = null;
+        if (!file.isEmpty()) {
+            final String randoms = properties.getProperty("book.randoms", "").trim();
+            book = new OpeningBook(Path.of(file), randoms.isEmpty() ? readRandoms() : readRandoms(Path.of(randoms)),
+                Integer.parseInt(properties.getProperty("book.max.plies", "16")),
+                "best".equals(properties.getProperty("book.choice", "weighted").trim()));
+        }
+        return book;
+    }
+
+    /**
+     * Reads the Polyglot random numbers.
+     *
+     * @param file Binary file of 781 big-endian numbers, or text with the 781 numbers in hexadecimal.
+     * @return The numbers.
+     * @throws IOException If the file cannot be read, or does not hold the Polyglot numbers.
+     */
+    public static long[] readRandoms(final Path file) throws IOException {
+        return readRandoms(Files.readAllBytes(file), file.toString());
+    }
+
+    /**
+     * Reads the Polyglot random numbers shipped with the client.
+     *
+     * @return The numbers.
+     * @throws IOException If the resource cannot be read.
+     */
+    public static long[] readRandoms() throws IOException {
+        final byte[] bytes;
+        try (InputStream in = OpeningBook.class.getResourceAsStream(POLYGLOT_RANDOMS)) {
+            if (in == null) {
+                throw new FileNotFoundException(POLYGLOT_RANDOMS);
+            }
+            bytes = in.readAllBytes();
+        }
+        return readRandoms(bytes, POLYGLOT_RANDOMS);
+    }
+
+    private static long[] readRandoms(final byte[] bytes, final String source) throws IOException {
+        final long[] randoms;
+        if (bytes.length == RANDOMS * Long.BYTES) {
+            randoms = new long[RANDOMS];
+            ByteBuffer.wrap(bytes).asLongBuffer().get(randoms);
+        } else {
+            final List<Long> numbers = new ArrayList<>(RANDOMS);
+            final Matcher hex = HEX.matcher(new String(bytes, StandardCharsets.US_ASCII));
+            while (hex.find()) {
+                numbers.add(Long.parseUnsignedLong(hex.group(1), 16));
+            }
+            randoms = numbers.stream().mapToLong(Long::longValue).toArray();
+        }
+        if (randoms.length != RANDOMS || key(randoms, START_FEN) != START_KEY) {
+            throw new IOException("Not the Polyglot random numbers: " + source);
+        }
+        return randoms;
+    }
+
+    /**
+     * Polyglot key of a position.
+     *
+     * @param fen The position in FEN format.
+     * @return The key.
+     */
+    public long key(final String fen) {
+        return key(randoms, fen);
+    }
+
+    /* default */ static long key(final long[] randoms, final String fen) {
+        final String[] fields = fen.trim().split("\\s+");
+        final char[] squares = squares(fields[0]);
+        long key = 0;
+        for (int square = 0; square < squares.length; square++) {
+            final int kind = PIECES.indexOf(squares[square]);
+            if (kind >= 0) {
+                key ^= randoms[64 * kind + square];
+            }
+        }
+        final boolean white = fields.length < 2 || "w".equals(fields[1]);
+        final String castling = fields.length > 2 ? fields[2] : "-";
+        for (int right = 0; right < 4; right++) {
+            if (castling.indexOf("KQkq".charAt(right)) >= 0) {
+                key ^= randoms[CASTLING + right];
+            }
+        }
+        // The en passant file only counts if a pawn of the side to move can capture there
+        if (fields.length > 3 && fields[3].length() == 2) {
+            final int file = fields[3].charAt(0) - 'a';
+            final int rank = white ? 4 : 3;
+            final char pawn = white ? 'P' : 'p';
+            if (file > 0 && squares[rank * 8 + file - 1] == pawn || file < 7 && squares[rank * 8 + file + 1] == pawn) {
+                key ^= randoms[EN_PASSANT + file];
+            }
+        }
+        if (white) {
+            key ^= randoms[TURN];
+        }
+        return key;
+    }
+
+    /** The piece on every square (a1 = 0, h8 = 63), a blank if empty. */
+    private static char[] squares(final String placement) {
+        final char[] squares = new char[64];
+        int rank = 7;
+        int file = 0;
+        for (int i = 0; i < placement.length(); i++) {
+            final char c = placement.charAt(i);
+            if (c == '/') {
+                rank--;
+                file = 0;
+            } else if (Character.isDigit(c)) {
+                for (int empty = c - '0'; empty > 0; empty--) {
+                    squares[rank * 8 + file++] = ' ';
+                }
+            } else {
+                squares[rank * 8 + file++] = c;
+            }
+        }
+        return squares;
+    }
+
+    /**
+     * The book moves of a position.
+     *
+     * @param fen The position in FEN format.
+     * @return The moves, in book order (highest weight first in most books); empty if the position is not in the
+     *         book.
+     */
+    public List<Entry> entries(final String fen) {
+        final long key = key(fen);
+        // First entry whose key is not lower, keys compare as unsigned numbers
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int middle = low + high >>> 1;
+            if (Long.compareUnsigned(entries.getLong(middle * ENTRY), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        final List<Entry> moves = new ArrayList<>();
+        final char[] squares = squares(fen.trim().split("\\s+")[0]);
+        for (int i = low; i < size && entries.getLong(i * ENTRY) == key; i++) {
+            moves.add(new Entry(decode(entries.getShort(i * ENTRY + 8), squares),
+                Short.toUnsignedInt(entries.getShort(i * ENTRY + 10))));
+        }
+        return moves;
+    }
+
+    /** A Polyglot move in UCI format: castling is stored as the king taking its own rook. */
+    private static String decode(final short move, final char[] squares) {
+        final int toFile = move & 7;
+        final int toRank = move >> 3 & 7;
+        final int fromFile = move >> 6 & 7;
+        final int fromRank = move >> 9 & 7;
+        final int promotion = move >> 12 & 7;
+        int to = toFile;
+        final char piece = squares[fromRank * 8 + fromFile];
+        if ((piece == 'K' || piece == 'k') && fromFile == 4 && fromRank == toRank && (toFile == 7 || toFile == 0)) {
+            to = toFile == 7 ? 6 : 2;
+        }
+        final StringBuilder lan = new StringBuilder(5).append((char) ('a' + fromFile)).append(fromRank + 1)
+            .append((char) ('a' + to)).append(toRank + 1);
+        if (promotion > 0 && promotion < PROMOTIONS.length()) {
+            lan.append(PROMOTIONS.charAt(promotion));
+        }
+        return lan.toString();
+    }
+
+    /**
+     * Chooses the book move of a position.
+     *
+     * @param fen The position in FEN format.
+     * @param ply Plies played since the start of the game.
+     * @return The move in UCI (lan) format, or null if past {@link #getMaxPlies()} or the position is not in the book.
+     */
+    public String move(final String fen, final int ply) {
+        return ply < maxPlies ? choose(entries(fen), best, ThreadLocalRandom.current()) : null;
+    }
+
+    /* default */ static String choose(final List<Entry> moves, final boolean best, final RandomGenerator random) {
+        long total = 0;
+        Entry heaviest = null;
+        for (final Entry entry : moves) {
+            total += entry.weight();
+            if (heaviest == null || entry.weight() > heaviest.weight()) {
+                heaviest = entry;
+            }
+        }
+        String chosen = null;
+        if (best && heaviest != null && heaviest.weight() > 0) {
+            chosen = heaviest.move();
+        } else if (total > 0) {
+            long pick = random.nextLong(total);
+            for (final Entry entry : moves) {
+                pick -= entry.weight();
+                if (pick < 0 && chosen == null) {
+                    chosen = entry.move();
+                }
+            }
+        }
+        return chosen;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,74 @@
+package home.stockfish;
+
+/**
+ * The UCI 'position' command of a game, built once and extended by appending each move played, so no move list is
+ * copied or re-joined per ply. It can be re-rooted at a later position to keep its length bounded.
+ */
+public final class PositionCommand implements CharSequence {
+    /** The command text: "position fen ... moves m1 m2...". */
+    private final StringBuilder command = new StringBuilder(512);
+    /** Number of moves after the root position. */
+    private int plies;
+
+    /**
+     * Creates the command for a root position.
+     *
+     * @param fen The root position in FEN format.
+     */
+    public PositionCommand(final String fen) {
+        reroot(fen);
+    }
+
+    /**
+     * Appends a move.
+     *
+     * @param move The move in UCI (lan) format.
+     */
+    public void add(final String move) {
+        command.append(' ').append(move);
+        plies++;
+    }
+
+    /**
+     * Restarts the command at a new root position, dropping the moves played so far. The engine loses the history
+     * before the root, so this should only be done right after an irreversible move (capture or pawn move), when
+     * no earlier position can be repeated.
+     *
+     * @param fen The new root position in FEN format.
+     */
+    public void reroot(final String fen) {
+        command.setLength(0);
+        command.append("position fen ").append(fen).append(" moves");
+        plies = 0;
+    }
+
+    /**
+     * Number of moves after the root position.
+     *
+     * @return The number of moves.
+     */
+    public int plies() {
+        return plies;
+    }
+
+    @Override
+    public int length() {
+        return command.length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return command.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return command.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return command.toString();
+    }
+
+}
@@ -0,0 +1,82 @@
+package home.stockfish;
+
+/**
+ * Remembers which positions have been seen, keyed by 64-bit hash, in a Bloom filter: a fixed bit array where every
+ * position sets a few bits. Memory does not grow with the positions added; in exchange a new position is sometimes
+ * taken for a seen one, with the false positive rate chosen at creation, but a seen one is never taken for new.
+ * Not thread-safe.
+ */
+public final class PositionFilter {
+    /** Bits in a word of the array. */
+    private static final int WORD_BITS = 64;
+    /** Largest number of bits, the largest long array. */
+    private static final long MAX_BITS = (long) (Integer.MAX_VALUE - 8) * WORD_BITS;
+    private final long[] words;
+    private final long bits;
+    private final int hashes;
+    /** Number of positions added, seen ones excluded. */
+    private long count;
+
+    /**
+     * Creates a filter sized for a number of positions.
+     *
+     * @param positions         The number of distinct positions expected.
+     * @param falsePositiveRate The rate of new positions taken for seen ones once that number is reached, e.g. 0.01.
+     */
+    public PositionFilter(final long positions, final double falsePositiveRate) {
+        if (positions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Tamaño de filtro no válido: " + positions + ", " + falsePositiveRate);
+        }
+        final double ln2 = Math.log(2);
+        final long wanted = (long) Math.ceil(-positions * Math.log(falsePositiveRate) / (ln2 * ln2));
+        words = new long[(int) ((Math.clamp(wanted, WORD_BITS, MAX_BITS) + WORD_BITS - 1) / WORD_BITS)];
+        bits = (long) words.length * WORD_BITS;
+        hashes = (int) Math.clamp(Math.round((double) bits / positions * ln2), 1, 16);
+    }
+
+    /**
+     * Adds a position.
+     *
+     * @param hash The hash of the position, well mixed in all its bits.
+     * @return True if the position is new, false if it was (probably) seen before.
+     */
+    public boolean add(final long hash) {
+        // Double hashing: the bits of the i-th hash are at h1 + i * h2
+        final long step = hash >>> 32 | 1;
+        long index = hash;
+        boolean added = false;
+        for (int i = 0; i < hashes; i++) {
+            final long bit = Long.remainderUnsigned(index, bits);
+            final int word = (int) (bit / WORD_BITS);
+            final long mask = 1L << bit;
+            if ((words[word] & mask) == 0) {
+                words[word] |= mask;
+                added = true;
+            }
+            index += step;
+        }
+        if (added) {
+            count++;
+        }
+        return added;
+    }
+
+    /**
+     * Number of positions added.
+     *
+     * @return The positions taken for new.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Size of the filter.
+     *
+     * @return The number of bits.
+     */
+    public long bits() {
+        return bits;
+    }
+
+}
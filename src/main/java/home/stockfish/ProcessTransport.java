@@ -0,0 +1,67 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Optional;
+
+/** A UCI engine running as a child process, talked to through its stdin and stdout. */
+public final class ProcessTransport implements EngineTransport {
+    private final List<String> command;
+    private final Process process;
+
+    /**
+     * Starts the engine.
+     *
+     * @param command The command line (executable and arguments).
+     * @throws IOException If the process cannot be started.
+     */
+    public ProcessTransport(final List<String> command) throws IOException {
+        this.command = List.copyOf(command);
+        final ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        process = builder.start();
+    }
+
+    @Override
+    public InputStream input() {
+        return process.getInputStream();
+    }
+
+    @Override
+    public OutputStream output() {
+        return process.getOutputStream();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    @Override
+    public Optional<ProcessHandle> processHandle() {
+        return Optional.of(process.toHandle());
+    }
+
+    @Override
+    public String cacheKey() {
+        return EngineInfo.binaryKey(command);
+    }
+
+    @Override
+    public void kill() {
+        process.destroyForcibly();
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" ", command);
+    }
+
+}
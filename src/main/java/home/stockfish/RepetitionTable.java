@@ -0,0 +1,100 @@
+package home.stockfish;
+
+import java.util.Arrays;
+
+/**
+ * Counts how many times each position of a game has been reached, keyed by 64-bit Zobrist hash. Keys live in a
+ * primitive open-addressed table (linear probing), so no boxing or string keys are involved. Positions before the
+ * last irreversible move (capture or pawn move) can never be repeated, so the table only holds the keys since then
+ * and is emptied, entry by entry, at every irreversible move.
+ */
+public final class RepetitionTable {
+    /** Initial capacity of the table, a power of two. */
+    private static final int INITIAL_CAPACITY = 64;
+    /** Keys of the table. */
+    private long[] keys = new long[INITIAL_CAPACITY];
+    /** Occurrences of each key, 0 for an empty slot. */
+    private int[] counts = new int[INITIAL_CAPACITY];
+    /** Keys added since the last irreversible move, in order. */
+    private long[] history = new long[INITIAL_CAPACITY];
+    /** Slot of each key of {@link #history} in the table. */
+    private int[] historySlots = new int[INITIAL_CAPACITY];
+    /** Number of keys in {@link #history} (and entries in the table at most). */
+    private int plies;
+
+    /**
+     * Records a position.
+     *
+     * @param key          The Zobrist key of the position.
+     * @param irreversible True if the position was reached by an irreversible move (half-move clock reset).
+     * @return The number of times the position has been reached, this one included.
+     */
+    public int add(final long key, final boolean irreversible) {
+        if (irreversible) {
+            clear();
+        }
+        if (plies == history.length) {
+            history = Arrays.copyOf(history, plies * 2);
+            historySlots = Arrays.copyOf(historySlots, plies * 2);
+        }
+        if ((plies + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        final int slot = slot(key);
+        keys[slot] = key;
+        history[plies] = key;
+        historySlots[plies++] = slot;
+        return ++counts[slot];
+    }
+
+    /**
+     * Number of times a position has been reached since the last irreversible move.
+     *
+     * @param key The Zobrist key of the position.
+     * @return The number of occurrences.
+     */
+    public int count(final long key) {
+        return counts[slot(key)];
+    }
+
+    /** Forgets all positions, visiting only the slots used since the last irreversible move. */
+    public void clear() {
+        for (int i = 0; i < plies; i++) {
+            counts[historySlots[i]] = 0;
+        }
+        plies = 0;
+    }
+
+    /** Slot holding the key, or the empty slot where it would go. */
+    private int slot(final long key) {
+        final int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (counts[slot] != 0 && keys[slot] != key) {
+            slot = slot + 1 & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(final long key) {
+        final long h = key * 0x9E37_79B9_7F4A_7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    private void rehash(final int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldCounts = counts;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                final int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+        for (int i = 0; i < plies; i++) {
+            historySlots[i] = slot(history[i]);
+        }
+    }
+
+}
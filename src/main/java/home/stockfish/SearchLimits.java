@@ -0,0 +1,123 @@
+package home.stockfish;
+
+/**
+ * Limits of a single search, translated into the UCI 'go' command. A value of zero means "not set".
+ *
+ * @param movetime  Time to search in milliseconds.
+ * @param depth     Maximum depth in plies.
+ * @param nodes     Maximum number of nodes.
+ * @param mate      Search for a mate in this many moves.
+ * @param wtime     White's remaining clock time in milliseconds.
+ * @param btime     Black's remaining clock time in milliseconds.
+ * @param winc      White's increment per move in milliseconds.
+ * @param binc      Black's increment per move in milliseconds.
+ * @param movestogo Moves to the next time control (0 for sudden death).
+ * @param multiPv   Number of principal variations to report (1 if zero).
+ */
+public record SearchLimits(int movetime, int depth, long nodes, int mate, int wtime, int btime, int winc, int binc,
+        int movestogo, int multiPv) {
+
+    /**
+     * Limits without clock or mate search.
+     *
+     * @param movetime Time to search in milliseconds.
+     * @param depth    Maximum depth in plies.
+     * @param nodes    Maximum number of nodes.
+     * @param multiPv  Number of principal variations to report (1 if zero).
+     */
+    public SearchLimits(final int movetime, final int depth, final long nodes, final int multiPv) {
+        this(movetime, depth, nodes, 0, 0, 0, 0, 0, 0, multiPv);
+    }
+
+    /** Searches for a fixed time in milliseconds. */
+    public static SearchLimits movetime(final int movetime) {
+        return new SearchLimits(movetime, 0, 0, 1);
+    }
+
+    /** Searches to a fixed depth. */
+    public static SearchLimits depth(final int depth) {
+        return new SearchLimits(0, depth, 0, 1);
+    }
+
+    /** Searches a fixed number of nodes. */
+    public static SearchLimits nodes(final long nodes) {
+        return new SearchLimits(0, 0, nodes, 1);
+    }
+
+    /** Searches for a mate in the given number of moves. */
+    public static SearchLimits mate(final int moves) {
+        return new SearchLimits(0, 0, 0, moves, 0, 0, 0, 0, 0, 1);
+    }
+
+    /**
+     * Lets the engine manage its time from the clocks.
+     *
+     * @param wtime     White's remaining time in milliseconds.
+     * @param btime     Black's remaining time in milliseconds.
+     * @param winc      White's increment per move in milliseconds.
+     * @param binc      Black's increment per move in milliseconds.
+     * @param movestogo Moves to the next time control, 0 for sudden death.
+     * @return The limits.
+     */
+    public static SearchLimits clock(final int wtime, final int btime, final int winc, final int binc,
+            final int movestogo) {
+        return new SearchLimits(0, 0, 0, 0, wtime, btime, winc, binc, movestogo, 1);
+    }
+
+    /** Same limits, reporting the given number of principal variations. */
+    public SearchLimits withMultiPv(final int lines) {
+        return new SearchLimits(movetime, depth, nodes, mate, wtime, btime, winc, binc, movestogo, lines);
+    }
+
+    /** Same limits, with the clocks updated. */
+    public SearchLimits withClock(final int whiteTime, final int blackTime) {
+        return new SearchLimits(movetime, depth, nodes, mate, whiteTime, blackTime, winc, binc, movestogo, multiPv);
+    }
+
+    /**
+     * Tells if the engine manages its own time from the clocks.
+     *
+     * @return true if wtime or btime is set.
+     */
+    public boolean hasClock() {
+        return wtime > 0 || btime > 0;
+    }
+
+    /**
+     * Upper bound of the time the search can take.
+     *
+     * @return The movetime, or the largest clock, in milliseconds; 0 if the search is not bounded in time.
+     */
+    public int maxMillis() {
+        return movetime > 0 ? movetime : Math.max(wtime, btime);
+    }
+
+    /**
+     * Builds the UCI 'go' command for these limits.
+     *
+     * @return The command, e.g. "go movetime 200".
+     */
+    public String toGoCommand() {
+        final StringBuilder command = new StringBuilder("go");
+        append(command, " wtime ", wtime);
+        append(command, " btime ", btime);
+        append(command, " winc ", winc);
+        append(command, " binc ", binc);
+        append(command, " movestogo ", movestogo);
+        append(command, " movetime ", movetime);
+        append(command, " depth ", depth);
+        append(command, " nodes ", nodes);
+        append(command, " mate ", mate);
+        if (command.length() == 2) {
+            command.append(" infinite");
+        }
+        return command.toString();
+    }
+
+    private static void append(final StringBuilder command, final String name, final long value) {
+        if (value > 0) {
+            command.append(name).append(value);
+        }
+    }
+
+}
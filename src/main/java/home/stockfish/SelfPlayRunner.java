@@ -0,0 +1,216 @@
+package home.stockfish;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Plays many self-play games at the same time, one engine of the pool per running game (two with pondering).
+ * Finished games are streamed out in PGN format as soon as they end, and optionally appended to a binary
+ * {@link GameArchiveWriter archive}.
+ */
+@Slf4j
+public class SelfPlayRunner {
+    /** Throughput is logged every this many games. */
+    private static final int REPORT_EVERY = 100;
+    /** Milliseconds in an hour. */
+    private static final double HOUR = 3_600_000.0;
+    /** Engines playing the games. */
+    private final EnginePool pool;
+    /** Time in milliseconds for the engine to "think" each move. */
+    private final int thinkingTime;
+    /** Destination of the finished games. */
+    private final Writer pgnOut;
+    /** Number of finished games. */
+    private final AtomicLong finished = new AtomicLong();
+    /** Search limits of every move, instead of the thinking time; or null. */
+    @Setter
+    private SearchLimits limits;
+    /** Ends searches early when the move is clear, or null. */
+    @Setter
+    private EarlyStop earlyStop;
+    /** Ends games early from the engine scores, or null. */
+    @Setter
+    private Adjudicator.Rules adjudication;
+    /** Binary archive the finished games are also appended to, or null. */
+    @Setter
+    private GameArchiveWriter archive;
+    /** Engine configuration id stored with the games in the {@link #archive}. */
+    @Setter
+    private int configId;
+    /** True to play each game with two engines of the pool, each pondering on the expected reply. */
+    @Setter
+    private boolean ponder;
+    /** Training positions sampled from the finished games, or null. */
+    @Setter
+    private TrainingDataWriter training;
+    /** Opening book shared by all the games, or null. */
+    @Setter
+    private OpeningBook book;
+    /** Start of the run, in milliseconds. */
+    private long startMillis;
+
+    /**
+     * Creates a runner.
+     *
+     * @param pool         Engines playing the games.
+     * @param thinkingTime Time in milliseconds for the engine to "think" each move.
+     * @param pgnOut       Destination of the finished games.
+     */
+    public SelfPlayRunner(final EnginePool pool, final int thinkingTime, final Writer pgnOut) {
+        this.pool = pool;
+        this.thinkingTime = thinkingTime;
+        this.pgnOut = pgnOut;
+    }
+
+    /**
+     * Plays the games and waits until all of them are finished.
+     *
+     * @param fens        Initial positions in FEN format.
+     * @param gamesPerFen Number of games to play from each position.
+     * @return The number of games played.
+     */
+    public long run(final List<String> fens, final int gamesPerFen) {
+        startMillis = System.currentTimeMillis();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (final String fen : fens) {
+                for (int i = 0; i < gamesPerFen; i++) {
+                    executor.submit(() -> playOne(fen));
+                }
+            }
+        }
+        log.info("{} games played, {} games/hour.", finished.get(), String.format("%.1f", gamesPerHour()));
+        return finished.get();
+    }
+
+    private void playOne(final String fen) {
+        final List<Stockfish> engines;
+        try {
+            engines = ponder ? pool.checkout(2) : List.of(pool.checkout());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            final Game game = new Game(engines.get(0), engines.get(engines.size() - 1), fen, thinkingTime);
+            if (limits != null) {
+                game.setLimits(limits);
+            }
+            game.setEarlyStop(earlyStop);
+            game.setAdjudication(adjudication);
+            game.setPonder(ponder);
+            game.setBook(book);
+            game.setScored(training != null);
+            game.play();
+            write(game);
+        } catch (final RuntimeException e) {
+            log.error("Game from {} failed", fen, e);
+        } finally {
+            engines.forEach(pool::release);
+        }
+    }
+
+    private void write(final Game game) {
+        final long count;
+        synchronized (pgnOut) {
+            try {
+                pgnOut.write(game.toPgn());
+                pgnOut.write('\n');
+                pgnOut.flush();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count = finished.incrementAndGet();
+        }
+        if (archive != null || training != null) {
+            final GameRecord record = game.toRecord(configId);
+            try {
+                if (archive != null) {
+                    archive.append(record);
+                }
+                if (training != null) {
+                    training.append(record);
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (count % REPORT_EVERY == 0 && log.isInfoEnabled()) {
+            log.info("{} games played, {} games/hour.", count, String.format("%.1f", gamesPerHour()));
+        }
+    }
+
+    /**
+     * Throughput of the run so far.
+     *
+     * @return Finished games per hour.
+     */
+    public double gamesPerHour() {
+        final long elapsed = Math.max(1, System.currentTimeMillis() - startMillis);
+        return finished.get() * HOUR / elapsed;
+    }
+
+    /**
+     * Plays self-play games from a file of initial positions.
+     *
+     * @param args The FEN file (one position per line), the PGN output file and optionally the number of games per
+     *             position.
+     * @throws IOException If an I/O error occurs reading or writing the files.
+     */
+    public static void main(final String... args) throws IOException {
+        if (args.length < 2) {
+            log.error("Usage: SelfPlayRunner <fen file> <pgn file> [games per fen]");
+            return;
+        }
+        final Properties properties = new Properties();
+        try (InputStream config = Files.newInputStream(Paths.get(StockfishMain.CONFIG_FILE))) {
+            properties.load(config);
+        }
+        final List<String> fens = Files.readAllLines(Path.of(args[0])).stream().map(String::trim)
+            .filter(line -> !line.isEmpty()).toList();
+        final int gamesPerFen = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        final int thinkingTime = Integer.parseInt(properties.getProperty("thinking.time", "1000"));
+
+        try (Metrics.Reporter metrics = Metrics.fromProperties(properties);
+                EnginePool pool = EnginePool.fromProperties(properties);
+                EngineSupervisor supervisor = EngineSupervisor.fromProperties(pool, properties);
+                OpeningBook book = OpeningBook.fromProperties(properties);
+                TrainingDataWriter training = TrainingDataWriter.fromProperties(properties);
+                BufferedWriter pgn = Files.newBufferedWriter(Path.of(args[1]), StandardCharsets.UTF_8)) {
+            final SelfPlayRunner runner = new SelfPlayRunner(pool, thinkingTime, pgn);
+            final SearchLimits limits = StockfishConfig.readLimits(properties, thinkingTime);
+            runner.setLimits(limits);
+            runner.setEarlyStop(EarlyStop.fromProperties(properties));
+            runner.setAdjudication(Adjudicator.Rules.fromProperties(properties));
+            runner.setPonder(Boolean.parseBoolean(properties.getProperty("self.play.ponder")));
+            runner.setBook(book);
+            runner.setTraining(training);
+            final String archive = properties.getProperty("games.archive", "").trim();
+            if (archive.isEmpty()) {
+                runner.run(fens, gamesPerFen);
+            } else {
+                try (GameArchiveWriter writer = new GameArchiveWriter(Path.of(archive))) {
+                    runner.setArchive(writer);
+                    // Same engine and limits, same id
+                    runner.setConfigId((pool.getEngineInfo().name() + ' ' + limits.toGoCommand()).hashCode());
+                    runner.run(fens, gamesPerFen);
+                }
+            }
+        }
+    }
+
+}
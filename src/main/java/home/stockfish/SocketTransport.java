@@ -0,0 +1,88 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A UCI engine on another machine, reached over TCP through an {@link EngineHost} agent. The agent starts one engine
+ * per connection and kills it when the connection closes.
+ */
+@Slf4j
+public final class SocketTransport implements EngineTransport {
+    private final String address;
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+
+    /**
+     * Connects to an agent.
+     *
+     * @param address       The agent address, as "host:port".
+     * @param timeoutMillis Time allowed to connect.
+     * @throws IOException If the agent cannot be reached.
+     */
+    public SocketTransport(final String address, final int timeoutMillis) throws IOException {
+        final int colon = address.lastIndexOf(':');
+        if (colon < 1) {
+            throw new IllegalArgumentException("Dirección no válida, se espera host:puerto: " + address);
+        }
+        final InetSocketAddress agent;
+        try {
+            agent = new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException("Dirección no válida, se espera host:puerto: " + address, e);
+        }
+        this.address = address;
+        socket = new Socket();
+        try {
+            socket.connect(agent, timeoutMillis);
+            // UCI commands are short lines answered one by one: don't let Nagle delay them
+            socket.setTcpNoDelay(true);
+            input = socket.getInputStream();
+            output = socket.getOutputStream();
+        } catch (final IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream input() {
+        return input;
+    }
+
+    @Override
+    public OutputStream output() {
+        return output;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !socket.isClosed();
+    }
+
+    @Override
+    public void kill() {
+        close();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (final IOException e) {
+            log.debug("Error closing the connection to {}: {}", address, e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "tcp://" + address;
+    }
+
+}
@@ -1,21 +1,94 @@
 package home.stockfish;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
-/** Class to interact with the Stockfish chess engine. Allows starting the engine, sending commands, and reading output. */
+/**
+ * Class to interact with the Stockfish chess engine. Allows starting the engine, sending commands, and reading output.
+ * <p>
+ * The engine output is consumed by a dedicated virtual thread, so a silent engine can never block a caller past its
+ * deadline. Callers wait for a marker line ({@code uciok}, {@code readyok}, {@code bestmove}, {@code Fen:}...)
+ * either synchronously through {@link #readOutput(String, int)} or asynchronously through
+ * {@link #expect(String, long)}. Expectations are served in the order they were registered; lines that arrive while
+ * nobody is waiting are kept until the next expectation claims them.
+ * <p>
+ * The output is read as bytes by a {@link UciParser}. While a {@link #search(SearchLimits, UciListener, int)} is
+ * running, its 'info' and 'bestmove' lines are parsed straight from the bytes and never become strings; 'info' lines
+ * the caller did not subscribe to are skipped after looking at their first two tokens.
+ */
 @Slf4j
 //@SuppressWarnings("PMD.CommentRequired")
 public class Stockfish implements AutoCloseable { // NOPMD AtLeastOneConstructor
     private static final String UCI_OK = "uciok";
-    private Process process;
-    private BufferedReader processReader;
+    private static final String READY_OK = "readyok";
+    /** Upper bound of unclaimed lines kept in memory (e.g. info lines nobody waits for). */
+    private static final int MAX_UNCLAIMED = 10_000;
+    /** Time allowed for the whole handshake. */
+    private static final int HANDSHAKE_TIMEOUT = 5_000;
+    /** Time allowed for 'bestmove' after sending 'stop'. */
+    private static final int STOP_TIMEOUT = 5_000;
+    /** Histogram of the time from a command to the line answering it. */
+    private static final String ROUNDTRIP = "uci_roundtrip_microseconds";
+    /** Counter of the answers that did not come in time. */
+    private static final String TIMEOUTS = "timeouts_total";
+    /** Histogram of the client time spent per ply, by phase. */
+    /* default */ static final String OVERHEAD = "ply_overhead_nanoseconds";
+    private static final String HANDSHAKE = "command=\"uci\"";
+    private static final String ISREADY = "command=\"isready\"";
+    private static final String GO = "command=\"go\"";
+    private static final String PONDER = "command=\"ponder\"";
+    private static final String PERFT = "command=\"perft\"";
+    private static final String OTHER = "command=\"other\"";
+    private static final String PARSE = "phase=\"parse\"";
+    /** Nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    /** Nanoseconds in a microsecond. */
+    private static final long NANOS_PER_MICRO = 1_000L;
+    /** The link to the engine, null if the client was connected to bare streams. */
+    private EngineTransport transport;
+    private InputStream processOutput;
     private BufferedWriter processWriter;
+    private Thread readerThread;
+    /** Guards {@link #expectations}, {@link #unclaimed} and {@link #closed}. */
+    private final Object lock = new Object();
+    /** Pending expectations, only the head one collects lines. */
+    private final Deque<Expectation> expectations = new ArrayDeque<>();
+    /** Lines read while no expectation was pending. */
+    private final Deque<String> unclaimed = new ArrayDeque<>();
+    /** True once the engine output reached end of stream. */
+    private boolean closed;
+    /** Parses the engine output, used only by the reader thread. */
+    private final UciParser parser = new UciParser();
+    /** The running search, if any. */
+    private volatile Search search;
+    /** Last time, from {@link System#nanoTime()}, the engine wrote a line or a search started. */
+    private volatile long lastActivity = System.nanoTime();
+    /** Smoothed 'isready' round trip in microseconds, 0 until measured: the latency of the link and the engine. */
+    @Getter
+    private volatile long latencyMicros;
+    /** Smoothed speed of the searches in nodes per second, 0 until measured. */
+    @Getter
+    private volatile long nps;
+    /** What the engine told about itself in the handshake, null before it. */
+    @Getter
+    private EngineInfo engineInfo;
 
     /**
      * Starts the Stockfish engine.
@@ -24,27 +97,30 @@ public class Stockfish implements AutoCloseable { // NOPMD AtLeastOneConstructor
      * @return true if the engine started successfully, false otherwise.
      */
     public boolean startEngine(final String path) {
+        return startEngine(List.of(path), Map.of());
+    }
+
+    /**
+     * Starts a UCI engine with a command line (executable and arguments).
+     *
+     * @param command The command line.
+     * @return true if the engine started successfully, false otherwise.
+     */
+    public boolean startEngine(final List<String> command) {
+        return startEngine(command, Map.of());
+    }
+
+    /**
+     * Starts a UCI engine and sets its options, all in a single round-trip (see {@link #handshake()}).
+     *
+     * @param command The command line.
+     * @param options The UCI options to set, in order (e.g. "Threads" before "Hash").
+     * @return true if the engine started successfully, false otherwise.
+     */
+    public boolean startEngine(final List<String> command, final Map<String, ?> options) {
         boolean status = false;
         try {
-            final boolean isUciOk;
-            final ProcessBuilder builder = new ProcessBuilder(path);
-            builder.redirectErrorStream(true);
-            process = builder.start();
-
-            processReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            processWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
-
-            // Verify if the engine responds correctly
-            sendCommand("uci");
-            final String response = readOutput(UCI_OK, 5000);
-            if (response.contains(UCI_OK)) {
-                log.debug("Stockfish engine started successfully.");
-                isUciOk = true;
-            } else {
-                log.error("Error starting Stockfish engine: did not receive 'uciok'.");
-                isUciOk = false;
-            }
-            status = isUciOk;
+            status = startEngine(new ProcessTransport(command), options);
         } catch (final IOException e) {
             log.error("Error starting Stockfish engine", e);
         }
@@ -52,46 +128,452 @@ public class Stockfish implements AutoCloseable { // NOPMD AtLeastOneConstructor
     }
 
     /**
-     * Sends a command to the Stockfish engine.
+     * Starts talking to a UCI engine over a transport, local process or remote socket, and sets its options as
+     * {@link #startEngine(List, Map)} does.
+     *
+     * @param link    The transport, already open.
+     * @param options The UCI options to set, in order.
+     * @return true if the engine answered the handshake, false otherwise.
+     */
+    public boolean startEngine(final EngineTransport link, final Map<String, ?> options) {
+        transport = link;
+        connect(link.input(), link.output());
+        return handshake(link.cacheKey(), options);
+    }
+
+    /**
+     * Sends 'uci' and 'isready' together and waits for 'readyok', checking that 'uciok' came before it.
+     *
+     * @return true if the engine answered in time.
+     */
+    /* default */ boolean handshake() {
+        return handshake(null, Map.of());
+    }
+
+    /**
+     * Pipelined handshake: 'uci', the 'setoption' commands and 'isready' are written at once and only 'readyok' is
+     * awaited. The engine information is parsed from the output, unless it is already cached for the binary; in that
+     * case options the engine does not have are left out.
+     */
+    private boolean handshake(final String binaryKey, final Map<String, ?> options) {
+        final EngineInfo known = EngineInfo.cached(binaryKey);
+        final StringBuilder commands = new StringBuilder("uci\n");
+        for (final Map.Entry<String, ?> option : options.entrySet()) {
+            if (known == null || known.hasOption(option.getKey())) {
+                commands.append("setoption name ").append(option.getKey()).append(" value ")
+                    .append(option.getValue()).append('\n');
+            } else {
+                log.warn("The engine has no option '{}', not set.", option.getKey());
+            }
+        }
+        sendCommand(commands.append("isready"));
+        final String response = readOutput(READY_OK, HANDSHAKE_TIMEOUT, HANDSHAKE);
+        final boolean isUciOk = response.contains(UCI_OK) && response.contains(READY_OK);
+        if (isUciOk) {
+            engineInfo = known == null ? EngineInfo.parse(response) : known;
+            EngineInfo.cache(binaryKey, engineInfo);
+            log.debug("Stockfish engine started successfully: {}", engineInfo.name());
+        } else {
+            log.error("Error starting Stockfish engine: did not receive 'uciok'.");
+        }
+        return isUciOk;
+    }
+
+    /**
+     * Attaches the client to the engine streams and starts the output reader.
+     *
+     * @param engineOutput The stream the engine writes to (its stdout).
+     * @param engineInput  The stream the engine reads from (its stdin).
+     */
+    /* default */ void connect(final InputStream engineOutput, final OutputStream engineInput) {
+        processOutput = engineOutput;
+        processWriter = new BufferedWriter(new OutputStreamWriter(engineInput));
+        readerThread = Thread.ofVirtual().name("stockfish-reader").start(() -> readLoop(engineOutput));
+    }
+
+    /**
+     * Sends a command to the Stockfish engine. Safe to call from any thread.
      *
      * @param command The command to send.
      */
-    public void sendCommand(final String command) {
-        try {
-            processWriter.write(command + "\n");
-            processWriter.flush();
-        } catch (final IOException e) {
-            log.error("Error sending command to Stockfish engine", e);
+    public void sendCommand(final CharSequence command) {
+        // The reader thread may send 'stop' while a caller writes
+        synchronized (processWriter) {
+            try {
+                processWriter.append(command).append('\n');
+                processWriter.flush();
+            } catch (final IOException e) {
+                log.error("Error sending command to Stockfish engine", e);
+            }
+        }
+    }
+
+    /**
+     * Sets a UCI option of the engine.
+     *
+     * @param name  The option name (e.g. "Threads").
+     * @param value The option value.
+     */
+    public void setOption(final String name, final Object value) {
+        if (engineInfo == null || engineInfo.hasOption(name)) {
+            sendCommand("setoption name " + name + " value " + value);
+        } else {
+            log.warn("The engine has no option '{}', not set.", name);
         }
     }
 
+    /**
+     * Synchronizes with the engine through 'isready'.
+     *
+     * @param timeoutMillis The timeout in milliseconds.
+     * @return true if the engine answered 'readyok' in time.
+     */
+    public boolean isReady(final int timeoutMillis) {
+        final long start = System.nanoTime();
+        sendCommand("isready");
+        final boolean ready = readOutput(READY_OK, timeoutMillis, ISREADY).contains(READY_OK);
+        if (ready) {
+            latencyMicros = smooth(latencyMicros, (System.nanoTime() - start) / NANOS_PER_MICRO);
+        }
+        return ready;
+    }
+
+    /** Exponential moving average giving a quarter of the weight to the new sample; the sample alone at first. */
+    private static long smooth(final long average, final long sample) {
+        return average == 0 ? sample : (average * 3 + sample) / 4;
+    }
+
     /**
      * Reads the output from the Stockfish engine until a specific expected string
-     * is found or a timeout occurs.
+     * is found or a timeout occurs. The timeout is enforced even if the engine
+     * does not write anything at all.
      *
      * @param expected      The expected string to look for in the output.
      * @param timeoutMillis The timeout in milliseconds.
-     * @return The output read from the engine.
+     * @return The output read from the engine (partial if the timeout was reached).
      */
     public String readOutput(final String expected, final int timeoutMillis) {
-        final StringBuilder output = new StringBuilder();
-        final long startTime = System.currentTimeMillis();
+        final String command;
+        if (READY_OK.equals(expected)) {
+            command = ISREADY;
+        } else if ("bestmove".equals(expected)) {
+            command = GO;
+        } else if ("Nodes searched".equals(expected)) {
+            command = PERFT;
+        } else {
+            command = OTHER;
+        }
+        return readOutput(expected, timeoutMillis, command);
+    }
+
+    /** Reads the output up to the marker, timing the round trip of the command if metrics are on. */
+    private String readOutput(final String expected, final int timeoutMillis, final String command) {
+        final long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+        final Expectation expectation = register(expected);
+        String output;
         try {
-            String line;
-            while ((line = processReader.readLine()) != null) { // NOPMD AssignmentInOperand NOSONAR java:S135
-                output.append(line).append('\n');
-                if (line.contains(expected)) {
-                    break;
-                }
-                if (System.currentTimeMillis() - startTime > timeoutMillis) {
-                    log.warn("Timeout reached while reading engine output.");
-                    break;
+            output = expectation.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (start != 0) {
+                Metrics.recordSince(ROUNDTRIP, command, start);
+            }
+        } catch (final TimeoutException e) {
+            Metrics.increment(TIMEOUTS, "where=\"read\"");
+            log.warn("Timeout reached while reading engine output.");
+            output = abandon(expectation);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            output = abandon(expectation);
+        } catch (final ExecutionException e) {
+            log.error("Error al leer la salida del motor.", e.getCause());
+            output = abandon(expectation);
+        }
+        return output;
+    }
+
+    /**
+     * Waits asynchronously for a line containing the given marker.
+     *
+     * @param expected      The expected string to look for in the output.
+     * @param timeoutMillis Hard deadline in milliseconds.
+     * @return Future completed with the output up to and including the marker line, or completed exceptionally with
+     *         a {@link TimeoutException} when the deadline passes (or an {@link EOFException} if the engine exits).
+     */
+    public CompletableFuture<String> expect(final String expected, final long timeoutMillis) {
+        final Expectation expectation = register(expected);
+        expectation.future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((output, error) -> {
+            if (error != null) {
+                if (error instanceof TimeoutException) {
+                    Metrics.increment(TIMEOUTS, "where=\"expect\"");
                 }
+                abandon(expectation);
+            }
+        });
+        return expectation.future;
+    }
+
+    /**
+     * Starts a search on the position already sent. The 'info' and 'bestmove' lines of the search are parsed without
+     * creating strings and handed to the listener on the reader thread.
+     *
+     * @param limits        The search limits.
+     * @param listener      Receives the parsed lines, or null.
+     * @param subscriptions The lines the listener wants, {@link UciParser#INFO} and/or {@link UciParser#BESTMOVE}.
+     *                      The result only has depth, score and principal variation if {@link UciParser#INFO} is
+     *                      subscribed.
+     * @return Future completed with the result when 'bestmove' arrives (or with an {@link EOFException} if the engine
+     *         exits). It has no deadline, see {@link #awaitSearch(CompletableFuture, long)}.
+     */
+    public CompletableFuture<AnalysisResult> search(final SearchLimits limits, final UciListener listener,
+            final int subscriptions) {
+        return start(limits.toGoCommand(), listener, subscriptions, limits.movetime());
+    }
+
+    /**
+     * Starts a search on the position already sent and publishes its progress, see {@link AnalysisPublisher}.
+     *
+     * @param limits The search limits.
+     * @return The publisher of the updates, also holding the result of the search.
+     */
+    public AnalysisPublisher publish(final SearchLimits limits) {
+        final AnalysisPublisher publisher = new AnalysisPublisher();
+        publisher.attach(search(limits, publisher, UciParser.INFO));
+        return publisher;
+    }
+
+    /**
+     * Starts pondering on the position already sent, which must include the expected reply. The search runs until
+     * {@link #ponderHit()} turns it into a normal search, or 'stop' ends it.
+     *
+     * @param limits        The limits of the search after 'ponderhit'.
+     * @param listener      Receives the parsed lines, or null.
+     * @param subscriptions The lines the listener wants, as in {@link #search(SearchLimits, UciListener, int)}.
+     * @return Future completed with the result when 'bestmove' arrives.
+     */
+    public CompletableFuture<AnalysisResult> ponder(final SearchLimits limits, final UciListener listener,
+            final int subscriptions) {
+        return start("go ponder" + limits.toGoCommand().substring(2), listener, subscriptions, -1);
+    }
+
+    /** Tells a pondering engine that the expected reply was played: the search goes on as a normal one. */
+    public void ponderHit() {
+        sendCommand("ponderhit");
+    }
+
+    /** Starts a search; {@code movetime} is 0 if not set and -1 for pondering, which has no fixed length. */
+    private CompletableFuture<AnalysisResult> start(final String goCommand, final UciListener listener,
+            final int subscriptions, final int movetime) {
+        final Search started = new Search(listener, subscriptions, movetime);
+        synchronized (lock) {
+            if (closed) {
+                started.future.completeExceptionally(new EOFException("Engine output closed"));
+            } else {
+                search = started;
+                lastActivity = System.nanoTime();
+            }
+        }
+        if (!started.future.isDone()) {
+            sendCommand(goCommand);
+        }
+        return started.future;
+    }
+
+    /**
+     * Waits for a search, sending 'stop' if it does not end in time.
+     *
+     * @param running       The future returned by {@link #search(SearchLimits, UciListener, int)}.
+     * @param timeoutMillis The time allowed before sending 'stop'.
+     * @return The result of the search.
+     * @throws IllegalStateException If the engine does not answer 'bestmove' even after 'stop'.
+     */
+    public AnalysisResult awaitSearch(final CompletableFuture<AnalysisResult> running, final long timeoutMillis) {
+        try {
+            try {
+                return running.get(timeoutMillis, TimeUnit.MILLISECONDS); // NOPMD OnlyOneReturn
+            } catch (final TimeoutException e) {
+                Metrics.increment(TIMEOUTS, "where=\"search\"");
+                log.warn("Timeout reached while searching, sending 'stop'.");
+                sendCommand("stop");
+                return running.get(STOP_TIMEOUT, TimeUnit.MILLISECONDS); // NOPMD OnlyOneReturn
+            }
+        } catch (final TimeoutException | ExecutionException e) {
+            throw new IllegalStateException("The engine did not answer 'bestmove'", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching", e);
+        }
+    }
+
+    /**
+     * Stops the running search, if any, and waits for its 'bestmove', which would otherwise end the next search.
+     *
+     * @param timeoutMillis The time allowed for the 'bestmove'.
+     * @return true if no search is running any longer.
+     */
+    public boolean stopSearch(final long timeoutMillis) {
+        final Search running = search;
+        boolean stopped = true;
+        if (running != null) {
+            sendCommand("stop");
+            try {
+                // A search that failed (the engine output closed) is over too
+                running.future.exceptionally(e -> null).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException | ExecutionException e) {
+                stopped = false;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = false;
+            }
+        }
+        return stopped;
+    }
+
+    private Expectation register(final String expected) {
+        final Expectation expectation = new Expectation(expected);
+        synchronized (lock) {
+            expectations.addLast(expectation);
+            // Give the new expectation the lines that arrived while nobody was waiting
+            while (expectations.peekFirst() == expectation && !unclaimed.isEmpty()) {
+                offer(unclaimed.pollFirst());
+            }
+            if (closed && !expectation.future.isDone()) {
+                expectations.remove(expectation);
+                expectation.future.completeExceptionally(new EOFException("Engine output closed"));
+            }
+        }
+        return expectation;
+    }
+
+    /** Drops an expectation that will not be awaited anymore, returning what it collected so far. */
+    private String abandon(final Expectation expectation) {
+        synchronized (lock) {
+            expectations.remove(expectation);
+            return expectation.output.toString();
+        }
+    }
+
+    /** Hands a line to the head expectation. Must be called holding {@link #lock}. */
+    private void offer(final String line) {
+        final Expectation head = expectations.peekFirst();
+        if (head == null) {
+            if (unclaimed.size() == MAX_UNCLAIMED) {
+                unclaimed.pollFirst();
+            }
+            unclaimed.addLast(line);
+        } else {
+            head.output.append(line).append('\n');
+            if (line.contains(head.expected)) {
+                expectations.pollFirst();
+                head.future.complete(head.output.toString());
             }
+        }
+    }
+
+    private void readLoop(final InputStream engineOutput) {
+        try {
+            parser.pump(engineOutput, this::onLine);
         } catch (final IOException e) {
-            log.error("Error al leer la salida del motor.", e);
+            log.debug("Engine output stream closed: {}", e.getMessage());
+        } finally {
+            fail("Engine output closed");
+        }
+    }
+
+    /** Marks the output as closed, failing whoever waits for it. */
+    private void fail(final String reason) {
+        synchronized (lock) {
+            closed = true;
+            for (final Expectation pending : expectations) {
+                pending.future.completeExceptionally(new EOFException(reason));
+            }
+            expectations.clear();
+            if (search != null) {
+                search.future.completeExceptionally(new EOFException(reason));
+                search = null;
+            }
+        }
+    }
+
+    /**
+     * Tells if the engine can still answer: its process is running and its output is open.
+     *
+     * @return true if alive.
+     */
+    public boolean isAlive() {
+        synchronized (lock) {
+            return !closed && (transport == null || transport.isAlive());
+        }
+    }
+
+    /**
+     * Tells if a search is running.
+     *
+     * @return true between the 'go' command and its 'bestmove'.
+     */
+    public boolean isSearching() {
+        return search != null;
+    }
+
+    /**
+     * Time since the engine last wrote a line, or since the running search started if that is later.
+     *
+     * @return The time in milliseconds.
+     */
+    public long silentMillis() {
+        return (System.nanoTime() - lastActivity) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * The engine process, to read its resource usage.
+     *
+     * @return The process handle, empty if the engine is not a local process.
+     */
+    public Optional<ProcessHandle> processHandle() {
+        return transport == null ? Optional.empty() : transport.processHandle();
+    }
+
+    /**
+     * Kills an engine that does not answer or uses too much: the process is destroyed (or the connection to a remote
+     * engine cut) at once, and the running search and every pending read fail with an {@link EOFException} instead
+     * of waiting for their timeouts.
+     */
+    public void kill() {
+        if (transport != null) {
+            transport.kill();
+        }
+        fail("Engine killed");
+    }
+
+    /** Routes a line of the engine output: to the running search as parsed fields, otherwise as text. */
+    private void onLine(final byte[] bytes, final int offset, final int length) {
+        lastActivity = System.nanoTime();
+        final Search running = search;
+        final int kind = running == null ? UciParser.OTHER : parser.kind(bytes, offset, length);
+        if (kind == UciParser.INFO) {
+            if ((running.subscriptions & UciParser.INFO) != 0) {
+                final long start = running.timed ? System.nanoTime() : 0;
+                final InfoFields info = parser.parseInfo(bytes, offset, length);
+                if (running.timed) {
+                    running.parseNanos += System.nanoTime() - start;
+                }
+                running.onInfo(info);
+            }
+        } else if (kind == UciParser.BESTMOVE) {
+            final long start = running.timed ? System.nanoTime() : 0;
+            parser.parseBestMove(bytes, offset, length);
+            if (running.timed) {
+                running.parseNanos += System.nanoTime() - start;
+            }
+            search = null;
+            if (running.nps > 0) {
+                nps = smooth(nps, running.nps);
+            }
+            running.finish(parser.bestMove(), parser.ponderMove());
+        } else {
+            final String line = UciParser.toString(bytes, offset, length);
+            synchronized (lock) {
+                offer(line);
+            }
         }
-        return output.toString();
     }
 
     public void stopEngine() {
@@ -99,15 +581,20 @@ public class Stockfish implements AutoCloseable { // NOPMD AtLeastOneConstructor
             if (processWriter != null) {
                 processWriter.close();
             }
-            if (processReader != null) {
-                processReader.close();
+            if (transport != null) {
+                transport.close();
             }
-            if (process != null) {
-                process.destroy();
+            if (readerThread != null) {
+                readerThread.join(1_000);
+            }
+            if (processOutput != null) {
+                processOutput.close();
             }
             log.info("Stockfish engine stopped successfully.");
         } catch (final IOException e) {
             log.error("Error while stopping Stockfish engine", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -116,4 +603,88 @@ public class Stockfish implements AutoCloseable { // NOPMD AtLeastOneConstructor
         stopEngine();
     }
 
-}
\ No newline at end of file
+    /** A caller waiting for a marker line. */
+    private static final class Expectation {
+        private final String expected;
+        private final StringBuilder output = new StringBuilder();
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private Expectation(final String expected) {
+            this.expected = expected;
+        }
+    }
+
+    /** A running search and the data of its last first-line principal variation. */
+    private static final class Search {
+        private final UciListener listener;
+        private final int subscriptions;
+        /** Requested movetime, 0 if none, -1 for pondering. */
+        private final int movetime;
+        /** True if metrics were on when the search started. */
+        private final boolean timed = Metrics.isEnabled();
+        private final long startNanos = timed ? System.nanoTime() : 0;
+        /** Time spent parsing the lines of the search, only counted if {@link #timed}. */
+        private long parseNanos;
+        private long nps;
+        private final CompletableFuture<AnalysisResult> future = new CompletableFuture<>();
+        private final int[] pv = new int[InfoFields.MAX_PV];
+        private int pvLength;
+        private int depth;
+        private int score;
+        private boolean mate;
+        private long nodes;
+
+        private Search(final UciListener listener, final int subscriptions, final int movetime) {
+            this.listener = listener;
+            this.subscriptions = subscriptions;
+            this.movetime = movetime;
+        }
+
+        private void onInfo(final InfoFields info) {
+            if (info.hasScore && info.multipv == 1) {
+                depth = info.depth;
+                score = info.score;
+                mate = info.mate;
+                nodes = info.nodes;
+                nps = info.nps;
+                pvLength = info.pvLength;
+                System.arraycopy(info.pv, 0, pv, 0, pvLength);
+            }
+            if (listener != null) {
+                listener.onInfo(info);
+            }
+        }
+
+        private void finish(final int bestMove, final int ponder) {
+            if (timed) {
+                record();
+            }
+            if (listener != null && (subscriptions & UciParser.BESTMOVE) != 0) {
+                listener.onBestMove(bestMove, ponder);
+            }
+            final List<String> line = new ArrayList<>(pvLength);
+            for (int i = 0; i < pvLength; i++) {
+                line.add(MoveCodec.toLan(pv[i]));
+            }
+            future.complete(new AnalysisResult(MoveCodec.toLan(bestMove),
+                ponder == MoveCodec.NONE ? null : MoveCodec.toLan(ponder), depth, score, mate, nodes,
+                List.copyOf(line)));
+        }
+
+        /** Records the round trip, the overshoot over the movetime, the engine speed and the parsing time. */
+        private void record() {
+            final long elapsed = System.nanoTime() - startNanos;
+            Metrics.recordSince(ROUNDTRIP, movetime < 0 ? PONDER : GO, startNanos);
+            if (movetime > 0) {
+                Metrics.record("search_overshoot_milliseconds", "",
+                    Math.max(0, elapsed / NANOS_PER_MILLI - movetime));
+            }
+            if (nodes > 0) {
+                Metrics.record("engine_nodes", "", nodes);
+                Metrics.record("engine_nps", "", nps);
+            }
+            Metrics.record(OVERHEAD, PARSE, parseNanos);
+        }
+    }
+
+}
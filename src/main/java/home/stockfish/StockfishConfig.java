@@ -4,6 +4,8 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 
 import java.util.Properties;
 
+import com.github.bhlangonijr.chesslib.Board;
+
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -22,6 +24,27 @@ public /*final*/ class StockfishConfig {
     /** Think time parameter. */
     @Getter
     private int thinkingTime;
+    /** True to check the local board against the engine's one on every ply. */
+    @Getter
+    private boolean verifyBoard;
+    /** Moves after which the 'position' command is re-rooted, 0 for never. */
+    @Getter
+    private int rerootPlies;
+    /** Search limits of every move. */
+    @Getter
+    private SearchLimits limits;
+    /** Ends searches early when the move is clear, or null. */
+    @Getter
+    private EarlyStop earlyStop;
+    /** Ends the game early from the engine scores, or null. */
+    @Getter
+    private Adjudicator.Rules adjudication;
+    /** True to play with one engine per side, each pondering on the expected reply. */
+    @Getter
+    private boolean ponder;
+    /** Path to the engine executable. */
+    @Getter
+    private String stockfishPath;
     /** Default Initial FEN string for the test. */
     private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
 
@@ -37,20 +60,25 @@ public /*final*/ class StockfishConfig {
      * @return The initial FEN string for the game.
      */
     public String setup(final Properties properties) {
-        final String stockfishPath = properties.getProperty("stockfish.path");
+        stockfishPath = properties.getProperty("stockfish.path");
+        ponder = Boolean.parseBoolean(properties.getProperty("self.play.ponder"));
         thinkingTime = setupTime(properties);
+        verifyBoard = Boolean.parseBoolean(properties.getProperty("verify.board"));
+        rerootPlies = Integer.parseInt(properties.getProperty("position.reroot", "0"));
+        limits = readLimits(properties, thinkingTime);
+        earlyStop = EarlyStop.fromProperties(properties);
+        adjudication = Adjudicator.Rules.fromProperties(properties);
         validateStockfishStart(stockfishPath);
-        client.sendCommand("uci");
         if (log.isTraceEnabled()) {
-            log.trace("Salida inicial del motor: {}", client.readOutput("uciok", 5000));
+            log.trace("Engine: {}", client.getEngineInfo());
         }
 
         String fen = getInitialFen(properties);
-        client.sendCommand("position fen " + fen);
-        printAllPossibleMoves();
+        if (Boolean.parseBoolean(properties.getProperty("startup.dump"))) {
+            printAllPossibleMoves(fen);
+        }
         if (log.isInfoEnabled()) {
             log.info("Starting game from position FEN: {}", fen);
-            log.info("Initial FEN: {}", StockfishMain.getFen());
         }
         fen = fen + " moves ";
         isBlackTurn = "b".equals(fen.split(" ")[1]);
@@ -72,17 +100,49 @@ public /*final*/ class StockfishConfig {
         return thinkingTime;
     }
 
+    /**
+     * Reads the search limits: 'time.control' ("base+increment" in milliseconds, e.g. "60000+600"), else
+     * 'search.depth', else 'search.nodes', else the thinking time as movetime.
+     *
+     * @param properties   The configuration.
+     * @param thinkingTime The thinking time in milliseconds.
+     * @return The search limits.
+     */
+    /* default */ static SearchLimits readLimits(final Properties properties, final int thinkingTime) {
+        final String timeControl = properties.getProperty("time.control", "").trim();
+        final int depth = Integer.parseInt(properties.getProperty("search.depth", "0"));
+        final long nodes = Long.parseLong(properties.getProperty("search.nodes", "0"));
+        final SearchLimits limits;
+        if (!timeControl.isEmpty()) {
+            final String[] parts = timeControl.split("\\+");
+            final int base = Integer.parseInt(parts[0].trim());
+            final int increment = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 0;
+            limits = SearchLimits.clock(base, base, increment, increment, 0);
+        } else if (depth > 0) {
+            limits = SearchLimits.depth(depth);
+        } else if (nodes > 0) {
+            limits = SearchLimits.nodes(nodes);
+        } else {
+            limits = SearchLimits.movetime(thinkingTime);
+        }
+        return limits;
+    }
+
+    /**
+     * Starts the engine.
+     *
+     * @throws IllegalStateException If the path is not configured or the engine does not start; the caller decides
+     *                               whether to stop, instead of the whole JVM exiting here.
+     */
     private void validateStockfishStart(final String stockfishPath) {
         // Check if the path is null or empty
         if (isBlank(stockfishPath)) {
-            log.error("Path to the Stockfish executable is not configured.");
-            System.exit(1); // NOPMD DoNotTerminateVM
+            throw new IllegalStateException("Path to the Stockfish executable is not configured");
         }
 
         // Start the engine with the path to the Stockfish executable
         if (!client.startEngine(stockfishPath)) {
-            log.error("Can't start the engine, exit");
-            System.exit(1); // NOPMD DoNotTerminateVM
+            throw new IllegalStateException("Can't start the engine: " + stockfishPath);
         }
     }
 
@@ -99,11 +159,14 @@ public /*final*/ class StockfishConfig {
         return fen;
     }
 
-    /** Prints all possible movements from the current position. */
-    private void printAllPossibleMoves() {
-        StockfishMain.print(client);
+    /** Prints the board and all possible movements from the initial position (opt-in, 'startup.dump'). */
+    private void printAllPossibleMoves(final String fen) {
+        final Board board = new Board();
+        board.loadFromFen(fen);
+        StockfishMain.print(board);
 
         // Get all possible moves using the 'go perft' command
+        client.sendCommand("position fen " + fen);
         client.sendCommand("go perft 1");
         final String possibleMoves = client.readOutput("Nodes searched", 20_000);
         if (log.isDebugEnabled()) {
@@ -0,0 +1,352 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Square;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Turns finished games into training records for an evaluation network: a sample of the positions of every game,
+ * each one with the engine score, the move played and the game result. Positions in check, positions whose best
+ * move captures or promotes (the score depends on a pending exchange) and positions with extreme scores are left
+ * out, and so are positions already written, remembered in a {@link PositionFilter}.
+ * <p>
+ * Records are 40 bytes, little-endian:
+ * <ul>
+ * <li>0: the occupied squares, a 64-bit board (a1 = bit 0);</li>
+ * <li>8: the piece on every occupied square in order, 4 bits each, the low half of a byte first (1-6 White's pawn,
+ * knight, bishop, rook, queen and king, 7-12 Black's);</li>
+ * <li>24: flags, bit 0 Black to move and bits 1-4 the castling rights KQkq;</li>
+ * <li>25: the en passant square, 64 if none;</li>
+ * <li>26: the half-move clock (at most 255), 27: reserved;</li>
+ * <li>28: the full move number, 16 bits;</li>
+ * <li>30: the score in centipawns from the view of the side to move, 16 bits;</li>
+ * <li>32: the move played ({@link MoveCodec}), 16 bits;</li>
+ * <li>34: the ply of the game, 16 bits;</li>
+ * <li>36: the result from the view of the side to move, 1 win, 0 draw, -1 loss; 37-39: reserved.</li>
+ * </ul>
+ * Records go through a direct buffer to the current file, and a new file is started every so many records
+ * ({@code <name>-0000.<ext>}, {@code <name>-0001.<ext>}...), never overwriting existing ones. Appends from many
+ * threads are serialized; memory stays the same whatever the number of games.
+ */
+@Slf4j
+public final class TrainingDataWriter implements AutoCloseable {
+    /** Size of a record. */
+    /* default */ static final int RECORD = 40;
+    /** En passant square of positions without one. */
+    /* default */ static final int NO_EN_PASSANT = 64;
+    /** Records buffered before writing to the file. */
+    private static final int BATCH = 4096;
+    /** Pieces in the order of their codes, from 1. */
+    private static final String PIECES = "PNBRQKpnbrqk";
+    private static final String CASTLING = "KQkq";
+    private static final Square[] SQUARES = Square.values();
+    private static final int SQUARES_PER_BOARD = 64;
+    private static final int MAX_CLOCK = 255;
+    private final Path file;
+    private final Settings settings;
+    private final PositionFilter seen;
+    /** Guards the current file and its record count, the batch buffer and the filter of positions already written. */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD * BATCH).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel channel;
+    /** Number of the current file. */
+    private int part;
+    /** Records in the current file. */
+    private long partRecords;
+    private long written;
+    private long duplicates;
+    private long filtered;
+
+    /**
+     * Which positions are written and how.
+     *
+     * @param minPly            Positions before this ply of the game are left out (opening book).
+     * @param maxScore          Positions with a larger score, in centipawns, are left out; mates always are.
+     * @param sampleRate        Fraction of the remaining positions written, chosen at random.
+     * @param rotateRecords     Records per file, 0 to write a single file.
+     * @param dedupPositions    Distinct positions the filter is sized for.
+     * @param falsePositiveRate Rate of new positions taken for written ones once that number is reached.
+     */
+    public record Settings(int minPly, int maxScore, double sampleRate, long rotateRecords, long dedupPositions,
+            double falsePositiveRate) {
+
+        /**
+         * Reads the settings from the configuration: 'training.min.ply', 'training.max.score',
+         * 'training.sample.rate', 'training.rotate.records', 'training.dedup.positions' and 'training.dedup.rate'.
+         *
+         * @param properties The configuration.
+         * @return The settings.
+         */
+        public static Settings fromProperties(final Properties properties) {
+            return new Settings(Integer.parseInt(properties.getProperty("training.min.ply", "16")),
+                Integer.parseInt(properties.getProperty("training.max.score", "3000")),
+                Double.parseDouble(properties.getProperty("training.sample.rate", "1")),
+                Long.parseLong(properties.getProperty("training.rotate.records", "10000000")),
+                Long.parseLong(properties.getProperty("training.dedup.positions", "20000000")),
+                Double.parseDouble(properties.getProperty("training.dedup.rate", "0.01")));
+        }
+    }
+
+    /**
+     * Opens the first file.
+     *
+     * @param file     The name of the files, numbered before the extension.
+     * @param settings Which positions are written and how.
+     * @throws IOException If the file cannot be created.
+     */
+    public TrainingDataWriter(final Path file, final Settings settings) throws IOException {
+        this.file = file;
+        this.settings = settings;
+        seen = new PositionFilter(settings.dedupPositions(), settings.falsePositiveRate());
+        while (Files.exists(part(file, part))) {
+            part++;
+        }
+        channel = open();
+        log.debug("Position filter of {} MB.", seen.bits() / 8 / 1024 / 1024);
+    }
+
+    /**
+     * Opens the writer of the configuration.
+     *
+     * @param properties The configuration.
+     * @return The writer, to close at the end; or null if 'training.file' is not set.
+     * @throws IOException If the file cannot be created.
+     */
+    public static TrainingDataWriter fromProperties(final Properties properties) throws IOException {
+        final String file = properties.getProperty("training.file", "").trim();
+        return file.isEmpty() ? null : new TrainingDataWriter(Path.of(file), Settings.fromProperties(properties));
+    }
+
+    /**
+     * The name of a file.
+     *
+     * @param file The name of the files.
+     * @param part The number of the file.
+     * @return The file, e.g. "train-0003.bin" for "train.bin".
+     */
+    /* default */ static Path part(final Path file, final int part) {
+        final String name = file.getFileName().toString();
+        final int dot = name.lastIndexOf('.');
+        final String numbered = dot > 0 ? String.format("%s-%04d%s", name.substring(0, dot), part, name.substring(dot))
+            : String.format("%s-%04d", name, part);
+        return file.resolveSibling(numbered);
+    }
+
+    private FileChannel open() throws IOException {
+        final Path path = part(file, part);
+        log.debug("Writing training data to {}", path);
+        return FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Samples the positions of a game. Games without scores or result give none.
+     *
+     * @param game The game.
+     * @return The number of positions written.
+     * @throws IOException If the records cannot be written.
+     */
+    public int append(final GameRecord game) throws IOException {
+        final short[] scores = game.scores();
+        int count = 0;
+        if (scores != null && game.result() != GameResult.UNFINISHED) {
+            final ByteBuffer records = ByteBuffer.allocate(RECORD * game.plies()).order(ByteOrder.LITTLE_ENDIAN);
+            final Board board = new Board();
+            board.loadFromFen(game.fen());
+            final List<String> lans = game.lanMoves();
+            for (int i = 0; i < lans.size(); i++) {
+                final String lan = lans.get(i);
+                final boolean sampled = ThreadLocalRandom.current().nextDouble() < settings.sampleRate();
+                if (sampled && isQuiet(board, lan, scores[i])) {
+                    final int start = records.position();
+                    pack(board.getFen(), records);
+                    final boolean black = (records.get(start + 24) & 1) != 0;
+                    final int ply = 2 * (Short.toUnsignedInt(records.getShort(start + 28)) - 1) + (black ? 1 : 0);
+                    if (ply < settings.minPly()) {
+                        records.position(start);
+                    } else {
+                        final int result = game.result() == GameResult.DRAW ? 0
+                            : game.result() == GameResult.WHITE_WINS ^ black ? 1 : -1;
+                        records.putShort(scores[i]).putShort(game.moves()[i]).putShort((short) ply)
+                            .put((byte) result).put(new byte[3]);
+                    }
+                }
+                if (!board.doMove(lan)) {
+                    throw new IllegalArgumentException("Movimiento LAN no válido: " + lan);
+                }
+            }
+            records.flip();
+            lock.lock();
+            try {
+                filtered += lans.size() - records.remaining() / RECORD;
+                while (records.hasRemaining()) {
+                    count += write(records.slice(records.position(), RECORD).order(ByteOrder.LITTLE_ENDIAN)) ? 1 : 0;
+                    records.position(records.position() + RECORD);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /** True if the position and its move are fit to train on: not in check, no capture or promotion, mild score. */
+    private boolean isQuiet(final Board board, final String lan, final short score) {
+        final int code = MoveCodec.encode(lan);
+        final int from = MoveCodec.from(code);
+        final int to = MoveCodec.to(code);
+        final Piece moving = board.getPiece(SQUARES[from]);
+        final boolean capture = board.getPiece(SQUARES[to]) != Piece.NONE
+            // En passant
+            || moving.getPieceType() == PieceType.PAWN && (from & 7) != (to & 7);
+        return score != GameRecord.NO_SCORE && Math.abs(score) <= settings.maxScore() && !board.isKingAttacked()
+            && !capture && MoveCodec.promotion(code) == ' ';
+    }
+
+    /**
+     * Packs the position part of a record (the first 30 bytes) at the position of the buffer.
+     *
+     * @param fen    The position in FEN format.
+     * @param buffer The destination, little-endian; advanced by 30 bytes.
+     */
+    /* default */ static void pack(final String fen, final ByteBuffer buffer) {
+        final String[] fields = fen.trim().split("\\s+");
+        long occupied = 0;
+        final byte[] pieces = new byte[16];
+        int count = 0;
+        int rank = 7;
+        int file = 0;
+        // FEN goes from a8 to h1, the pieces are stored from a1 to h8
+        final int[] codes = new int[SQUARES_PER_BOARD];
+        for (final char c : fields[0].toCharArray()) {
+            if (c == '/') {
+                rank--;
+                file = 0;
+            } else if (Character.isDigit(c)) {
+                file += c - '0';
+            } else {
+                codes[rank * 8 + file++] = PIECES.indexOf(c) + 1;
+            }
+        }
+        for (int square = 0; square < SQUARES_PER_BOARD; square++) {
+            if (codes[square] > 0) {
+                if (count == pieces.length * 2) {
+                    throw new IllegalArgumentException("Demasiadas piezas: " + fen);
+                }
+                occupied |= 1L << square;
+                pieces[count / 2] |= (byte) (codes[square] << (count % 2) * 4);
+                count++;
+            }
+        }
+        int flags = fields.length > 1 && "b".equals(fields[1]) ? 1 : 0;
+        final String castling = fields.length > 2 ? fields[2] : "-";
+        for (int right = 0; right < CASTLING.length(); right++) {
+            if (castling.indexOf(CASTLING.charAt(right)) >= 0) {
+                flags |= 2 << right;
+            }
+        }
+        final int enPassant = fields.length > 3 && fields[3].length() == 2
+            ? (fields[3].charAt(1) - '1') * 8 + fields[3].charAt(0) - 'a' : NO_EN_PASSANT;
+        final int clock = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+        final int moveNumber = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        buffer.putLong(occupied).put(pieces).put((byte) flags).put((byte) enPassant)
+            .put((byte) Math.min(clock, MAX_CLOCK)).put((byte) 0).putShort((short) moveNumber);
+    }
+
+    /**
+     * Hash of the position of a record: pieces, side to move, castling and en passant, not the move counters.
+     *
+     * @param record The record, little-endian, from its position.
+     * @return The hash.
+     */
+    /* default */ static long hash(final ByteBuffer record) {
+        final int start = record.position();
+        long hash = mix(record.getLong(start));
+        hash = mix(hash ^ record.getLong(start + 8));
+        hash = mix(hash ^ record.getLong(start + 16));
+        return mix(hash ^ record.getShort(start + 24));
+    }
+
+    /** Finalizer of MurmurHash3: every input bit changes about half the output bits. */
+    private static long mix(final long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Writes a record unless its position was already written.
+     *
+     * @param record The record, little-endian, from its position to its limit.
+     * @return True if written, false if a duplicate.
+     * @throws IOException If the buffer cannot be written.
+     */
+    /* default */ boolean write(final ByteBuffer record) throws IOException {
+        final boolean added;
+        lock.lock();
+        try {
+            added = seen.add(hash(record));
+            if (added) {
+                if (settings.rotateRecords() > 0 && partRecords == settings.rotateRecords()) {
+                    // The next file is only started when there is a record for it
+                    flush();
+                    channel.close();
+                    part++;
+                    partRecords = 0;
+                    channel = open();
+                } else if (buffer.remaining() < RECORD) {
+                    flush();
+                }
+                buffer.put(record);
+                written++;
+                partRecords++;
+            } else {
+                duplicates++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return added;
+    }
+
+    /** Writes the buffered records to the current file. */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            flush();
+            channel.close();
+            log.info("Training data: {} positions written, {} duplicates, {} left out.", written, duplicates,
+                filtered);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package home.stockfish;
+
+/** Receives the parsed output of a search, on the engine reader thread. */
+public interface UciListener {
+
+    /**
+     * Called for each 'info' line of the search (not for 'info string' lines).
+     *
+     * @param info The parsed line. The instance is reused for the next line.
+     */
+    default void onInfo(final InfoFields info) {
+        // Nothing by default
+    }
+
+    /**
+     * Called when the search ends.
+     *
+     * @param move   The best move as a {@link MoveCodec} code, {@link MoveCodec#NONE} if there are no moves.
+     * @param ponder The expected reply as a {@link MoveCodec} code, {@link MoveCodec#NONE} if absent.
+     */
+    default void onBestMove(final int move, final int ponder) {
+        // Nothing by default
+    }
+
+}
@@ -0,0 +1,302 @@
+package home.stockfish;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte level parser of the engine output. Lines are read into a reusable {@link ByteBuffer} and their first token is
+ * matched directly on the bytes; 'info' and 'bestmove' lines are parsed into a reusable {@link InfoFields} and
+ * {@link MoveCodec} codes, so a search produces no garbage per line. Only the lines handed to
+ * {@link #toString(byte[], int, int)} become strings.
+ * <p>
+ * Not thread safe: one parser per engine reader thread.
+ */
+public final class UciParser {
+    /** Any line that is not 'info' or 'bestmove'. */
+    public static final int OTHER = 1;
+    /** An 'info' line with search data ('info string' lines are {@link #OTHER}). */
+    public static final int INFO = 2;
+    /** The 'bestmove' line. */
+    public static final int BESTMOVE = 4;
+    private static final byte[] INFO_TOKEN = ascii("info");
+    private static final byte[] STRING_TOKEN = ascii("string");
+    private static final byte[] BESTMOVE_TOKEN = ascii("bestmove");
+    private static final byte[] PONDER_TOKEN = ascii("ponder");
+    private static final byte[] DEPTH = ascii("depth");
+    private static final byte[] SELDEPTH = ascii("seldepth");
+    private static final byte[] MULTIPV = ascii("multipv");
+    private static final byte[] SCORE = ascii("score");
+    private static final byte[] CP = ascii("cp");
+    private static final byte[] MATE = ascii("mate");
+    private static final byte[] LOWERBOUND = ascii("lowerbound");
+    private static final byte[] UPPERBOUND = ascii("upperbound");
+    private static final byte[] NODES = ascii("nodes");
+    private static final byte[] NPS = ascii("nps");
+    private static final byte[] TIME = ascii("time");
+    private static final byte[] PV = ascii("pv");
+    /** Initial size of the read buffer, grown if a line does not fit. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Fields of the last parsed 'info' line. */
+    private final InfoFields info = new InfoFields();
+    /** Bytes read but not yet handed out as lines. */
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /** Best move of the last parsed 'bestmove' line. */
+    private int bestMove;
+    /** Ponder move of the last parsed 'bestmove' line. */
+    private int ponderMove;
+    /** Scan position of {@link #next}, reused to avoid allocating a cursor per token. */
+    private int cursor;
+
+    /** Receives each line of the stream, without the end of line. */
+    @FunctionalInterface
+    public interface LineSink {
+        /**
+         * Called for each line. The bytes are only valid during the call.
+         *
+         * @param bytes  The buffer holding the line.
+         * @param offset Start of the line.
+         * @param length Length of the line.
+         */
+        void line(byte[] bytes, int offset, int length);
+    }
+
+    private static byte[] ascii(final String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads the stream until its end, handing out each line.
+     *
+     * @param input The engine output.
+     * @param sink  Receives the lines.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void pump(final InputStream input, final LineSink sink) throws IOException {
+        int read;
+        while ((read = input.read(buffer.array(), buffer.position(), buffer.remaining())) >= 0) { // NOPMD AssignmentInOperand
+            buffer.position(buffer.position() + read);
+            drain(sink);
+        }
+        if (buffer.position() > 0) {
+            // Last line without end of line
+            sink.line(buffer.array(), 0, trimmedLength(buffer.array(), 0, buffer.position()));
+            buffer.clear();
+        }
+    }
+
+    /** Hands out the complete lines in the buffer and keeps the incomplete one at its start. */
+    private void drain(final LineSink sink) {
+        final byte[] bytes = buffer.array();
+        final int end = buffer.position();
+        int start = 0;
+        for (int i = 0; i < end; i++) {
+            if (bytes[i] == '\n') {
+                sink.line(bytes, start, trimmedLength(bytes, start, i));
+                start = i + 1;
+            }
+        }
+        if (start > 0) {
+            buffer.flip().position(start);
+            buffer.compact();
+        } else if (!buffer.hasRemaining()) {
+            // A single line longer than the buffer
+            final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            larger.put(buffer.flip());
+            buffer = larger;
+        }
+    }
+
+    private static int trimmedLength(final byte[] bytes, final int start, final int end) {
+        return end > start && bytes[end - 1] == '\r' ? end - 1 - start : end - start;
+    }
+
+    /**
+     * Classifies a line by its first tokens.
+     *
+     * @param bytes  The buffer holding the line.
+     * @param offset Start of the line.
+     * @param length Length of the line.
+     * @return {@link #INFO}, {@link #BESTMOVE} or {@link #OTHER}.
+     */
+    public int kind(final byte[] bytes, final int offset, final int length) {
+        final int end = offset + length;
+        int kind = OTHER;
+        cursor = offset;
+        final int first = next(bytes, end);
+        if (first >= 0) {
+            final int firstLength = cursor - first;
+            if (matches(bytes, first, firstLength, BESTMOVE_TOKEN)) {
+                kind = BESTMOVE;
+            } else if (matches(bytes, first, firstLength, INFO_TOKEN)) {
+                final int second = next(bytes, end);
+                kind = second >= 0 && matches(bytes, second, cursor - second, STRING_TOKEN) ? OTHER : INFO;
+            }
+        }
+        return kind;
+    }
+
+    /**
+     * Parses an 'info' line into {@link #info()}. Unknown keywords (currmove, hashfull, wdl...) are skipped.
+     *
+     * @param bytes  The buffer holding the line.
+     * @param offset Start of the line.
+     * @param length Length of the line.
+     * @return The parsed fields, the same instance on every call.
+     */
+    public InfoFields parseInfo(final byte[] bytes, final int offset, final int length) {
+        final int end = offset + length;
+        info.reset();
+        cursor = offset;
+        next(bytes, end); // "info"
+        int token;
+        while ((token = next(bytes, end)) >= 0) { // NOPMD AssignmentInOperand
+            final int tokenLength = cursor - token;
+            if (matches(bytes, token, tokenLength, DEPTH)) {
+                info.depth = (int) nextNumber(bytes, end);
+            } else if (matches(bytes, token, tokenLength, SELDEPTH)) {
+                info.seldepth = (int) nextNumber(bytes, end);
+            } else if (matches(bytes, token, tokenLength, MULTIPV)) {
+                info.multipv = (int) nextNumber(bytes, end);
+            } else if (matches(bytes, token, tokenLength, SCORE)) {
+                parseScore(bytes, end);
+            } else if (matches(bytes, token, tokenLength, LOWERBOUND)) {
+                info.bound = InfoFields.LOWERBOUND;
+            } else if (matches(bytes, token, tokenLength, UPPERBOUND)) {
+                info.bound = InfoFields.UPPERBOUND;
+            } else if (matches(bytes, token, tokenLength, NODES)) {
+                info.nodes = nextNumber(bytes, end);
+            } else if (matches(bytes, token, tokenLength, NPS)) {
+                info.nps = nextNumber(bytes, end);
+            } else if (matches(bytes, token, tokenLength, TIME)) {
+                info.time = nextNumber(bytes, end);
+            } else if (matches(bytes, token, tokenLength, PV)) {
+                int move;
+                while ((move = next(bytes, end)) >= 0) { // NOPMD AssignmentInOperand
+                    info.addPv(MoveCodec.encode(bytes, move, cursor - move));
+                }
+            }
+        }
+        return info;
+    }
+
+    private void parseScore(final byte[] bytes, final int end) {
+        final int unit = next(bytes, end);
+        if (unit >= 0) {
+            info.mate = matches(bytes, unit, cursor - unit, MATE);
+            info.hasScore = info.mate || matches(bytes, unit, cursor - unit, CP);
+            info.score = (int) nextNumber(bytes, end);
+        }
+    }
+
+    /**
+     * Parses a 'bestmove' line into {@link #bestMove()} and {@link #ponderMove()}.
+     *
+     * @param bytes  The buffer holding the line.
+     * @param offset Start of the line.
+     * @param length Length of the line.
+     */
+    public void parseBestMove(final byte[] bytes, final int offset, final int length) {
+        final int end = offset + length;
+        bestMove = MoveCodec.NONE;
+        ponderMove = MoveCodec.NONE;
+        cursor = offset;
+        next(bytes, end); // "bestmove"
+        final int move = next(bytes, end);
+        if (move >= 0) {
+            bestMove = MoveCodec.encode(bytes, move, cursor - move);
+            final int ponder = next(bytes, end);
+            if (ponder >= 0 && matches(bytes, ponder, cursor - ponder, PONDER_TOKEN)) {
+                final int reply = next(bytes, end);
+                if (reply >= 0) {
+                    ponderMove = MoveCodec.encode(bytes, reply, cursor - reply);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fields of the last parsed 'info' line.
+     *
+     * @return The reusable fields.
+     */
+    public InfoFields info() {
+        return info;
+    }
+
+    /**
+     * Best move of the last parsed 'bestmove' line.
+     *
+     * @return The {@link MoveCodec} code, {@link MoveCodec#NONE} for "(none)".
+     */
+    public int bestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Ponder move of the last parsed 'bestmove' line.
+     *
+     * @return The {@link MoveCodec} code, {@link MoveCodec#NONE} if absent.
+     */
+    public int ponderMove() {
+        return ponderMove;
+    }
+
+    /**
+     * Materializes a line, for the callers that still want text.
+     *
+     * @param bytes  The buffer holding the line.
+     * @param offset Start of the line.
+     * @param length Length of the line.
+     * @return The line.
+     */
+    public static String toString(final byte[] bytes, final int offset, final int length) {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the next token starting at {@link #cursor} and leaves {@link #cursor} just past it.
+     *
+     * @return Start of the token, -1 if there are no more tokens.
+     */
+    private int next(final byte[] bytes, final int end) {
+        int start = cursor;
+        while (start < end && bytes[start] == ' ') {
+            start++;
+        }
+        int stop = start;
+        while (stop < end && bytes[stop] != ' ') {
+            stop++;
+        }
+        cursor = stop;
+        return start < end ? start : -1;
+    }
+
+    /** Reads the next token as a signed decimal number, 0 if missing or not a number. */
+    private long nextNumber(final byte[] bytes, final int end) {
+        final int start = next(bytes, end);
+        long value = 0;
+        if (start >= 0) {
+            final boolean negative = bytes[start] == '-';
+            for (int i = negative ? start + 1 : start; i < cursor; i++) {
+                final int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+            }
+            value = negative ? -value : value;
+        }
+        return value;
+    }
+
+    private static boolean matches(final byte[] bytes, final int offset, final int length, final byte[] token) {
+        boolean equal = length == token.length;
+        for (int i = 0; equal && i < length; i++) {
+            equal = bytes[offset + i] == token[i];
+        }
+        return equal;
+    }
+
+}
@@ -0,0 +1,47 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+class AdjudicatorTest {
+
+    private static AnalysisResult score(final int score, final boolean mate) {
+        return new AnalysisResult("e2e4", null, 20, score, mate, 1000, List.of());
+    }
+
+    @Test
+    void resignsWhenBothSidesAgree() {
+        final Adjudicator adjudicator = new Adjudicator(new Adjudicator.Rules(500, 4, 0, 0, 0));
+        // Scores are from the side to move's view: Black sees -600 when White is winning
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(score(600, false), true, 30));
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(score(-600, false), false, 30));
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(score(100, false), true, 31));
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(score(-700, false), false, 31));
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(score(800, false), true, 32));
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(score(-5, true), false, 32));
+        assertEquals(GameResult.WHITE_WINS, adjudicator.record(score(900, false), true, 33));
+    }
+
+    @Test
+    void drawsOnlyAfterTheGivenMove() {
+        final Adjudicator adjudicator = new Adjudicator(new Adjudicator.Rules(0, 0, 10, 3, 40));
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(score(0, false), true, 38));
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(score(5, false), false, 39));
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(score(-3, false), true, 40));
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(new AnalysisResult("e2e4", null, 0, 0, false, 0,
+            List.of()), false, 40));
+        assertEquals(GameResult.UNFINISHED, adjudicator.record(score(8, false), false, 40));
+        assertEquals(GameResult.DRAW, adjudicator.record(score(0, false), true, 41));
+    }
+
+    @Test
+    void disabledByDefault() {
+        assertNull(Adjudicator.Rules.fromProperties(new Properties()));
+    }
+
+}
@@ -0,0 +1,65 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnalysisCacheTest {
+    private static final String FEN = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1";
+    private static final AnalysisResult DEPTH_20 = new AnalysisResult("c7c5", "g1f3", 20, 35, false, 1_500_000,
+        List.of("c7c5", "g1f3", "d7d6"));
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    void deeperResultSatisfiesShallowerRequest() {
+        try (AnalysisCache cache = new AnalysisCache("Stockfish 17", 10)) {
+            cache.put(FEN, SearchLimits.depth(20), DEPTH_20);
+            assertEquals(DEPTH_20, cache.get(FEN, SearchLimits.depth(18)));
+            assertNull(cache.get(FEN, SearchLimits.depth(22)));
+            assertNull(cache.get(FEN, SearchLimits.movetime(1_000)));
+            assertNull(cache.get(FEN, SearchLimits.depth(18).withMultiPv(3)));
+            // Move counters are not part of the key
+            assertEquals(DEPTH_20, cache.get(FEN.replace(" 0 1", " 3 12"), SearchLimits.depth(20)));
+            assertEquals(2, cache.hits());
+            assertEquals(3, cache.misses());
+        }
+    }
+
+    @Test
+    void engineIdentityIsPartOfTheKey() {
+        try (AnalysisCache cache = new AnalysisCache("Stockfish 17", 10)) {
+            assertNotEquals(cache.key(FEN, 1), new AnalysisCache("Stockfish 16", 10).key(FEN, 1));
+        }
+    }
+
+    @Test
+    void diskTierSurvivesRestart() throws IOException {
+        final Path file = dir.resolve("analysis.cache");
+        try (AnalysisCache cache = new AnalysisCache("Stockfish 17", 10, file, 1_000)) {
+            cache.put(FEN, SearchLimits.depth(20), DEPTH_20);
+            cache.put(FEN, SearchLimits.depth(12), new AnalysisResult("e7e5", null, 12, 20, false, 9_000,
+                List.of("e7e5")));
+        }
+        try (AnalysisCache cache = new AnalysisCache("Stockfish 17", 10, file, 1_000)) {
+            assertEquals(DEPTH_20, cache.get(FEN, SearchLimits.depth(16)));
+        }
+    }
+
+    @Test
+    void diskTierFitsInOneMapping() {
+        // Slot offsets are ints, so the file stays under 2 GB
+        assertThrows(IllegalArgumentException.class, () -> new AnalysisCache("Stockfish 17", 10,
+            dir.resolve("analysis.cache"), MappedResultTable.MAX_SLOTS + 1));
+    }
+
+}
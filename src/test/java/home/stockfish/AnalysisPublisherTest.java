@@ -0,0 +1,141 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AnalysisPublisherTest {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /** Subscriber that records everything and requests only when told, or everything at once. */
+    private static final class Recorder implements Flow.Subscriber<AnalysisUpdate> {
+        private final boolean unbounded;
+        private final List<AnalysisUpdate> updates = new ArrayList<>();
+        private final CountDownLatch ended = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        private Throwable error;
+
+        private Recorder(final boolean unbounded) {
+            this.unbounded = unbounded;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription taken) {
+            subscription = taken;
+            if (unbounded) {
+                taken.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(final AnalysisUpdate update) {
+            updates.add(update);
+        }
+
+        @Override
+        public void onError(final Throwable failure) {
+            error = failure;
+            ended.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            ended.countDown();
+        }
+    }
+
+    private static InfoFields info(final int multipv, final int depth, final int score) {
+        final InfoFields info = new InfoFields();
+        info.reset();
+        info.multipv = multipv;
+        info.depth = depth;
+        info.score = score;
+        info.hasScore = true;
+        info.addPv(MoveCodec.encode("e2e4"));
+        return info;
+    }
+
+    @Test
+    void slowSubscriberGetsTheLatestUpdateOfEveryLine() {
+        // Delivered on the calling thread, so the test is deterministic
+        final AnalysisPublisher publisher = new AnalysisPublisher(Runnable::run);
+        final CompletableFuture<AnalysisResult> search = new CompletableFuture<>();
+        publisher.attach(search);
+        final Recorder recorder = new Recorder(false);
+        publisher.subscribe(recorder);
+        recorder.subscription.request(1);
+        publisher.onInfo(info(1, 1, 10));
+        for (int depth = 2; depth <= 20; depth++) {
+            publisher.onInfo(info(1, depth, 10 + depth));
+            publisher.onInfo(info(2, depth, -depth));
+        }
+        assertEquals(1, recorder.updates.size());
+        recorder.subscription.request(10);
+        assertEquals(3, recorder.updates.size());
+        assertEquals(20, recorder.updates.get(1).depth());
+        assertEquals(30, recorder.updates.get(1).score());
+        assertEquals(2, recorder.updates.get(2).multipv());
+        assertEquals(List.of("e2e4"), recorder.updates.get(2).pv());
+        search.complete(new AnalysisResult("e2e4", null, 20, 30, false, 0, List.of("e2e4")));
+        assertEquals(0, recorder.ended.getCount());
+        // A late subscriber starts from the final state
+        final Recorder late = new Recorder(true);
+        publisher.subscribe(late);
+        assertEquals(2, late.updates.size());
+        assertEquals(0, late.ended.getCount());
+    }
+
+    @Test
+    void nonPositiveRequestFails() {
+        final AnalysisPublisher publisher = new AnalysisPublisher(Runnable::run);
+        final Recorder recorder = new Recorder(false);
+        publisher.subscribe(recorder);
+        publisher.onInfo(info(1, 1, 10));
+        recorder.subscription.request(0);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertTrue(recorder.updates.isEmpty());
+    }
+
+    @Test
+    void nonPositiveRequestFailsEvenIfTheSearchEndsFirst() {
+        // The error is only delivered when the tasks run, after the search completed
+        final List<Runnable> tasks = new ArrayList<>();
+        final AnalysisPublisher publisher = new AnalysisPublisher(tasks::add);
+        final CompletableFuture<AnalysisResult> search = new CompletableFuture<>();
+        publisher.attach(search);
+        final Recorder recorder = new Recorder(false);
+        publisher.subscribe(recorder);
+        recorder.subscription.request(-1);
+        search.complete(new AnalysisResult("e2e4", null, 20, 30, false, 0, List.of("e2e4")));
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+        assertEquals(0, recorder.ended.getCount());
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    void publishesASearch() throws IOException, InterruptedException {
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 50, 5, 25, List.of("d2d4"));
+        try (Stockfish engine = FakeEngine.start(settings)) {
+            engine.sendCommand("position fen " + START_FEN);
+            final AnalysisPublisher publisher = engine.publish(SearchLimits.depth(5));
+            final Recorder recorder = new Recorder(true);
+            publisher.subscribe(recorder);
+            assertTrue(recorder.ended.await(5, TimeUnit.SECONDS));
+            assertEquals("d2d4", publisher.result().join().bestMove());
+            assertEquals(5, recorder.updates.get(recorder.updates.size() - 1).depth());
+            assertEquals(25, recorder.updates.get(0).score());
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class AnalysisResultTest {
+
+    @Test
+    void parseKeepsLastFirstPv() {
+        final String output = """
+                info string NNUE evaluation using nn-1111cefa1111.nnue enabled
+                info depth 1 seldepth 1 multipv 1 score cp 18 nodes 20 nps 20000 time 1 pv e2e4
+                info depth 2 seldepth 2 multipv 1 score cp 46 nodes 66 nps 33000 time 2 pv d2d4 d7d5
+                info depth 2 seldepth 2 multipv 2 score cp 30 nodes 66 nps 33000 time 2 pv e2e4 e7e5
+                bestmove d2d4 ponder d7d5
+                """;
+        final AnalysisResult result = AnalysisResult.parse(output);
+        assertEquals("d2d4", result.bestMove());
+        assertEquals("d7d5", result.ponder());
+        assertEquals(2, result.depth());
+        assertEquals(46, result.score());
+        assertFalse(result.mate());
+        assertEquals(66, result.nodes());
+        assertEquals(List.of("d2d4", "d7d5"), result.pv());
+    }
+
+    @Test
+    void parseMateWithoutPonder() {
+        final AnalysisResult result = AnalysisResult.parse(
+                "info depth 3 score mate 2 upperbound nodes 900 pv h5f7 e8e7 c4d5\nbestmove h5f7\n");
+        assertTrue(result.mate());
+        assertEquals(2, result.score());
+        assertNull(result.ponder());
+    }
+
+    @Test
+    void searchLimitsToGoCommand() {
+        assertEquals("go movetime 200", SearchLimits.movetime(200).toGoCommand());
+        assertEquals("go depth 12", SearchLimits.depth(12).withMultiPv(3).toGoCommand());
+        assertEquals("go infinite", new SearchLimits(0, 0, 0, 1).toGoCommand());
+        assertEquals("go wtime 60000 btime 55000 winc 600 binc 600 mate 3",
+            new SearchLimits(0, 0, 0, 3, 0, 0, 600, 600, 0, 1).withClock(60_000, 55_000).toGoCommand());
+    }
+
+}
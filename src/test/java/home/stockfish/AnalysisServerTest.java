@@ -0,0 +1,114 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class AnalysisServerTest {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    @Test
+    void parsesRequests() {
+        final AnalysisServer.Request request = AnalysisServer.parse(
+            "go 7 depth 12 multipv 3 deadline 500 fen " + START_FEN + " moves e2e4");
+        assertEquals("7", request.id());
+        assertEquals(START_FEN + " moves e2e4", request.fen());
+        assertEquals(new SearchLimits(0, 12, 0, 3), request.limits());
+        assertEquals(500, request.deadline());
+        assertThrows(IllegalArgumentException.class, () -> AnalysisServer.parse("go 7 depth 12"));
+        assertThrows(IllegalArgumentException.class, () -> AnalysisServer.parse("go 7 depth x fen " + START_FEN));
+        // Without limits the search would never end
+        assertThrows(IllegalArgumentException.class, () -> AnalysisServer.parse("go 7 fen " + START_FEN));
+    }
+
+    @Test
+    void servesWithDeadlinesAndCancels() throws IOException {
+        // Searches last 10 s unless stopped
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 10_000, 100, 30, List.of("d2d4"));
+        try (EnginePool pool = new EnginePool(() -> FakeEngine.startUnchecked(settings), 1, 1, 16);
+                AnalysisServer server = new AnalysisServer(pool, 0, 4);
+                Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(),
+                    StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            out.println("go a depth 20 deadline 1500 fen " + START_FEN);
+            out.println("go b depth 20 deadline 300 fen " + START_FEN);
+            out.println("go c depth 20 fen " + START_FEN);
+            out.println("go f depth 20 fen " + START_FEN);
+            out.println("go g depth 20 fen " + START_FEN);
+            assertEquals("{\"id\":\"g\",\"error\":\"busy\"}", in.readLine());
+            // Queued requests can be cancelled, or time out, without waiting for the engine
+            out.println("stop c");
+            assertEquals("{\"id\":\"c\",\"error\":\"cancelled\"}", in.readLine());
+            assertEquals("{\"id\":\"b\",\"error\":\"timeout\"}", in.readLine());
+            // At its deadline the search is stopped and answers its best move so far
+            final String answer = in.readLine();
+            assertTrue(answer.contains("\"id\":\"a\"") && answer.contains("\"bestmove\":\"d2d4\""), answer);
+            out.println("stop f");
+            assertEquals("{\"id\":\"f\",\"error\":\"cancelled\"}", in.readLine());
+        }
+    }
+
+    @Test
+    void closingKeepsTheBusyEngines() throws IOException, InterruptedException {
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 10_000, 100, 30, List.of("d2d4"));
+        final AtomicInteger started = new AtomicInteger();
+        try (EnginePool pool = new EnginePool(() -> {
+            started.incrementAndGet();
+            return FakeEngine.startUnchecked(settings);
+        }, 1, 1, 16)) {
+            final Stockfish engine = pool.engines().get(0);
+            try (AnalysisServer server = new AnalysisServer(pool, 0, 4);
+                    Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                    PrintWriter out = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8)) {
+                out.println("go a depth 20 fen " + START_FEN);
+                while (!engine.isSearching()) {
+                    Thread.sleep(5);
+                }
+                // Past 'go': the request waits for the 'bestmove' when it is interrupted
+                Thread.sleep(200);
+                server.close();
+            }
+            // The interrupted request stopped the search and gave the engine back, instead of replacing it
+            assertFalse(engine.isSearching());
+            assertTrue(engine.isAlive());
+            assertEquals(1, started.get());
+        }
+    }
+
+    @Test
+    void answersEveryPrincipalVariation() throws IOException {
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 0, 3, 30, List.of("d2d4"));
+        try (EnginePool pool = new EnginePool(() -> FakeEngine.startUnchecked(settings), 1, 1, 16);
+                AnalysisServer server = new AnalysisServer(pool, 0, 4);
+                Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(),
+                    StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            out.println("go m depth 3 multipv 3 fen " + START_FEN);
+            final String answer = in.readLine();
+            assertTrue(answer.contains("\"bestmove\":\"d2d4\""), answer);
+            assertTrue(answer.contains("\"lines\":[{\"multipv\":1,\"depth\":3,\"score\":30,"), answer);
+            assertTrue(answer.contains("{\"multipv\":2,\"depth\":3,\"score\":20,"), answer);
+            assertTrue(answer.endsWith("{\"multipv\":3,\"depth\":3,\"score\":10,\"mate\":false,\"pv\":[\"d2d4\"]}]}"),
+                answer);
+            // Single line answers are unchanged
+            out.println("go s depth 3 fen " + START_FEN);
+            assertFalse(in.readLine().contains("lines"));
+        }
+    }
+
+}
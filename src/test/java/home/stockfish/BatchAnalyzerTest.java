@@ -0,0 +1,88 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchAnalyzerTest {
+    private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq -";
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    void parseEpdAndFen() {
+        final BatchAnalyzer.Position epd = BatchAnalyzer.parse(START + " bm e4; id \"start\";");
+        assertEquals(START + " 0 1", epd.fen());
+        assertEquals("start", epd.id());
+        final BatchAnalyzer.Position fen = BatchAnalyzer.parse(START + " 3 12");
+        assertEquals(START + " 3 12", fen.fen());
+        assertNull(fen.id());
+        assertNull(BatchAnalyzer.parse("  "));
+        assertNull(BatchAnalyzer.parse("# comment"));
+    }
+
+    @Test
+    void parseRejectsInvalidPositions() {
+        assertThrows(IllegalArgumentException.class, () -> BatchAnalyzer.parse("a b c d"));
+        assertThrows(IllegalArgumentException.class, () -> BatchAnalyzer.parse("8/8/8/8/8/8/8/8 w - -"));
+        assertThrows(IllegalArgumentException.class, () -> BatchAnalyzer.parse("4k3/8/8/8/8/8/8/4K3 x - -"));
+    }
+
+    @Test
+    void toJsonWritesAllFields() {
+        final AnalysisResult result = new AnalysisResult("e2e4", "e7e5", 12, 30, false, 5_000,
+            List.of("e2e4", "e7e5"));
+        assertEquals("{\"fen\":\"" + START + " 0 1\",\"id\":\"a \\\"b\\\"\",\"bestmove\":\"e2e4\","
+            + "\"ponder\":\"e7e5\",\"depth\":12,\"score\":30,\"mate\":false,\"nodes\":5000,\"pv\":[\"e2e4\",\"e7e5\"]}",
+            BatchAnalyzer.toJson(new BatchAnalyzer.Position(START + " 0 1", "a \"b\""), result));
+    }
+
+    @Test
+    void resumesFromCheckpoint() throws IOException {
+        final Path input = dir.resolve("positions.epd");
+        final Path output = dir.resolve("results.jsonl");
+        Files.write(input, List.of(START + " id \"1\";", "", START + " id \"2\";", START + " id \"4\";"));
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 0, 2, 15, List.of("g1f3"));
+        try (EnginePool pool = new EnginePool(() -> FakeEngine.startUnchecked(settings), 2, 1, 16)) {
+            final BatchAnalyzer analyzer = new BatchAnalyzer(pool, SearchLimits.depth(2), 2);
+            assertEquals(3, analyzer.run(input, output));
+            final List<String> complete = Files.readAllLines(output);
+            assertEquals(3, complete.size());
+
+            // Interrupted after the first two lines, with a partial result written
+            final long firstLine = complete.get(0).getBytes(StandardCharsets.UTF_8).length + 1;
+            Files.writeString(output.resolveSibling("results.jsonl.checkpoint"), "2 " + firstLine + "\n");
+            Files.writeString(output, complete.get(0) + "\n{\"partial", StandardCharsets.UTF_8);
+            assertEquals(2, analyzer.run(input, output));
+            assertEquals(complete, Files.readAllLines(output));
+        }
+    }
+
+    @Test
+    void skipsInvalidLines() throws IOException {
+        final Path input = dir.resolve("positions.epd");
+        final Path output = dir.resolve("results.jsonl");
+        Files.write(input, List.of(START + " id \"1\";", "not a position", "a b c d", START + " id \"4\";"));
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 0, 2, 15, List.of("g1f3"));
+        try (EnginePool pool = new EnginePool(() -> FakeEngine.startUnchecked(settings), 1, 1, 16)) {
+            assertEquals(2, new BatchAnalyzer(pool, SearchLimits.depth(2), 2).run(input, output));
+        }
+        final List<String> results = Files.readAllLines(output);
+        assertEquals(2, results.size());
+        assertTrue(results.get(1).contains("\"id\":\"4\""), results.get(1));
+        // The bad lines count as done
+        assertEquals("4 ", Files.readString(output.resolveSibling("results.jsonl.checkpoint")).substring(0, 2));
+    }
+
+}
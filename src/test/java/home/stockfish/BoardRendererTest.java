@@ -0,0 +1,32 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.bhlangonijr.chesslib.Board;
+
+class BoardRendererTest {
+    private static final String SEPARATOR = " +---+---+---+---+---+---+---+---+\n";
+
+    @Test
+    void rendersTheLocalBoardIntoTheSameBuffer() {
+        final BoardRenderer renderer = new BoardRenderer();
+        final Board board = new Board();
+        board.loadFromFen("4k3/8/8/8/8/8/4P3/4K2R w K - 0 1");
+        final String empty = " |   |   |   |   |   |   |   |   | ";
+        assertEquals(SEPARATOR + " |   |   |   |   | ♚ |   |   |   | 8\n" + SEPARATOR
+            + empty + "7\n" + SEPARATOR + empty + "6\n" + SEPARATOR + empty + "5\n" + SEPARATOR
+            + empty + "4\n" + SEPARATOR + empty + "3\n" + SEPARATOR
+            + " |   |   |   |   | ♙ |   |   |   | 2\n" + SEPARATOR
+            + " |   |   |   |   | ♔ |   |   | ♖ | 1\n" + SEPARATOR + "   a   b   c   d   e   f   g   h",
+            renderer.render(board).toString());
+
+        // The pawn moves: its old square is blanked on the next render
+        board.doMove("e2e4");
+        final String diagram = renderer.render(board).toString();
+        assertEquals(" |   |   |   |   | ♙ |   |   |   | 4", diagram.split("\n")[9]);
+        assertEquals(" |   |   |   |   |   |   |   |   | 2", diagram.split("\n")[13]);
+    }
+
+}
@@ -0,0 +1,52 @@
+package home.stockfish;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.junit.jupiter.api.Test;
+
+class EarlyStopTest {
+    private final ByteArrayOutputStream commands = new ByteArrayOutputStream();
+    private final UciParser parser = new UciParser();
+
+    private void feed(final UciListener listener, final String line) {
+        final byte[] bytes = line.getBytes(US_ASCII);
+        listener.onInfo(parser.parseInfo(bytes, 0, bytes.length));
+    }
+
+    private Stockfish engine() {
+        final Stockfish engine = new Stockfish();
+        engine.connect(InputStream.nullInputStream(), commands);
+        return engine;
+    }
+
+    @Test
+    void stopsWhenBestMoveIsStable() {
+        try (Stockfish engine = engine()) {
+            final UciListener listener = new EarlyStop(3, 0, 2).listener(engine);
+            feed(listener, "info depth 1 score cp 20 pv e2e4 e7e5");
+            feed(listener, "info depth 2 score cp 25 pv d2d4 d7d5");
+            feed(listener, "info depth 3 score cp 30 lowerbound pv c2c4");
+            feed(listener, "info depth 3 score cp 22 pv d2d4 g8f6");
+            assertEquals("", commands.toString(US_ASCII));
+            feed(listener, "info depth 4 score cp 24 pv d2d4 d7d5");
+            feed(listener, "info depth 5 score cp 24 pv d2d4 d7d5");
+            assertEquals("stop\n", commands.toString(US_ASCII));
+        }
+    }
+
+    @Test
+    void stopsOnDecisiveScoreAfterMinDepth() {
+        try (Stockfish engine = engine()) {
+            final UciListener listener = new EarlyStop(0, 500, 4).listener(engine);
+            feed(listener, "info depth 3 score mate 2 pv h5f7");
+            assertEquals("", commands.toString(US_ASCII));
+            feed(listener, "info depth 4 score cp -650 pv g8f6");
+            assertEquals("stop\n", commands.toString(US_ASCII));
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class EngineHostTest {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    @Test
+    void remoteEngineWorksLikeALocalOne() throws IOException {
+        try (EngineHost host = new EngineHost(FakeEngine.command("--search=0", "--info=2", "--score=40",
+                "--moves=g1f3"), InetAddress.getLoopbackAddress(), 0)) {
+            final Stockfish engine = new Stockfish();
+            assertTrue(engine.startEngine(new SocketTransport("localhost:" + host.getPort(), 5_000),
+                Map.of("Hash", 16)));
+            assertEquals("FakeEngine", engine.getEngineInfo().name());
+            assertFalse(engine.processHandle().isPresent());
+            final AnalysisResult result = EnginePool.analyse(engine, START_FEN, SearchLimits.depth(2), null);
+            assertEquals("g1f3", result.bestMove());
+            assertEquals(40, result.score());
+            assertTrue(engine.isReady(5_000));
+            assertTrue(engine.getLatencyMicros() > 0);
+            assertTrue(engine.getNps() > 0);
+            // Cutting the link ends the engine on the host
+            engine.kill();
+            assertFalse(engine.isAlive());
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class EnginePoolTest {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    @Test
+    void analyseOnFakeEngines() {
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 5, 3, 25, List.of("d2d4"));
+        try (EnginePool pool = new EnginePool(() -> FakeEngine.startUnchecked(settings), 2, 1, 16)) {
+            final List<CompletableFuture<AnalysisResult>> results = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                results.add(pool.analyse(START_FEN, SearchLimits.depth(3)));
+            }
+            for (final CompletableFuture<AnalysisResult> result : results) {
+                final AnalysisResult analysis = result.join();
+                // Engines are reset between jobs, so the script starts again every time
+                assertEquals("d2d4", analysis.bestMove());
+                assertEquals(3, analysis.depth());
+                assertEquals(25, analysis.score());
+            }
+        }
+    }
+
+    @Test
+    void stopsTheStartedEnginesIfOneFails() {
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 0, 1, 0, List.of());
+        final List<Stockfish> started = new CopyOnWriteArrayList<>();
+        final AtomicInteger attempts = new AtomicInteger();
+        assertThrows(CompletionException.class, () -> new EnginePool(() -> {
+            if (attempts.getAndIncrement() == 1) {
+                throw new UncheckedIOException(new IOException("Engine binary gone"));
+            }
+            final Stockfish engine = FakeEngine.startUnchecked(settings);
+            started.add(engine);
+            return engine;
+        }, 3, 1, 16));
+        assertEquals(2, started.size());
+        started.forEach(engine -> assertFalse(engine.isAlive()));
+    }
+
+    @Test
+    void engineInfoNeedsAnEngine() {
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 0, 1, 0, List.of());
+        final EnginePool pool = new EnginePool(() -> FakeEngine.startUnchecked(settings), 1, 1, 16);
+        assertNotNull(pool.getEngineInfo());
+        pool.close();
+        assertThrows(IllegalStateException.class, pool::getEngineInfo);
+    }
+
+    @Test
+    void fastestIdleEngineFirst() throws InterruptedException {
+        final FakeEngine.Settings fast = new FakeEngine.Settings(0, 0, 1, 0, List.of());
+        final FakeEngine.Settings slow = new FakeEngine.Settings(40, 0, 1, 0, List.of());
+        final AtomicInteger started = new AtomicInteger();
+        try (EnginePool pool = new EnginePool(
+                () -> FakeEngine.startUnchecked(started.getAndIncrement() == 0 ? slow : fast), 2, 1, 16)) {
+            // Both answered 'isready' once at start, so their latency is known
+            final Stockfish first = pool.checkout();
+            final Stockfish second = pool.checkout();
+            assertTrue(EnginePool.cost(first) < EnginePool.cost(second));
+            assertTrue(second.getLatencyMicros() >= 40_000);
+            pool.release(first);
+            pool.release(second);
+        }
+    }
+
+    @Test
+    void releaseStopsARunningSearch() {
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 0, 1, 0, List.of("e2e4"));
+        try (EnginePool pool = new EnginePool(() -> FakeEngine.startUnchecked(settings), 1, 1, 16)) {
+            final Stockfish engine = pool.checkout();
+            engine.sendCommand("position startpos");
+            // A job that failed while its engine was pondering
+            engine.ponder(SearchLimits.movetime(10), null, UciParser.BESTMOVE);
+            assertTrue(engine.isSearching());
+            pool.release(engine);
+            assertFalse(engine.isSearching());
+            // The next job gets its own 'bestmove', not the leftover one
+            final AnalysisResult result = pool.analyse(START_FEN, SearchLimits.depth(1)).join();
+            assertEquals("e2e4", result.bestMove());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void restartsWornIdleEngines() {
+        final AtomicInteger started = new AtomicInteger();
+        try (EnginePool pool = new EnginePool(() -> {
+            started.incrementAndGet();
+            return FakeEngine.startUnchecked(FakeEngine.Settings.defaults());
+        }, 2, 1, 16)) {
+            final List<Stockfish> before = pool.engines();
+            pool.pingIdle(1_000, engine -> engine == before.get(0));
+            assertEquals(3, started.get());
+            assertFalse(pool.engines().contains(before.get(0)));
+            assertTrue(pool.engines().contains(before.get(1)));
+        }
+    }
+
+}
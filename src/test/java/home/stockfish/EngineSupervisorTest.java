@@ -0,0 +1,92 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class EngineSupervisorTest {
+    /** Never ticks during the test: checks are called directly. */
+    private static final int HOUR = 3_600_000;
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    /** Writes one 'info' line and then nothing for a minute, until the supervisor kills it. */
+    private static final FakeEngine.Settings STALLED = new FakeEngine.Settings(0, 60_000, 1, 0, List.of("a2a3"));
+    /** Kills searches silent for a second, far longer than a healthy fake engine ever is. */
+    private static final EngineSupervisor.Settings WATCH = new EngineSupervisor.Settings(50, 1_000, 0, 0);
+
+    @Test
+    void killsAStalledSearchAndFailsItAtOnce() throws IOException, InterruptedException {
+        final PipedOutputStream output = new PipedOutputStream();
+        try (Stockfish engine = new Stockfish();
+                EngineSupervisor supervisor = new EngineSupervisor(null,
+                    new EngineSupervisor.Settings(HOUR, 50, 0, 0))) {
+            engine.connect(new PipedInputStream(output), new ByteArrayOutputStream());
+            assertTrue(supervisor.check(engine));
+            final CompletableFuture<AnalysisResult> search = engine.search(SearchLimits.depth(30), null,
+                UciParser.BESTMOVE);
+            assertTrue(supervisor.check(engine));
+            Thread.sleep(100);
+            assertFalse(supervisor.check(engine));
+            assertFalse(engine.isAlive());
+            assertThrows(IllegalStateException.class, () -> engine.awaitSearch(search, 60_000));
+        }
+    }
+
+    @Test
+    void replaysTheJobOfAKilledEngine() {
+        final FakeEngine.Settings healthy = new FakeEngine.Settings(0, 0, 1, 0, List.of("e2e4"));
+        final AtomicInteger started = new AtomicInteger();
+        try (EnginePool pool = new EnginePool(
+                () -> FakeEngine.startUnchecked(started.getAndIncrement() == 0 ? STALLED : healthy), 1, 1, 16);
+                EngineSupervisor supervisor = new EngineSupervisor(pool, WATCH)) {
+            // The first engine is killed under the job, which is played again on its replacement
+            assertEquals("e2e4", pool.analyse(START_FEN, SearchLimits.depth(1)).join().bestMove());
+            assertEquals(2, started.get());
+        }
+    }
+
+    @Test
+    void givesUpAfterEveryAttemptFailed() {
+        final AtomicInteger started = new AtomicInteger();
+        try (EnginePool pool = new EnginePool(() -> {
+            started.incrementAndGet();
+            return FakeEngine.startUnchecked(STALLED);
+        }, 1, 1, 16); EngineSupervisor supervisor = new EngineSupervisor(pool, WATCH)) {
+            final CompletionException failed = assertThrows(CompletionException.class,
+                () -> pool.analyse(START_FEN, SearchLimits.depth(1)).join());
+            assertTrue(failed.getCause() instanceof IllegalStateException);
+            // Three engines killed, each one replaced
+            assertEquals(4, started.get());
+        }
+    }
+
+    @Test
+    void failsWhenNoEnginesAreLeft() {
+        final AtomicInteger started = new AtomicInteger();
+        try (EnginePool pool = new EnginePool(() -> {
+            if (started.getAndIncrement() > 0) {
+                // As thrown by FakeEngine.startUnchecked; the restart fails inside the job's release
+                throw new UncheckedIOException(new IOException("Engine binary gone"));
+            }
+            return FakeEngine.startUnchecked(STALLED);
+        }, 1, 1, 16); EngineSupervisor supervisor = new EngineSupervisor(pool, WATCH)) {
+            final CompletionException failed = assertThrows(CompletionException.class,
+                () -> pool.analyse(START_FEN, SearchLimits.depth(1)).join());
+            assertEquals("No engines left in the pool", failed.getCause().getMessage());
+            assertTrue(pool.engines().isEmpty());
+        }
+    }
+
+}
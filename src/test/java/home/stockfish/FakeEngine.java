@@ -0,0 +1,410 @@
+package home.stockfish;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stand-in UCI engine with scripted behaviour, to measure the client without the cost (or the availability) of a
+ * real search. It answers 'uci', 'isready', 'setoption', 'ucinewgame', 'position', 'go' (perft included), 'stop',
+ * 'ponderhit', 'd' and 'quit'.
+ * <p>
+ * It runs either in its own process ({@link #main(String...)}, see {@link #command(String...)}) or in-process over
+ * pipes ({@link #start(Settings)}). Best moves come from a script; when the script runs out, the first legal move
+ * is played.
+ */
+@Slf4j
+public final class FakeEngine implements Runnable {
+    /** Initial position. */
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    /** Engine stdin. */
+    private final BufferedReader input;
+    /** Engine stdout. */
+    private final PrintWriter output;
+    /** Scripted behaviour. */
+    private final Settings settings;
+    /** Current position. */
+    private final Board board = new Board();
+    /** Principal variations reported per depth, set with the 'MultiPV' option. */
+    private int multiPv = 1;
+    /** Next scripted best move. */
+    private int scriptIndex;
+    /** Search in progress, null if none. */
+    private volatile Thread search;
+    /** Set to end the current search early ('stop'). */
+    private volatile boolean stopRequested;
+    /** True while the current search is a ponder search, until 'ponderhit' turns it into a normal one. */
+    private volatile boolean pondering;
+    /** Start of the search time, from {@link System#currentTimeMillis()}; a ponder hit starts it again. */
+    private volatile long searchStart;
+
+    /**
+     * Behaviour of the fake engine.
+     *
+     * @param latencyMillis Delay before answering any command, to simulate a slow pipe.
+     * @param searchMillis  Duration of a search, or -1 to honour 'movetime' (and search 0 ms otherwise).
+     * @param infoLines     Number of 'info' lines written per search.
+     * @param score         Score reported in centipawns, from the side to move's view.
+     * @param script        Best moves to play in order, in UCI (lan) format.
+     */
+    public record Settings(int latencyMillis, int searchMillis, int infoLines, int score, List<String> script) {
+
+        /** Answers at once, honours movetime, writes ten info lines and plays the first legal moves. */
+        public static Settings defaults() {
+            return new Settings(0, -1, 10, 0, List.of());
+        }
+
+        /**
+         * Parses command line arguments: --latency=ms --search=ms --info=n --score=cp --moves=e2e4,e7e5.
+         *
+         * @param args The arguments.
+         * @return The settings.
+         */
+        public static Settings parse(final String... args) {
+            Settings settings = defaults();
+            for (final String arg : args) {
+                final String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--latency=")) {
+                    settings = new Settings(Integer.parseInt(value), settings.searchMillis, settings.infoLines,
+                        settings.score, settings.script);
+                } else if (arg.startsWith("--search=")) {
+                    settings = new Settings(settings.latencyMillis, Integer.parseInt(value), settings.infoLines,
+                        settings.score, settings.script);
+                } else if (arg.startsWith("--info=")) {
+                    settings = new Settings(settings.latencyMillis, settings.searchMillis, Integer.parseInt(value),
+                        settings.score, settings.script);
+                } else if (arg.startsWith("--score=")) {
+                    settings = new Settings(settings.latencyMillis, settings.searchMillis, settings.infoLines,
+                        Integer.parseInt(value), settings.script);
+                } else if (arg.startsWith("--moves=")) {
+                    settings = new Settings(settings.latencyMillis, settings.searchMillis, settings.infoLines,
+                        settings.score, Arrays.asList(value.split(",")));
+                } else {
+                    throw new IllegalArgumentException("Argumento no válido: " + arg);
+                }
+            }
+            return settings;
+        }
+    }
+
+    /**
+     * Creates an engine over the given streams.
+     *
+     * @param in       The engine stdin.
+     * @param out      The engine stdout.
+     * @param settings Scripted behaviour.
+     */
+    public FakeEngine(final InputStream in, final OutputStream out, final Settings settings) {
+        this.input = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.output = new PrintWriter(out, true, StandardCharsets.UTF_8);
+        this.settings = settings;
+        board.loadFromFen(START_FEN);
+    }
+
+    /**
+     * Runs the engine as a process, over stdin and stdout.
+     *
+     * @param args The settings, see {@link Settings#parse(String...)}.
+     */
+    public static void main(final String... args) {
+        new FakeEngine(System.in, System.out, Settings.parse(args)).run();
+    }
+
+    /**
+     * Command line to run the fake engine in its own process, with the current class path.
+     *
+     * @param args The settings, see {@link Settings#parse(String...)}.
+     * @return The command, for {@link Stockfish#startEngine(List)}.
+     */
+    public static List<String> command(final String... args) {
+        final List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(FakeEngine.class.getName());
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    /**
+     * Starts a fake engine in-process, on a virtual thread, connected to a client through pipes.
+     *
+     * @param settings Scripted behaviour.
+     * @return The client, already past the 'uci' handshake.
+     * @throws IOException If the pipes cannot be opened.
+     */
+    public static Stockfish start(final Settings settings) throws IOException {
+        final Pipe toEngine = Pipe.open();
+        final Pipe fromEngine = Pipe.open();
+        final FakeEngine engine = new FakeEngine(Channels.newInputStream(toEngine.source()),
+            Channels.newOutputStream(fromEngine.sink()), settings);
+        Thread.ofVirtual().name("fake-engine").start(engine);
+        final Stockfish client = new Stockfish();
+        client.connect(Channels.newInputStream(fromEngine.source()), Channels.newOutputStream(toEngine.sink()));
+        if (!client.handshake()) {
+            client.stopEngine();
+            throw new IOException("Fake engine did not answer 'uciok'");
+        }
+        return client;
+    }
+
+    /**
+     * Starts a fake engine in-process, for engine factories such as the one of {@link EnginePool}.
+     *
+     * @param settings Scripted behaviour.
+     * @return The client, already past the 'uci' handshake.
+     * @throws UncheckedIOException If the pipes cannot be opened.
+     */
+    public static Stockfish startUnchecked(final Settings settings) {
+        try {
+            return start(settings);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            String line;
+            while ((line = input.readLine()) != null) { // NOPMD AssignmentInOperand
+                pause(settings.latencyMillis);
+                if (!execute(line.trim())) {
+                    break;
+                }
+            }
+        } catch (final IOException e) {
+            log.debug("Fake engine input closed: {}", e.getMessage());
+        } finally {
+            stopSearch();
+            output.close();
+        }
+    }
+
+    /**
+     * Executes one command.
+     *
+     * @return false on 'quit'.
+     */
+    private boolean execute(final String line) {
+        final String[] tokens = line.split("\\s+");
+        switch (tokens[0]) {
+            case "uci" -> {
+                output.println("id name FakeEngine");
+                output.println("id author stockfish-client");
+                output.println("option name Threads type spin default 1 min 1 max 1024");
+                output.println("option name Hash type spin default 16 min 1 max 33554432");
+                output.println("option name MultiPV type spin default 1 min 1 max 256");
+                output.println("option name Ponder type check default false");
+                output.println("uciok");
+            }
+            case "isready" -> output.println("readyok");
+            case "ucinewgame" -> scriptIndex = 0;
+            case "position" -> position(tokens);
+            case "go" -> go(tokens);
+            case "stop" -> stopSearch();
+            case "ponderhit" -> {
+                searchStart = System.currentTimeMillis();
+                pondering = false;
+            }
+            case "setoption" -> setOption(tokens);
+            case "d" -> display();
+            case "quit" -> {
+                return false; // NOPMD OnlyOneReturn
+            }
+            default -> {
+                // Unknown commands are ignored, like a real engine does
+            }
+        }
+        return true;
+    }
+
+    /** Honours 'MultiPV'; other options are accepted but ignored. */
+    private void setOption(final String... tokens) {
+        if (tokens.length == 5 && "MultiPV".equals(tokens[2]) && "value".equals(tokens[3])) {
+            multiPv = Math.max(1, Integer.parseInt(tokens[4]));
+        }
+    }
+
+    private void position(final String... tokens) {
+        int i = 1;
+        if (tokens.length > 1 && "startpos".equals(tokens[1])) {
+            board.loadFromFen(START_FEN);
+            i = 2;
+        } else if (tokens.length > 1 && "fen".equals(tokens[1])) {
+            final StringBuilder fen = new StringBuilder();
+            for (i = 2; i < tokens.length && !"moves".equals(tokens[i]); i++) {
+                fen.append(tokens[i]).append(' ');
+            }
+            board.loadFromFen(fen.toString().trim());
+        }
+        if (i < tokens.length && "moves".equals(tokens[i])) {
+            for (i++; i < tokens.length; i++) {
+                board.doMove(tokens[i]);
+            }
+        }
+    }
+
+    private void go(final String... tokens) {
+        stopSearch();
+        int movetime = 0;
+        boolean infinite = false;
+        boolean ponderSearch = false;
+        for (int i = 1; i < tokens.length; i++) {
+            switch (tokens[i]) {
+                case "perft" -> {
+                    perft(Integer.parseInt(tokens[i + 1]));
+                    return;
+                }
+                case "movetime" -> movetime = Integer.parseInt(tokens[++i]);
+                case "infinite" -> infinite = true;
+                case "ponder" -> ponderSearch = true;
+                default -> {
+                    // Other limits are accepted but not honoured
+                }
+            }
+        }
+        final long duration = settings.searchMillis >= 0 ? settings.searchMillis : movetime;
+        final boolean untilStopped = infinite;
+        final String bestMove = nextBestMove();
+        final String ponder = ponderMove(bestMove);
+        stopRequested = false;
+        pondering = ponderSearch;
+        searchStart = System.currentTimeMillis();
+        search = Thread.ofVirtual().name("fake-search").start(() -> search(duration, untilStopped, bestMove, ponder));
+    }
+
+    private void search(final long duration, final boolean untilStopped, final String bestMove, final String ponder) {
+        final int lines = settings.infoLines;
+        for (int depth = 1; depth <= lines && !stopRequested; depth++) {
+            // Lines after the first repeat the best move, 10 cp worse each
+            for (int line = 1; line <= multiPv; line++) {
+                output.println("info depth " + depth + " seldepth " + (depth + 2) + " multipv " + line + " score cp "
+                    + (settings.score - 10 * (line - 1)) + " nodes " + depth * 1_000
+                    + " nps 1000000 hashfull 0 tbhits 0 time " + depth + " pv " + bestMove
+                    + (ponder == null ? "" : " " + ponder));
+            }
+            pause(lines == 0 ? 0 : duration / lines);
+        }
+        // A ponder search goes on until 'stop', or until 'ponderhit' and then the time of a normal search
+        while (!stopRequested && (untilStopped || pondering || System.currentTimeMillis() - searchStart < duration)) {
+            pause(1);
+        }
+        output.println("bestmove " + bestMove + (ponder == null ? "" : " ponder " + ponder));
+    }
+
+    private String nextBestMove() {
+        final String move;
+        if (scriptIndex < settings.script.size()) {
+            move = settings.script.get(scriptIndex++);
+        } else {
+            final List<Move> legal = board.legalMoves();
+            move = legal.isEmpty() ? "(none)" : legal.get(0).toString();
+        }
+        return move;
+    }
+
+    private String ponderMove(final String bestMove) {
+        String ponder = null;
+        if (!"(none)".equals(bestMove) && board.doMove(bestMove)) {
+            final List<Move> replies = board.legalMoves();
+            if (!replies.isEmpty()) {
+                ponder = replies.get(0).toString();
+            }
+            board.undoMove();
+        }
+        return ponder;
+    }
+
+    private void stopSearch() {
+        final Thread running = search;
+        if (running != null) {
+            stopRequested = true;
+            try {
+                running.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            search = null;
+        }
+    }
+
+    private void perft(final int depth) {
+        long total = 0;
+        for (final Move move : board.legalMoves()) {
+            board.doMove(move);
+            final long nodes = depth > 1 ? count(depth - 1) : 1;
+            board.undoMove();
+            output.println(move + ": " + nodes);
+            total += nodes;
+        }
+        output.println();
+        output.println("Nodes searched: " + total);
+        output.println();
+    }
+
+    private long count(final int depth) {
+        long nodes = 0;
+        for (final Move move : board.legalMoves()) {
+            if (depth == 1) {
+                nodes++;
+            } else {
+                board.doMove(move);
+                nodes += count(depth - 1);
+                board.undoMove();
+            }
+        }
+        return nodes;
+    }
+
+    private void display() {
+        final String fen = board.getFen();
+        output.println();
+        output.println(" +---+---+---+---+---+---+---+---+");
+        int rank = 8;
+        for (final String row : fen.split(" ")[0].split("/")) {
+            final StringBuilder line = new StringBuilder(" |");
+            for (final char square : row.toCharArray()) {
+                if (Character.isDigit(square)) {
+                    line.append("   |".repeat(square - '0'));
+                } else {
+                    line.append(' ').append(square).append(" |");
+                }
+            }
+            output.println(line.append(' ').append(rank--));
+            output.println(" +---+---+---+---+---+---+---+---+");
+        }
+        output.println("   a   b   c   d   e   f   g   h");
+        output.println();
+        output.println("Fen: " + fen);
+        output.println("Key: " + Long.toHexString(board.getIncrementalHashKey()).toUpperCase());
+        output.println("Checkers: ");
+    }
+
+    private static void pause(final long millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GameArchiveTest {
+    private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String ENDGAME = "8/8/4k3/8/8/4K3/4P3/8 w - - 0 60";
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    void appendsAndReadsGamesByIndex() throws IOException {
+        final Path file = dir.resolve("games.sfga");
+        final GameRecord first = GameRecord.of(START, GameResult.DRAW, 7, List.of("e2e4", "e7e5", "g1f3"),
+            new short[] {30, -25, GameRecord.NO_SCORE});
+        final GameRecord second = GameRecord.of(ENDGAME, GameResult.WHITE_WINS, 7, List.of("e3d4", "e6d6", "e2e4"),
+            null);
+        final GameRecord third = GameRecord.of(START, GameResult.BLACK_WINS, 9, List.of("f2f3"), null);
+        try (GameArchiveWriter writer = new GameArchiveWriter(file)) {
+            writer.append(first);
+            writer.append(second);
+        }
+        // Reopened for appending: the FEN table is reused
+        try (GameArchiveWriter writer = new GameArchiveWriter(file)) {
+            writer.append(third);
+        }
+        assertEquals(2, Files.readAllLines(GameArchiveWriter.sibling(file, GameArchiveWriter.FENS)).size());
+
+        try (GameArchiveReader reader = new GameArchiveReader(file)) {
+            assertEquals(3, reader.size());
+            final GameRecord read = reader.get(0);
+            assertEquals(START, read.fen());
+            assertEquals(GameResult.DRAW, read.result());
+            assertEquals(7, read.configId());
+            assertEquals(List.of("e2e4", "e7e5", "g1f3"), read.lanMoves());
+            assertArrayEquals(first.scores(), read.scores());
+            assertEquals(ENDGAME, reader.get(1).fen());
+            assertNull(reader.get(1).scores());
+            assertEquals(List.of("f2f3"), reader.get(2).lanMoves());
+            assertEquals(9, reader.get(2).configId());
+        }
+        // 8 bytes of file header, then 12 bytes per game plus 2 or 4 per ply
+        assertEquals(8 + 12 + 3 * 4 + 12 + 3 * 2 + 12 + 2, Files.size(file));
+    }
+
+    @Test
+    void mateScoresArePacked() {
+        assertEquals(GameRecord.MATE - 3,
+            GameRecord.score(new AnalysisResult("a1a2", null, 20, 3, true, 100, List.of())));
+        assertEquals(-GameRecord.MATE + 2,
+            GameRecord.score(new AnalysisResult("a1a2", null, 20, -2, true, 100, List.of())));
+        assertEquals(30_000, GameRecord.score(new AnalysisResult("a1a2", null, 20, 45_000, false, 100, List.of())));
+        assertEquals(GameRecord.NO_SCORE, GameRecord.score(new AnalysisResult("a1a2", null, 0, 0, false, 0,
+            List.of())));
+    }
+
+    @Test
+    void convertsToAndFromPgn() {
+        final GameRecord game = GameRecord.of(START, GameResult.WHITE_WINS, 1,
+            List.of("e2e4", "e7e5", "f1c4", "b8c6", "d1h5", "g8f6", "h5f7"),
+            new short[] {20, -30, 25, -40, 50, -300, (short) (GameRecord.MATE - 1)});
+        final String pgn = game.toPgn();
+        assertEquals("[Result \"1-0\"]\n[SetUp \"1\"]\n[FEN \"" + START + "\"]\n\n"
+            + "1. e4 {+0.20} e5 {-0.30} 2. Bc4 {+0.25} Nc6 {-0.40} 3. Qh5 {+0.50} Nf6 {-3.00} 4. Qxf7# {#1} 1-0\n",
+            pgn);
+        final GameRecord back = GameRecord.fromPgn(pgn, 1);
+        assertEquals(game.lanMoves(), back.lanMoves());
+        assertArrayEquals(game.scores(), back.scores());
+        assertEquals(GameResult.WHITE_WINS, back.result());
+    }
+
+    @Test
+    void fromPgnSkipsTagsWithoutAQuotedValue() {
+        final GameRecord game = GameRecord.fromPgn("[Event ?]\n[Site \"]\n[Result \"0-1\"]\n\n0-1\n", 1);
+        assertEquals(GameResult.BLACK_WINS, game.result());
+        assertEquals(List.of(), game.lanMoves());
+    }
+
+}
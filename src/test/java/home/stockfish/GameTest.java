@@ -0,0 +1,87 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class GameTest {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static Game play(final String fen, final List<String> script) throws IOException {
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 0, 1, 0, script);
+        try (Stockfish engine = FakeEngine.start(settings)) {
+            final Game game = new Game(engine, fen, 10);
+            game.play();
+            return game;
+        }
+    }
+
+    @Test
+    void drawByThreefoldRepetition() throws IOException {
+        // The knights go out and back twice: the initial position is seen for the third time after 8 plies
+        final List<String> moves = List.of("g1f3", "g8f6", "f3g1", "f6g8", "g1f3", "g8f6", "f3g1", "f6g8");
+        final Game game = play(START_FEN, moves);
+        assertEquals(GameResult.DRAW, game.getResult());
+        assertEquals("3-fold repetition", game.getTermination());
+        assertEquals(moves, game.getMoves());
+    }
+
+    @Test
+    void drawByFiftyMoveRule() throws IOException {
+        final Game game = play("4k3/8/8/8/8/8/8/R3K3 w - - 99 80", List.of("a1a2"));
+        assertEquals(GameResult.DRAW, game.getResult());
+        assertEquals("50-move rule", game.getTermination());
+        assertEquals(List.of("a1a2"), game.getMoves());
+    }
+
+    @Test
+    void drawByInsufficientMaterialFromTheStart() throws IOException {
+        // The clock is not zero, but the initial position is already a draw
+        final Game game = play("8/8/4k3/8/8/4K3/8/8 w - - 5 40", List.of());
+        assertEquals(GameResult.DRAW, game.getResult());
+        assertEquals("insufficient material", game.getTermination());
+        assertEquals(List.of(), game.getMoves());
+    }
+
+    @Test
+    void gameEndsWithResult() throws IOException {
+        // Fool's mate, then the engine has no moves for White
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 0, 1, 0,
+            List.of("f2f3", "e7e5", "g2g4", "d8h4"));
+        try (Stockfish engine = FakeEngine.start(settings)) {
+            final Game game = new Game(engine, START_FEN, 10);
+            assertEquals(GameResult.BLACK_WINS, game.play());
+            assertEquals(List.of("f2f3", "e7e5", "g2g4", "d8h4"), game.getMoves());
+            assertEquals("checkmate", game.getTermination());
+        }
+    }
+
+    @Test
+    void ponderingDoesNotChangeTheGame() throws IOException {
+        // Without a script the fake engine plays, and expects, the first legal move: every ponder search is hit
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 1, 1, 0, List.of());
+        final List<String> alone;
+        try (Stockfish engine = FakeEngine.start(settings)) {
+            final Game game = new Game(engine, START_FEN, 10);
+            game.play();
+            alone = game.getMoves();
+        }
+        Metrics.reset();
+        Metrics.setEnabled(true);
+        try (Stockfish white = FakeEngine.start(settings); Stockfish black = FakeEngine.start(settings)) {
+            final Game game = new Game(white, black, START_FEN, 10);
+            game.setPonder(true);
+            game.play();
+            assertEquals(alone, game.getMoves());
+            // Every move after the first was a hit, whose search went on to give the next move
+            assertEquals(alone.size() - 1, Metrics.count("ponder_hits_total", ""));
+        } finally {
+            Metrics.setEnabled(false);
+            Metrics.reset();
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package home.stockfish;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+
+    @AfterEach
+    void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    void nothingIsRecordedWhenDisabled() {
+        Metrics.record("engine_nodes", "", 1_000);
+        Metrics.increment("timeouts_total", "where=\"read\"");
+        assertNull(Metrics.histogram("engine_nodes", ""));
+        assertEquals(0, Metrics.count("timeouts_total", "where=\"read\""));
+    }
+
+    @Test
+    void exportsPowerOfTwoBuckets() {
+        Metrics.setEnabled(true);
+        Metrics.record("search_overshoot_milliseconds", "", 0);
+        Metrics.record("search_overshoot_milliseconds", "", 3);
+        Metrics.record("search_overshoot_milliseconds", "", 4);
+        Metrics.record("search_overshoot_milliseconds", "", 100);
+        Metrics.increment("engine_restarts_total", "");
+        assertEquals(4, Metrics.histogram("search_overshoot_milliseconds", "").percentile(0.5));
+        assertEquals(128, Metrics.histogram("search_overshoot_milliseconds", "").percentile(0.99));
+        final String text = Metrics.toPrometheus();
+        assertTrue(text.contains("# TYPE stockfish_engine_restarts_total counter\nstockfish_engine_restarts_total 1\n"),
+            text);
+        assertTrue(text.contains("stockfish_search_overshoot_milliseconds_bucket{le=\"1\"} 1\n"), text);
+        assertTrue(text.contains("stockfish_search_overshoot_milliseconds_bucket{le=\"4\"} 3\n"), text);
+        assertTrue(text.contains("stockfish_search_overshoot_milliseconds_bucket{le=\"+Inf\"} 4\n"
+            + "stockfish_search_overshoot_milliseconds_sum 107\nstockfish_search_overshoot_milliseconds_count 4\n"),
+            text);
+        assertTrue(Metrics.toJson().contains("\"search_overshoot_milliseconds\":{\"count\":4,\"sum\":107,\"p50\":4,"));
+    }
+
+    @Test
+    void searchesRecordRoundTripAndEngineSpeed() throws IOException {
+        Metrics.setEnabled(true);
+        final PipedOutputStream output = new PipedOutputStream();
+        try (Stockfish engine = new Stockfish()) {
+            engine.connect(new PipedInputStream(output, 8_192), new ByteArrayOutputStream());
+            final CompletableFuture<AnalysisResult> search = engine.search(SearchLimits.depth(5), null, UciParser.INFO);
+            output.write("info depth 5 score cp 20 nodes 5000 nps 250000 pv e2e4\nbestmove e2e4\n".getBytes(UTF_8));
+            output.flush();
+            engine.awaitSearch(search, 1_000);
+        }
+        assertEquals(1, Metrics.histogram("uci_roundtrip_microseconds", "command=\"go\"").getCount());
+        assertEquals(262_144, Metrics.histogram("engine_nps", "").percentile(0.5));
+        assertEquals(1, Metrics.histogram("ply_overhead_nanoseconds", "phase=\"parse\"").getCount());
+    }
+
+}
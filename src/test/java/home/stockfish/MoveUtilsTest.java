@@ -5,6 +5,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 
 import com.github.bhlangonijr.chesslib.Board;
@@ -189,4 +191,79 @@ class MoveUtilsTest {
         assertTrue(ex.getMessage().contains("lan"));
     }
 
+    @Test
+    void lanToSanLeavesTheBoardUnchanged() {
+        final Chessboard chessboard = setup();
+        final String fen = myBoard.getFen();
+        MoveUtils.lanToSan(myBoard, chessboard, "e5f6");
+        assertEquals(fen, myBoard.getFen());
+    }
+
+    @Test
+    void toSanEnPassant() {
+        setup();
+        assertEquals("exf6", MoveUtils.toSan(myBoard, "e5f6"));
+    }
+
+    @Test
+    void validateToSan_throwsIfBoardIsNull() {
+        Exception ex = assertThrows(IllegalArgumentException.class, () ->
+            MoveUtils.toSan(null, "e2e4")
+        );
+        assertTrue(ex.getMessage().contains("board"));
+    }
+
+    @Test
+    void validateToSan_throwsIfLanIsEmpty() {
+        Board board = new Board();
+        Exception ex = assertThrows(IllegalArgumentException.class, () ->
+            MoveUtils.toSan(board, "")
+        );
+        assertTrue(ex.getMessage().contains("lan"));
+    }
+
+    private static String toSan(final String fen, final String lan) {
+        final Board board = new Board();
+        board.loadFromFen(fen);
+        return MoveUtils.toSan(board, lan);
+    }
+
+    @Test
+    void toSanCastlingFromLan() {
+        assertEquals("O-O", toSan("r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4", "e1g1"));
+    }
+
+    @Test
+    void toSanDisambiguatesByFile() {
+        assertEquals("Nbd2", toSan("rnbqkbnr/pppppppp/8/8/8/5N2/PPP1PPPP/RNBQKB1R w KQkq - 0 1", "b1d2"));
+    }
+
+    @Test
+    void toSanDisambiguatesByRank() {
+        assertEquals("R1a3", toSan("4k3/8/8/R7/8/8/8/R3K3 w - - 0 1", "a1a3"));
+    }
+
+    @Test
+    void toSanIgnoresPinnedPiece() {
+        // The knight on e2 is pinned by the rook on e8, so only the c2 knight can go to d4
+        assertEquals("Nd4", toSan("4r1k1/8/8/8/8/8/2N1N3/4K3 w - - 0 1", "c2d4"));
+    }
+
+    @Test
+    void toSanMate() {
+        assertEquals("Qh4#", toSan("rnbqkbnr/pppp1ppp/8/4p3/6P1/5P2/PPPPP2P/RNBQKBNR b KQkq - 0 2", "d8h4"));
+    }
+
+    @Test
+    void toSanPromotionWithCheck() {
+        assertEquals("a8=Q+", toSan("7k/P7/8/8/8/8/8/K7 w - - 0 1", "a7a8q"));
+    }
+
+    @Test
+    void toSanWholeGame() {
+        final String startFen = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+        assertEquals(List.of("e4", "d5", "e5", "f5", "exf6"),
+            MoveUtils.toSan(startFen, List.of("e2e4", "d7d5", "e4e5", "f7f5", "e5f6")));
+    }
+
 }
\ No newline at end of file
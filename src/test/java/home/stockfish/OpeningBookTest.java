@@ -0,0 +1,139 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OpeningBookTest {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String CASTLING_FEN = "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1";
+    /** Not the Polyglot numbers, which are not bundled: keys differ from real books but the layout is the same. */
+    private static final long[] RANDOMS = new SplittableRandom(42).longs(OpeningBook.RANDOMS).toArray();
+    /** Keys published with the Polyglot book format, by position. */
+    private static final Map<String, Long> PUBLISHED_KEYS = Map.of(
+        START_FEN, 0x463B96181691FC9CL,
+        // e2e4, then d7d5: no pawn can take en passant
+        "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", 0x823C9B50FD114196L,
+        "rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2", 0x0756B94461C50FB0L,
+        "rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2", 0x662FAFB965DB29D4L,
+        // f7f5: e5 can take en passant
+        "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3", 0x22A48B5A8E47FF78L,
+        // The kings move and lose their castling rights
+        "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 3", 0x652A607CA3F242C1L,
+        "rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4", 0x00FDD303C946BDD9L,
+        // a2a4 b7b5 h2h4 b5b4 c2c4, then b4c3 a1a3: the rook loses the queen side
+        "rnbqkbnr/p1pppppp/8/8/PpP4P/8/1P1PPPP1/RNBQKBNR b KQkq c3 0 3", 0x3C8123EA7B067637L,
+        "rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4", 0x5C3F9B829B279560L);
+
+    @TempDir
+    private Path dir;
+
+    /** A Polyglot move: to file, to rank, from file, from rank and promotion, 3 bits each. */
+    private static short move(final int fromFile, final int fromRank, final int toFile, final int toRank) {
+        return (short) (toFile | toRank << 3 | fromFile << 6 | fromRank << 9);
+    }
+
+    private Path book() throws IOException {
+        // Entries sorted by unsigned key, as in the real books
+        final TreeMap<Long, List<short[]>> entries = new TreeMap<>(Long::compareUnsigned);
+        entries.put(OpeningBook.key(RANDOMS, START_FEN),
+            List.of(new short[] {move(3, 1, 3, 3), 30}, new short[] {move(4, 1, 4, 3), 10}));
+        // Castling short is stored as the king taking its rook, e1h1
+        entries.put(OpeningBook.key(RANDOMS, CASTLING_FEN), List.<short[]>of(new short[] {move(4, 0, 7, 0), 1}));
+        final ByteBuffer buffer = ByteBuffer.allocate(3 * OpeningBook.ENTRY);
+        entries.forEach((key, moves) -> moves.forEach(entry -> buffer.putLong(key).putShort(entry[0])
+            .putShort(entry[1]).putInt(0)));
+        final Path file = dir.resolve("book.bin");
+        Files.write(file, buffer.array());
+        return file;
+    }
+
+    @Test
+    void findsTheMovesOfAPosition() throws IOException {
+        try (OpeningBook book = new OpeningBook(book(), RANDOMS, 16, true)) {
+            assertEquals(List.of(new OpeningBook.Entry("d2d4", 30), new OpeningBook.Entry("e2e4", 10)),
+                book.entries(START_FEN));
+            assertEquals(List.of(new OpeningBook.Entry("e1g1", 1)), book.entries(CASTLING_FEN));
+            assertEquals(List.of(), book.entries("4k3/8/8/8/8/8/8/4K3 w - - 0 1"));
+            // The best weight always wins, up to the maximum depth
+            assertEquals("d2d4", book.move(START_FEN, 0));
+            assertEquals("d2d4", book.move(START_FEN, 15));
+            assertNull(book.move(START_FEN, 16));
+            assertNull(book.move("4k3/8/8/8/8/8/8/4K3 w - - 0 1", 0));
+        }
+    }
+
+    @Test
+    void choosesByWeight() {
+        final List<OpeningBook.Entry> moves = List.of(new OpeningBook.Entry("d2d4", 3),
+            new OpeningBook.Entry("e2e4", 1), new OpeningBook.Entry("a2a3", 0));
+        final SplittableRandom random = new SplittableRandom(7);
+        final Set<String> chosen = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            chosen.add(OpeningBook.choose(moves, false, random));
+        }
+        assertEquals(Set.of("d2d4", "e2e4"), chosen);
+        assertEquals("d2d4", OpeningBook.choose(moves, true, random));
+        assertNull(OpeningBook.choose(List.of(new OpeningBook.Entry("a2a3", 0)), false, random));
+    }
+
+    @Test
+    void enPassantOnlyCountsIfACaptureIsPossible() {
+        final String noCapture = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1";
+        assertEquals(OpeningBook.key(RANDOMS, noCapture.replace("e3", "-")), OpeningBook.key(RANDOMS, noCapture));
+        final String capture = "rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 3";
+        assertNotEquals(OpeningBook.key(RANDOMS, capture.replace("e3", "-")), OpeningBook.key(RANDOMS, capture));
+    }
+
+    @Test
+    void followsThePolyglotLayout() {
+        // Piece kind (black pawn 0, white pawn 1... white king 11) * 64 + rank * 8 + file
+        final String e4 = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1";
+        assertEquals(RANDOMS[64 + 12] ^ RANDOMS[64 + 28] ^ RANDOMS[780],
+            OpeningBook.key(RANDOMS, START_FEN) ^ OpeningBook.key(RANDOMS, e4));
+        // Castling rights K, Q, k and q, then the en passant files
+        final String[] rights = {"Qkq", "Kkq", "KQq", "KQk"};
+        for (int right = 0; right < rights.length; right++) {
+            assertEquals(RANDOMS[768 + right], OpeningBook.key(RANDOMS, START_FEN)
+                ^ OpeningBook.key(RANDOMS, START_FEN.replace("KQkq", rights[right])));
+        }
+        final String f6 = "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3";
+        assertEquals(RANDOMS[772 + 5], OpeningBook.key(RANDOMS, f6) ^ OpeningBook.key(RANDOMS, f6.replace("f6", "-")));
+    }
+
+    @Test
+    void matchesThePublishedKeys() throws IOException {
+        final long[] randoms = OpeningBook.readRandoms();
+        PUBLISHED_KEYS.forEach((fen, key) -> assertEquals(key.longValue(), OpeningBook.key(randoms, fen), fen));
+    }
+
+    @Test
+    void rejectsOtherRandomNumbers() throws IOException {
+        final Path file = dir.resolve("random64.txt");
+        final StringBuilder text = new StringBuilder();
+        for (final long random : RANDOMS) {
+            text.append(String.format("0x%016X,%n", random));
+        }
+        Files.writeString(file, text);
+        // The numbers are read, but they do not give the Polyglot key of the initial position
+        final IOException e = assertThrows(IOException.class, () -> OpeningBook.readRandoms(file));
+        assertTrue(e.getMessage().startsWith("Not the Polyglot random numbers"));
+    }
+
+}
@@ -0,0 +1,31 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class PositionCommandTest {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    @Test
+    void appendsMoves() {
+        final PositionCommand command = new PositionCommand(START_FEN);
+        assertEquals("position fen " + START_FEN + " moves", command.toString());
+        command.add("e2e4");
+        command.add("e7e5");
+        assertEquals("position fen " + START_FEN + " moves e2e4 e7e5", command.toString());
+        assertEquals(2, command.plies());
+    }
+
+    @Test
+    void rerootDropsMoves() {
+        final PositionCommand command = new PositionCommand(START_FEN);
+        command.add("e2e4");
+        final String fen = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1";
+        command.reroot(fen);
+        command.add("c7c5");
+        assertEquals("position fen " + fen + " moves c7c5", command.toString());
+        assertEquals(1, command.plies());
+    }
+
+}
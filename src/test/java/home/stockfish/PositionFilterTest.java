@@ -0,0 +1,46 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class PositionFilterTest {
+
+    @Test
+    void neverForgetsAPosition() {
+        final PositionFilter filter = new PositionFilter(10_000, 0.01);
+        final long[] hashes = new SplittableRandom(3).longs(10_000).toArray();
+        int added = 0;
+        for (final long hash : hashes) {
+            added += filter.add(hash) ? 1 : 0;
+        }
+        for (final long hash : hashes) {
+            assertFalse(filter.add(hash));
+        }
+        assertEquals(added, filter.size());
+        // At full size about 1% of the new positions are taken for seen ones
+        assertTrue(added > 9_800, "added " + added);
+    }
+
+    @Test
+    void keepsTheFalsePositiveRate() {
+        final PositionFilter filter = new PositionFilter(10_000, 0.01);
+        final SplittableRandom random = new SplittableRandom(5);
+        for (int i = 0; i < 5_000; i++) {
+            filter.add(random.nextLong());
+        }
+        int seen = 0;
+        for (int i = 0; i < 5_000; i++) {
+            seen += filter.add(random.nextLong()) ? 0 : 1;
+        }
+        // Below 1% until the filter holds the positions it was sized for
+        assertTrue(seen < 50, "false positives " + seen);
+        assertThrows(IllegalArgumentException.class, () -> new PositionFilter(0, 0.01));
+    }
+
+}
@@ -0,0 +1,47 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class RepetitionTableTest {
+
+    @Test
+    void countsRepeatedKeys() {
+        final RepetitionTable table = new RepetitionTable();
+        assertEquals(1, table.add(0x1234L, false));
+        assertEquals(1, table.add(0x5678L, false));
+        assertEquals(2, table.add(0x1234L, false));
+        assertEquals(1, table.add(0x9ABCL, false));
+        assertEquals(3, table.add(0x1234L, false));
+        assertEquals(1, table.count(0x5678L));
+    }
+
+    @Test
+    void irreversibleMoveForgetsEarlierPositions() {
+        final RepetitionTable table = new RepetitionTable();
+        table.add(1L, false);
+        table.add(2L, false);
+        assertEquals(2, table.add(1L, false));
+        assertEquals(1, table.add(3L, true));
+        assertEquals(0, table.count(1L));
+        assertEquals(1, table.add(1L, false));
+    }
+
+    @Test
+    void growsAndClearsCollidingKeys() {
+        final RepetitionTable table = new RepetitionTable();
+        // Keys colliding on the low bits force long probe chains
+        for (long i = 0; i < 500; i++) {
+            assertEquals(1, table.add(i << 40, false));
+        }
+        for (long i = 0; i < 500; i++) {
+            assertEquals(2, table.add(i << 40, false));
+        }
+        table.clear();
+        for (long i = 0; i < 500; i++) {
+            assertEquals(0, table.count(i << 40));
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SelfPlayRunnerTest {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    @Test
+    void writesEveryGameAsPgn() {
+        // Fool's mate; the pool resets the engines, and so their scripts, between games
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, 0, 1, 0,
+            List.of("f2f3", "e7e5", "g2g4", "d8h4"));
+        final StringWriter pgn = new StringWriter();
+        try (EnginePool pool = new EnginePool(() -> FakeEngine.startUnchecked(settings), 2, 1, 16)) {
+            assertEquals(3, new SelfPlayRunner(pool, 10, pgn).run(List.of(START_FEN), 3));
+        }
+        final String text = pgn.toString();
+        assertEquals(3, text.split("\\[Result \"0-1\"]", -1).length - 1, text);
+        assertEquals(3, text.split("1\\. f3 e5 2\\. g4 Qh4# 0-1", -1).length - 1, text);
+        assertEquals(3, text.split("\\[FEN \"" + START_FEN + "\"]", -1).length - 1, text);
+    }
+
+}
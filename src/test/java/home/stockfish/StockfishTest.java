@@ -0,0 +1,143 @@
+package home.stockfish;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StockfishTest {
+    private final Stockfish client = new Stockfish();
+    private PipedOutputStream engine;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        engine = new PipedOutputStream();
+        client.connect(new PipedInputStream(engine, 8_192), new ByteArrayOutputStream());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        engine.close();
+        client.close();
+    }
+
+    private void engineWrites(final String text) throws IOException {
+        engine.write(text.getBytes(UTF_8));
+        engine.flush();
+    }
+
+    @Test
+    void readOutputStopsAtMarker() throws IOException {
+        engineWrites("id name Fake\nuciok\nreadyok\n");
+        assertEquals("id name Fake\nuciok\n", client.readOutput("uciok", 1_000));
+        assertEquals("readyok\n", client.readOutput("readyok", 1_000));
+    }
+
+    @Test
+    void readOutputTimesOutOnSilentEngine() throws IOException {
+        engineWrites("info depth 1\n");
+        final long start = System.currentTimeMillis();
+        final String output = client.readOutput("bestmove", 200);
+        final long elapsed = System.currentTimeMillis() - start;
+        assertEquals("info depth 1\n", output);
+        assertTrue(elapsed < 2_000, "readOutput blocked for " + elapsed + " ms");
+    }
+
+    @Test
+    void expectCompletesWhenMarkerArrives() throws Exception {
+        final CompletableFuture<String> bestMove = client.expect("bestmove", 1_000);
+        engineWrites("info depth 1 pv e2e4\nbestmove e2e4 ponder e7e5\n");
+        assertEquals("info depth 1 pv e2e4\nbestmove e2e4 ponder e7e5\n", bestMove.get());
+    }
+
+    @Test
+    void expectFailsAfterDeadline() {
+        final CompletableFuture<String> readyOk = client.expect("readyok", 100);
+        final ExecutionException e = assertThrows(ExecutionException.class, readyOk::get);
+        assertTrue(e.getCause() instanceof TimeoutException);
+    }
+
+    @Test
+    void expectationsAreServedInOrder() throws Exception {
+        final CompletableFuture<String> uciOk = client.expect("uciok", 1_000);
+        final CompletableFuture<String> readyOk = client.expect("readyok", 1_000);
+        engineWrites("uciok\nreadyok\n");
+        assertEquals("uciok\n", uciOk.get());
+        assertEquals("readyok\n", readyOk.get());
+    }
+
+    @Test
+    void searchParsesOutputWithoutQueueingInfoLines() throws Exception {
+        final int[] infoLines = new int[1];
+        final CompletableFuture<AnalysisResult> search = client.search(SearchLimits.depth(2), new UciListener() {
+            @Override
+            public void onInfo(final InfoFields info) {
+                infoLines[0]++;
+            }
+        }, UciParser.INFO | UciParser.BESTMOVE);
+        engineWrites("info string NNUE enabled\ninfo depth 1 score cp 20 nodes 20 pv e2e4\n"
+            + "info depth 2 score cp 35 nodes 60 pv d2d4 d7d5\nbestmove d2d4 ponder d7d5\nreadyok\n");
+        final AnalysisResult result = client.awaitSearch(search, 1_000);
+        assertEquals("d2d4", result.bestMove());
+        assertEquals("d7d5", result.ponder());
+        assertEquals(35, result.score());
+        assertEquals(List.of("d2d4", "d7d5"), result.pv());
+        assertEquals(2, infoLines[0]);
+        // Only the lines outside the search are left as text
+        assertEquals("info string NNUE enabled\nreadyok\n", client.readOutput("readyok", 1_000));
+    }
+
+    @Test
+    void handshakeIsOneRoundTrip() throws IOException {
+        engineWrites("id name Fake 1.0\nid author Someone\noption name Hash type spin default 16 min 1 max 33554432\n"
+            + "option name Skill Level type spin default 20 min 0 max 20\nuciok\nreadyok\n");
+        assertTrue(client.handshake());
+        final EngineInfo info = client.getEngineInfo();
+        assertEquals("Fake 1.0", info.name());
+        assertEquals(new EngineInfo.Option("Skill Level", "spin", "20"), info.options().get(1));
+        assertTrue(info.hasOption("hash"));
+    }
+
+    @Test
+    void ponderhitContinuesTheSearch() throws IOException {
+        // The fake engine honours movetime
+        final FakeEngine.Settings settings = new FakeEngine.Settings(0, -1, 1, 0, List.of("e2e4"));
+        try (Stockfish fake = FakeEngine.start(settings)) {
+            fake.sendCommand("position startpos");
+            final CompletableFuture<AnalysisResult> pondering = fake.ponder(SearchLimits.movetime(300), null,
+                UciParser.BESTMOVE);
+            pause(400);
+            // A ponder search has no time limit
+            assertFalse(pondering.isDone());
+            final long hit = System.currentTimeMillis();
+            fake.ponderHit();
+            assertEquals("e2e4", fake.awaitSearch(pondering, 5_000).bestMove());
+            // ... until the hit turns it into a normal search, which uses its movetime
+            final long elapsed = System.currentTimeMillis() - hit;
+            assertTrue(elapsed >= 250, "search ended " + elapsed + " ms after ponderhit");
+        }
+    }
+
+    private static void pause(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package home.stockfish;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TrainingDataWriterTest {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    /** Every position, files of 2 records. */
+    private static final TrainingDataWriter.Settings SETTINGS = new TrainingDataWriter.Settings(0, 500, 1, 2, 1000,
+        0.01);
+
+    @TempDir
+    private Path dir;
+
+    private static ByteBuffer record(final String fen) {
+        final ByteBuffer record = ByteBuffer.allocate(TrainingDataWriter.RECORD).order(ByteOrder.LITTLE_ENDIAN);
+        TrainingDataWriter.pack(fen, record);
+        return record.position(0);
+    }
+
+    @Test
+    void packsPositions() {
+        final ByteBuffer start = record(START_FEN);
+        assertEquals(0xFFFF_0000_0000_FFFFL, start.getLong(0));
+        // a1 rook and b1 knight, then ... a8 rook and b8 knight
+        assertEquals(0x24, start.get(8));
+        assertEquals((byte) 0x8A, start.get(8 + 12));
+        assertEquals(0b11110, start.get(24));
+        assertEquals(TrainingDataWriter.NO_EN_PASSANT, start.get(25));
+        assertEquals(1, start.getShort(28));
+        final ByteBuffer after = record("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b Kq e3 0 1");
+        assertEquals(0b10011, after.get(24));
+        assertEquals(20, after.get(25));
+        // The move counters are not part of the position
+        assertEquals(TrainingDataWriter.hash(record(START_FEN)),
+            TrainingDataWriter.hash(record(START_FEN.replace("0 1", "4 9"))));
+        assertNotEquals(TrainingDataWriter.hash(record(START_FEN)),
+            TrainingDataWriter.hash(record(START_FEN.replace(" w ", " b "))));
+    }
+
+    @Test
+    void dropsDuplicatesAndRotates() throws IOException {
+        final Path file = dir.resolve("train.bin");
+        try (TrainingDataWriter writer = new TrainingDataWriter(file, SETTINGS)) {
+            assertTrue(writer.write(record(START_FEN)));
+            assertFalse(writer.write(record(START_FEN.replace("0 1", "2 3"))));
+            assertTrue(writer.write(record("4k3/8/8/8/8/8/8/4K3 w - - 0 1")));
+            assertTrue(writer.write(record("4k3/8/8/8/8/8/8/4K3 b - - 0 1")));
+        }
+        assertEquals(2 * TrainingDataWriter.RECORD, Files.size(dir.resolve("train-0000.bin")));
+        assertEquals(TrainingDataWriter.RECORD, Files.size(dir.resolve("train-0001.bin")));
+        assertFalse(Files.exists(dir.resolve("train-0002.bin")));
+        // Existing files are kept
+        try (TrainingDataWriter writer = new TrainingDataWriter(file, SETTINGS)) {
+            assertTrue(writer.write(record(START_FEN)));
+        }
+        assertEquals(TrainingDataWriter.RECORD, Files.size(dir.resolve("train-0002.bin")));
+    }
+
+    @Test
+    void samplesQuietPositions() throws IOException {
+        final GameRecord game = GameRecord.of(START_FEN, GameResult.WHITE_WINS, 0,
+            List.of("e2e4", "e7e5", "g1f3", "b8c6", "f1b5", "a7a6", "b5c6", "d7c6"),
+            new short[] {30, -25, 40, -35, 45, 900, 50, -60});
+        try (TrainingDataWriter writer = new TrainingDataWriter(dir.resolve("train.bin"), SETTINGS)) {
+            // Both captures and the extreme score are left out, and the first position was already written
+            assertTrue(writer.write(record(START_FEN)));
+            assertEquals(4, writer.append(game));
+        }
+        final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(dir.resolve("train-0000.bin")))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        // Black to move after 1. e4, losing the game
+        final int second = TrainingDataWriter.RECORD;
+        assertEquals(-25, data.getShort(second + 30));
+        assertEquals(MoveCodec.encode("e7e5"), data.getShort(second + 32));
+        assertEquals(1, data.getShort(second + 34));
+        assertEquals(-1, data.get(second + 36));
+        assertEquals(2 * TrainingDataWriter.RECORD, Files.size(dir.resolve("train-0001.bin")));
+        assertEquals(TrainingDataWriter.RECORD, Files.size(dir.resolve("train-0002.bin")));
+    }
+
+}
@@ -0,0 +1,91 @@
+package home.stockfish;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class UciParserTest {
+    private final UciParser parser = new UciParser();
+
+    private static byte[] bytes(final String line) {
+        return line.getBytes(US_ASCII);
+    }
+
+    @Test
+    void pumpSplitsLines() throws IOException {
+        final String longLine = "info string " + "x".repeat(100_000);
+        final List<String> lines = new ArrayList<>();
+        parser.pump(new ByteArrayInputStream(bytes("uciok\r\n" + longLine + "\nreadyok")),
+            (bytes, offset, length) -> lines.add(UciParser.toString(bytes, offset, length)));
+        assertEquals(List.of("uciok", longLine, "readyok"), lines);
+    }
+
+    @Test
+    void kindLooksAtFirstTokens() {
+        final byte[] info = bytes("info depth 1 pv e2e4");
+        final byte[] string = bytes("info string NNUE enabled");
+        final byte[] bestMove = bytes("bestmove e2e4");
+        final byte[] other = bytes("readyok");
+        assertEquals(UciParser.INFO, parser.kind(info, 0, info.length));
+        assertEquals(UciParser.OTHER, parser.kind(string, 0, string.length));
+        assertEquals(UciParser.BESTMOVE, parser.kind(bestMove, 0, bestMove.length));
+        assertEquals(UciParser.OTHER, parser.kind(other, 0, other.length));
+    }
+
+    @Test
+    void parseInfoFillsFields() {
+        final byte[] line = bytes("xxinfo depth 24 seldepth 33 multipv 2 score mate -3 upperbound nodes 1234567 "
+            + "nps 987654 hashfull 120 tbhits 0 time 1250 pv e7e8q d8e8 yy");
+        final InfoFields info = parser.parseInfo(line, 2, line.length - 5);
+        assertEquals(24, info.depth);
+        assertEquals(33, info.seldepth);
+        assertEquals(2, info.multipv);
+        assertTrue(info.hasScore);
+        assertTrue(info.mate);
+        assertEquals(-3, info.score);
+        assertEquals(InfoFields.UPPERBOUND, info.bound);
+        assertEquals(1_234_567, info.nodes);
+        assertEquals(987_654, info.nps);
+        assertEquals(1250, info.time);
+        assertEquals(2, info.pvLength);
+        assertEquals("e7e8q", MoveCodec.toLan(info.pv[0]));
+        assertEquals("d8e8", MoveCodec.toLan(info.pv[1]));
+
+        final byte[] currMove = bytes("info depth 5 currmove e2e4 currmovenumber 1");
+        assertFalse(parser.parseInfo(currMove, 0, currMove.length).hasScore);
+        assertEquals(0, parser.info().pvLength);
+    }
+
+    @Test
+    void parseBestMove() {
+        final byte[] line = bytes("bestmove g1f3 ponder g8f6");
+        parser.parseBestMove(line, 0, line.length);
+        assertEquals("g1f3", MoveCodec.toLan(parser.bestMove()));
+        assertEquals("g8f6", MoveCodec.toLan(parser.ponderMove()));
+
+        final byte[] none = bytes("bestmove (none)");
+        parser.parseBestMove(none, 0, none.length);
+        assertEquals(MoveCodec.NONE, parser.bestMove());
+        assertEquals(MoveCodec.NONE, parser.ponderMove());
+    }
+
+    @Test
+    void moveCodecRoundTrip() {
+        final int code = MoveCodec.encode("a7a8n");
+        assertEquals(48, MoveCodec.from(code));
+        assertEquals(56, MoveCodec.to(code));
+        assertEquals('n', MoveCodec.promotion(code));
+        assertTrue(code < 1 << 16);
+        assertEquals("h2h1", MoveCodec.toLan(MoveCodec.encode("h2h1")));
+        assertEquals(MoveCodec.NONE, MoveCodec.encode("(none)"));
+    }
+
+}